@@ -0,0 +1,164 @@
+package edu.uob;
+
+/**
+ * One aggregate of a SELECT, fed the value of its column in each matching row. Numbers follow
+ * DBHelper: integer values are summed exactly and any float makes the sum a float. Values that
+ * are not numbers are skipped by SUM and AVG, and NULL by everything except COUNT(*).
+ * APPROX_COUNT_DISTINCT counts the values of its column with a HyperLogLog sketch.
+ */
+public class Aggregate {
+    public enum Function {
+        COUNT, SUM, AVG, MIN, MAX, APPROX_COUNT_DISTINCT;
+
+        public static Function fromString(String name)
+        {
+            for (Function f: values())
+            {
+                if (f.name().equalsIgnoreCase(name))
+                {
+                    return f;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private final Function function;
+    // null for COUNT(*)
+    private final String column;
+    private long count;
+    private long integerSum;
+    private double floatSum;
+    private boolean sawFloat;
+    private String extreme;
+    private final HyperLogLog sketch;
+
+    public Aggregate(Function function, String column)
+    {
+        this.function = function;
+        this.column = column;
+        this.sketch = function == Function.APPROX_COUNT_DISTINCT ? new HyperLogLog() : null;
+    }
+
+    /** A new aggregate computing the same function, for a partial result. */
+    public Aggregate fresh()
+    {
+        return new Aggregate(function, column);
+    }
+
+    /** Adds the values seen by a partial result over other rows. */
+    public void merge(Aggregate other)
+    {
+        count += other.count;
+        integerSum += other.integerSum;
+        floatSum += other.floatSum;
+        sawFloat |= other.sawFloat;
+
+        if (other.extreme != null)
+        {
+            offerExtreme(other.extreme);
+        }
+
+        if (sketch != null)
+        {
+            sketch.merge(other.sketch);
+        }
+    }
+
+    public String getColumn()
+    {
+        return column;
+    }
+
+    /** Whether this is COUNT(*), which needs no values. */
+    public boolean countsRows()
+    {
+        return column == null;
+    }
+
+    /** Whether this is APPROX_COUNT_DISTINCT, which a column sketch can answer. */
+    public boolean estimatesDistinct()
+    {
+        return sketch != null;
+    }
+
+    /** Adds the values counted by a sketch of the column, instead of the values themselves. */
+    public void addSketch(HyperLogLog columnSketch)
+    {
+        sketch.merge(columnSketch);
+    }
+
+    public String getLabel()
+    {
+        return function + "(" + (column == null ? "*" : column) + ")";
+    }
+
+    public void addRows(long rows)
+    {
+        count += rows;
+    }
+
+    public void add(String value)
+    {
+        if (column == null)
+        {
+            count++;
+            return;
+        }
+
+        if (value.equalsIgnoreCase("NULL"))
+        {
+            return;
+        }
+
+        switch (function) {
+            case COUNT -> count++;
+            case SUM, AVG -> addNumber(value);
+            case MIN, MAX -> offerExtreme(value);
+            case APPROX_COUNT_DISTINCT -> sketch.add(value);
+        }
+    }
+
+    private void offerExtreme(String value)
+    {
+        int comparison = extreme == null ? 0 : DBHelper.compareValues(value, extreme);
+
+        if (extreme == null || (function == Function.MIN ? comparison < 0 : comparison > 0))
+        {
+            extreme = value;
+        }
+    }
+
+    private void addNumber(String value)
+    {
+        if (DBHelper.isIntegerLiteral(value))
+        {
+            integerSum += Integer.parseInt(value);
+        }
+
+        else if (DBHelper.isFloatLiteral(value))
+        {
+            floatSum += Float.parseFloat(value);
+            sawFloat = true;
+        }
+
+        else
+        {
+            return;
+        }
+
+        count++;
+    }
+
+    public String result()
+    {
+        return switch (function) {
+            case COUNT -> Long.toString(count);
+            case SUM -> count == 0 ? "NULL" : sawFloat ? Double.toString(integerSum + floatSum) : Long.toString(integerSum);
+            case AVG -> count == 0 ? "NULL" : Double.toString((integerSum + floatSum) / count);
+            case MIN, MAX -> extreme == null ? "NULL" : extreme;
+            case APPROX_COUNT_DISTINCT -> Long.toString(sketch.estimate());
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package edu.uob;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One row set per distinct stored value. A condition is checked once per distinct value rather
+ * than once per row, so any comparison is answered exactly with a union of row sets.
+ */
+public class BitmapIndex implements TableIndex {
+    private final String column;
+    private final HashMap<String, RowSet> rowsByValue = new HashMap<>();
+
+    public BitmapIndex(String column)
+    {
+        this.column = column;
+    }
+
+    @Override
+    public IndexKind getKind()
+    {
+        return IndexKind.BITMAP;
+    }
+
+    @Override
+    public String getColumn()
+    {
+        return column;
+    }
+
+    @Override
+    public void add(int id, String value)
+    {
+        rowsByValue.computeIfAbsent(value, v -> new RowSet()).add(id);
+    }
+
+    @Override
+    public void remove(int id, String value)
+    {
+        RowSet rows = rowsByValue.get(value);
+
+        if (rows != null)
+        {
+            rows.remove(id);
+
+            if (rows.isEmpty())
+            {
+                rowsByValue.remove(value);
+            }
+        }
+    }
+
+    @Override
+    public RowSet rowsMatching(SyntaxType operator, String value)
+    {
+        RowSet result = new RowSet();
+
+        for (Map.Entry<String, RowSet> entry: rowsByValue.entrySet())
+        {
+            if (DBHelper.conditionMet(entry.getKey(), value, operator))
+            {
+                result = result.or(entry.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    // Any comparison, LIKE included, is checked once per distinct value rather than once per row
+    @Override
+    public boolean supports(SyntaxType operator, String value)
+    {
+        return true;
+    }
+
+    @Override
+    public Map<String, RowSet> entries()
+    {
+        return rowsByValue;
+    }
+
+    @Override
+    public boolean isExact()
+    {
+        return true;
+    }
+}
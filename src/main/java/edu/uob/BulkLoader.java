@@ -0,0 +1,265 @@
+package edu.uob;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Loads a TSV or CSV file into a table. Lines are read sequentially in chunks, each chunk is split
+ * and validated on the common pool, and the accepted rows are appended in file order as one
+ * commit. Only a few chunks are in flight at once; each is staged in the table as soon as it is
+ * the oldest one done, so the file is never held in memory as a whole.
+ */
+public class BulkLoader {
+    private static final int CHUNK_SIZE = 10000;
+    private static final int CHUNKS_IN_FLIGHT = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int ERRORS_TO_REPORT = 5;
+
+    private final Table table;
+    private final Path file;
+    private final Snapshot snapshot;
+    private final char delimiter;
+    private int read;
+    private int loaded;
+    private int rejected;
+    private final ArrayList<String> errors = new ArrayList<>();
+
+    private static class Chunk {
+        private final ArrayList<ArrayList<String>> rows = new ArrayList<>();
+        private final ArrayList<String> errors = new ArrayList<>();
+        private int rejected;
+    }
+
+    public BulkLoader(Table table, Path file, Snapshot snapshot)
+    {
+        this.table = table;
+        this.file = file;
+        this.snapshot = snapshot;
+        this.delimiter = file.toString().toLowerCase().endsWith(".csv") ? ',' : '\t';
+    }
+
+    /** Stages the accepted rows in the table for the caller to commit; false if that failed. */
+    public boolean load() throws IOException
+    {
+        ArrayDeque<CompletableFuture<Chunk>> chunks = new ArrayDeque<>();
+        int columnCount = table.editableColumns(snapshot);
+
+        try (BufferedReader reader = Files.newBufferedReader(file))
+        {
+            ArrayList<String> lines = new ArrayList<>();
+            String line = reader.readLine();
+            int firstLineNumber = 1;
+
+            if (line != null && isHeader(line))
+            {
+                read++;
+                line = reader.readLine();
+                firstLineNumber = 2;
+            }
+
+            while (line != null)
+            {
+                lines.add(line);
+                read++;
+
+                if (lines.size() == CHUNK_SIZE)
+                {
+                    // the reader waits for the oldest chunk rather than queueing the whole file
+                    if (chunks.size() == CHUNKS_IN_FLIGHT && !stage(chunks.poll().join()))
+                    {
+                        return false;
+                    }
+
+                    chunks.add(submit(lines, firstLineNumber, columnCount));
+                    lines = new ArrayList<>();
+                    firstLineNumber = read + 1;
+                }
+
+                line = reader.readLine();
+            }
+
+            if (!lines.isEmpty())
+            {
+                chunks.add(submit(lines, firstLineNumber, columnCount));
+            }
+        }
+
+        while (!chunks.isEmpty())
+        {
+            if (!stage(chunks.poll().join()))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Chunks are staged in file order, so the rows take ids in that order too
+    private boolean stage(Chunk chunk)
+    {
+        rejected += chunk.rejected;
+
+        for (String error: chunk.errors)
+        {
+            if (errors.size() < ERRORS_TO_REPORT)
+            {
+                errors.add(error);
+            }
+        }
+
+        if (chunk.rows.isEmpty() || table.addRows(chunk.rows))
+        {
+            loaded += chunk.rows.size();
+            return true;
+        }
+
+        return false;
+    }
+
+    private CompletableFuture<Chunk> submit(ArrayList<String> lines, int firstLineNumber, int columnCount)
+    {
+        return CompletableFuture.supplyAsync(() -> parseChunk(lines, firstLineNumber, columnCount));
+    }
+
+    private Chunk parseChunk(List<String> lines, int firstLineNumber, int columnCount)
+    {
+        Chunk chunk = new Chunk();
+
+        for (int i = 0; i < lines.size(); i++)
+        {
+            String line = lines.get(i);
+
+            if (line.isBlank())
+            {
+                continue;
+            }
+
+            ArrayList<String> fields = splitLine(line);
+            ArrayList<String> row = new ArrayList<>();
+            String error = null;
+
+            if (fields == null)
+            {
+                error = "unterminated quote";
+            }
+
+            else if (fields.size() != columnCount)
+            {
+                error = "expected " + columnCount + " values, found " + fields.size();
+            }
+
+            else
+            {
+                for (String field: fields)
+                {
+                    String value = DBHelper.storedLiteral(field.trim());
+
+                    if (value == null)
+                    {
+                        error = "invalid value " + field.trim();
+                        break;
+                    }
+
+                    row.add(value);
+                }
+            }
+
+            if (error != null)
+            {
+                chunk.rejected++;
+                if (chunk.errors.size() < ERRORS_TO_REPORT)
+                {
+                    chunk.errors.add("line " + (firstLineNumber + i) + ": " + error);
+                }
+                continue;
+            }
+
+            chunk.rows.add(row);
+        }
+
+        return chunk;
+    }
+
+    // Splits on the delimiter, leaving delimiters inside single quoted values alone
+    private ArrayList<String> splitLine(String line)
+    {
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+
+        for (char c: line.toCharArray())
+        {
+            if (c == '\'')
+            {
+                quoted = !quoted;
+            }
+
+            if (c == delimiter && !quoted)
+            {
+                fields.add(current.toString());
+                current.setLength(0);
+            }
+
+            else
+            {
+                current.append(c);
+            }
+        }
+
+        if (quoted)
+        {
+            return null;
+        }
+
+        fields.add(current.toString());
+        return fields;
+    }
+
+    private boolean isHeader(String line)
+    {
+        ArrayList<String> fields = splitLine(line);
+        ArrayList<String> columns = table.getColumnNames(snapshot);
+
+        if (fields == null || fields.size() != columns.size() - 1)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < fields.size(); i++)
+        {
+            if (!fields.get(i).trim().equalsIgnoreCase(columns.get(i + 1)))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /** The lines read from the file, counting a header. */
+    public int getRead()
+    {
+        return read;
+    }
+
+    public int getLoaded()
+    {
+        return loaded;
+    }
+
+    public int getRejected()
+    {
+        return rejected;
+    }
+
+    public List<String> getErrors()
+    {
+        return errors;
+    }
+}
@@ -0,0 +1,217 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the files written by a table commit are forced to disk, based on the
+ * {@link Durability} of the owning database.
+ */
+public class CommitScheduler {
+    private static final long GROUP_COMMIT_WINDOW_MS = 5;
+    private static final long DIRECTORY_SYNC_INTERVAL_MS = 200;
+
+    private static final ScheduledExecutorService SYNCER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "commit-syncer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Object LOCK = new Object();
+    private static GroupBatch openBatch;
+    private static final Set<Path> pendingDirectories = new LinkedHashSet<>();
+
+    static
+    {
+        SYNCER.scheduleAtFixedRate(CommitScheduler::syncDirectories, DIRECTORY_SYNC_INTERVAL_MS,
+                DIRECTORY_SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static class GroupBatch {
+        private final Set<Path> files = new LinkedHashSet<>();
+        private final Set<Table> tables = new LinkedHashSet<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private boolean failed;
+    }
+
+    private CommitScheduler()
+    {
+    }
+
+    /**
+     * Called once the temporary files of a commit have been written, before they are renamed
+     * over the live files. Returns false if they could not be made durable as the mode requires.
+     */
+    public static boolean prepare(Durability durability, Path... tempFiles)
+    {
+        switch (durability) {
+            case SYNC -> {
+                return forceAll(Arrays.asList(tempFiles));
+            }
+            case GROUP -> {
+                return awaitGroupSync(tempFiles);
+            }
+            default -> {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Called once the renames of a commit are done. The directory entry is forced straight away
+     * for SYNC and left to the background task otherwise.
+     */
+    public static boolean installed(Durability durability, Path directory)
+    {
+        if (durability == Durability.SYNC)
+        {
+            return forceAll(List.of(directory));
+        }
+
+        synchronized (LOCK)
+        {
+            pendingDirectories.add(directory);
+        }
+
+        return true;
+    }
+
+    /**
+     * Waits for the group write covering the tables' latest commits. Each window writes every
+     * table committed to in it once, however many commits it took, and forces the files to disk.
+     * The caller must not hold the tables' monitors. Returns false if a table could not be written.
+     */
+    public static boolean awaitGroupWrite(Collection<Table> tables)
+    {
+        GroupBatch batch;
+
+        synchronized (LOCK)
+        {
+            batch = openBatch();
+            batch.tables.addAll(tables);
+        }
+
+        return await(batch);
+    }
+
+    private static boolean awaitGroupSync(Path... files)
+    {
+        GroupBatch batch;
+
+        synchronized (LOCK)
+        {
+            batch = openBatch();
+            batch.files.addAll(Arrays.asList(files));
+        }
+
+        return await(batch);
+    }
+
+    // The batch the next window will write, scheduled by the first commit to join it
+    private static GroupBatch openBatch()
+    {
+        if (openBatch == null)
+        {
+            openBatch = new GroupBatch();
+            GroupBatch scheduled = openBatch;
+            SYNCER.schedule(() -> flushGroup(scheduled), GROUP_COMMIT_WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+
+        return openBatch;
+    }
+
+    private static boolean await(GroupBatch batch)
+    {
+        try
+        {
+            batch.done.await();
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        return !batch.failed;
+    }
+
+    private static void flushGroup(GroupBatch batch)
+    {
+        synchronized (LOCK)
+        {
+            if (openBatch == batch)
+            {
+                openBatch = null;
+            }
+        }
+
+        boolean written = true;
+
+        for (Table t: batch.tables)
+        {
+            written &= t.flush();
+        }
+
+        batch.failed = !written | !forceAll(batch.files);
+        batch.done.countDown();
+    }
+
+    private static void syncDirectories()
+    {
+        Set<Path> toFlush;
+
+        synchronized (LOCK)
+        {
+            if (pendingDirectories.isEmpty())
+            {
+                return;
+            }
+
+            toFlush = new LinkedHashSet<>(pendingDirectories);
+            pendingDirectories.clear();
+        }
+
+        forceAll(toFlush);
+    }
+
+    private static boolean forceAll(Collection<Path> files)
+    {
+        boolean success = true;
+
+        for (Path p: files)
+        {
+            OpenOption mode = Files.isDirectory(p) ? StandardOpenOption.READ : StandardOpenOption.WRITE;
+
+            try (FileChannel channel = FileChannel.open(p, mode))
+            {
+                channel.force(true);
+            }
+
+            catch (IOException e)
+            {
+                // a table dropped before its flush came round has nothing left to sync, and
+                // some platforms refuse to sync directories at all
+                if (Files.isRegularFile(p))
+                {
+                    success = false;
+                }
+            }
+        }
+
+        return success;
+    }
+}
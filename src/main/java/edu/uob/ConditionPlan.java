@@ -0,0 +1,194 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+
+/**
+ * A WHERE condition as a tree of AND and OR groups, each group's conditions sorted so the ones
+ * most likely to decide the group cheaply come first. Selectivities come from the table's
+ * statistics; a condition an index answers costs far less than one checked on every row.
+ */
+public class ConditionPlan {
+    private static final double INDEX_COST = 0.1;
+    // Past this share of the table an index gives too many rows to beat one filtered scan
+    private static final double MAX_INDEX_SELECTIVITY = 0.25;
+
+    // AND, OR, or the comparator of a single condition
+    private final SyntaxType type;
+    private final ArrayList<ConditionPlan> operands = new ArrayList<>();
+    private final String column;
+    private final String value;
+    private final RowFilter filter;
+    private final boolean indexed;
+    private double selectivity;
+    private double cost;
+
+    private ConditionPlan(SyntaxType type, String column, String value, RowFilter filter, boolean indexed)
+    {
+        this.type = type;
+        this.column = column;
+        this.value = value;
+        this.filter = filter;
+        this.indexed = indexed;
+    }
+
+    /**
+     * A single condition, checked on each row by the filter unless an index answers it. Given
+     * statistics, an index is left unused for a condition most rows are expected to meet.
+     */
+    public static ConditionPlan condition(String column, SyntaxType operator, String value, RowFilter filter,
+                                          boolean indexed, TableStatistics statistics)
+    {
+        double selectivity = statistics == null ? TableStatistics.defaultSelectivity(operator)
+                : statistics.selectivity(column, operator, value);
+        boolean useIndex = indexed && (statistics == null || selectivity <= MAX_INDEX_SELECTIVITY);
+        ConditionPlan plan = new ConditionPlan(operator, column, value, filter, useIndex);
+        plan.selectivity = selectivity;
+        plan.cost = useIndex ? INDEX_COST : comparisonCost(operator);
+        return plan;
+    }
+
+    // Numbers are parsed for range checks and LIKE matches a pattern
+    private static double comparisonCost(SyntaxType operator)
+    {
+        return switch (operator) {
+            case EQUAL_TO, NOT_EQUAL -> 1;
+            case LIKE -> 4;
+            default -> 2;
+        };
+    }
+
+    /** Joins two plans with AND or OR, merging groups of the same kind since both are associative. */
+    public static ConditionPlan combine(SyntaxType bool, ConditionPlan first, ConditionPlan second)
+    {
+        ConditionPlan plan = new ConditionPlan(bool, null, null, null, false);
+
+        for (ConditionPlan operand: new ConditionPlan[] {first, second})
+        {
+            if (operand.type == bool)
+            {
+                plan.operands.addAll(operand.operands);
+            }
+
+            else
+            {
+                plan.operands.add(operand);
+            }
+        }
+
+        double none = 1;
+        double all = 1;
+
+        for (ConditionPlan operand: plan.operands)
+        {
+            all *= operand.selectivity;
+            none *= 1 - operand.selectivity;
+            plan.cost += operand.cost;
+        }
+
+        plan.selectivity = bool == SyntaxType.AND ? all : 1 - none;
+
+        // AND wants the conditions most likely to fail per unit of cost first, OR those most likely to pass
+        Comparator<ConditionPlan> rank = Comparator.comparingDouble(bool == SyntaxType.AND
+                ? p -> p.selectivity >= 1 ? Double.MAX_VALUE : p.cost / (1 - p.selectivity)
+                : p -> p.selectivity <= 0 ? Double.MAX_VALUE : p.cost / p.selectivity);
+        plan.operands.sort(rank);
+        return plan;
+    }
+
+    public double getSelectivity()
+    {
+        return selectivity;
+    }
+
+    /** The plan as it runs, with groups in their evaluation order. */
+    @Override
+    public String toString()
+    {
+        if (operands.isEmpty())
+        {
+            return column + " " + type + " " + value;
+        }
+
+        ArrayList<String> parts = new ArrayList<>();
+        operands.forEach(p -> parts.add(p.toString()));
+        return "(" + String.join(" " + type + " ", parts) + ")";
+    }
+
+    // Whether the plan can find its rows from indexes rather than a scan
+    private boolean usesIndex()
+    {
+        return switch (type) {
+            case AND -> operands.stream().anyMatch(ConditionPlan::usesIndex);
+            case OR -> operands.stream().allMatch(ConditionPlan::usesIndex);
+            default -> indexed;
+        };
+    }
+
+    /** Checks one row, stopping at the first condition that decides each group. */
+    public RowFilter filter()
+    {
+        if (operands.isEmpty())
+        {
+            return filter;
+        }
+
+        RowFilter combined = operands.get(0).filter();
+
+        for (ConditionPlan operand: operands.subList(1, operands.size()))
+        {
+            combined = type == SyntaxType.AND ? combined.and(operand.filter()) : combined.or(operand.filter());
+        }
+
+        return combined;
+    }
+
+    /**
+     * Finds the matching rows. An AND group intersects the rows its indexed conditions give and
+     * only reads those rows to check the rest, so a group answered by indexes alone reads none.
+     * Anything else not answered by indexes is one filtered scan.
+     */
+    public RowSet rows(Table t, Snapshot snapshot)
+    {
+        if (operands.isEmpty())
+        {
+            return t.getRelevantRows(column, type, value, snapshot);
+        }
+
+        if (type == SyntaxType.AND && usesIndex())
+        {
+            RowSet candidates = null;
+            RowFilter rest = null;
+
+            for (ConditionPlan operand: operands)
+            {
+                if (operand.usesIndex())
+                {
+                    RowSet found = operand.rows(t, snapshot);
+                    candidates = candidates == null ? found : candidates.and(found);
+                }
+
+                else
+                {
+                    rest = rest == null ? operand.filter() : rest.and(operand.filter());
+                }
+            }
+
+            return rest == null || candidates.isEmpty() ? candidates : t.filterRows(candidates, rest, snapshot);
+        }
+
+        if (type == SyntaxType.OR && usesIndex())
+        {
+            RowSet union = new RowSet();
+
+            for (ConditionPlan operand: operands)
+            {
+                union = union.or(operand.rows(t, snapshot));
+            }
+
+            return union;
+        }
+
+        return t.filterRows(null, filter(), snapshot);
+    }
+}
@@ -55,6 +55,76 @@ public class DBHelper {
         return false;
     }
 
+    /**
+     * Orders two stored values the way conditions compare them: numbers by value, strings
+     * alphabetically and FALSE before TRUE. Values of different kinds sort NULL first, then
+     * numbers, booleans and strings.
+     */
+    public static int compareValues(String value1, String value2)
+    {
+        SyntaxType v1 = classifyValue(value1);
+        SyntaxType v2 = classifyValue(value2);
+        int rank = Integer.compare(sortRank(v1), sortRank(v2));
+
+        if (rank != 0)
+        {
+            return rank;
+        }
+
+        switch (v1) {
+            case INTEGER_LITERAL, FLOAT_LITERAL -> {
+                if (v1 == INTEGER_LITERAL && v2 == INTEGER_LITERAL)
+                {
+                    return Integer.compare(Integer.parseInt(value1), Integer.parseInt(value2));
+                }
+
+                return Float.compare(Float.parseFloat(value1), Float.parseFloat(value2));
+            }
+            case BOOLEAN_LITERAL -> {
+                return Boolean.compare(Boolean.parseBoolean(value1), Boolean.parseBoolean(value2));
+            }
+            case NULL_VALUE -> {
+                return 0;
+            }
+            default -> {
+                return value1.compareTo(value2);
+            }
+        }
+    }
+
+    /**
+     * Returns a key shared by exactly the values conditionMet finds EQUAL_TO each other: numbers
+     * by value, whether written as integers or floats, booleans and NULL ignoring case.
+     */
+    public static String equalityKey(String value)
+    {
+        switch (classifyValue(value)) {
+            case INTEGER_LITERAL -> {
+                return "N" + Integer.parseInt(value);
+            }
+            case FLOAT_LITERAL -> {
+                float f = Float.parseFloat(value);
+                return f == (int) f ? "N" + (int) f : "F" + f;
+            }
+            case BOOLEAN_LITERAL, NULL_VALUE -> {
+                return "B" + value.toUpperCase();
+            }
+            default -> {
+                return "S" + value;
+            }
+        }
+    }
+
+    private static int sortRank(SyntaxType type)
+    {
+        return switch (type) {
+            case NULL_VALUE -> 0;
+            case INTEGER_LITERAL, FLOAT_LITERAL -> 1;
+            case BOOLEAN_LITERAL -> 2;
+            default -> 3;
+        };
+    }
+
     private static boolean compareStrings(String s1, String s2, SyntaxType operator)
     {
         switch(operator)
@@ -237,6 +307,36 @@ public class DBHelper {
         return ERROR;
     }
 
+    /**
+     * Returns the value a field from an imported file would be stored as, or null if it is not a
+     * valid literal. Same rules as values in a query, except that unquoted text is taken as a string.
+     */
+    public static String storedLiteral(String s)
+    {
+        if (s.length() >= 2 && s.charAt(0) == '\'' && s.charAt(s.length() - 1) == '\'')
+        {
+            String inner = s.substring(1, s.length() - 1);
+            return isValidStringLiteral(inner) ? inner : null;
+        }
+
+        if (isBooleanLiteral(s) || isFloatLiteral(s) || isIntegerLiteral(s))
+        {
+            return s;
+        }
+
+        if (s.equalsIgnoreCase("NULL"))
+        {
+            return s.toUpperCase();
+        }
+
+        if (!s.contains("'") && isValidStringLiteral(s))
+        {
+            return s;
+        }
+
+        return null;
+    }
+
     public static boolean isValidStringLiteral(String s)
     {
         if (s.equals(""))
@@ -6,13 +6,17 @@ import java.net.Socket;
 import java.nio.file.Paths;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /** This class implements the DB server. */
 public class DBServer {
 
     private static final char END_OF_TRANSMISSION = 4;
     private String storageFolderPath;
-    private Database currentDatabase;
+    private final Session defaultSession = new Session();
+    private final ResultCache resultCache = new ResultCache();
     public static void main(String args[]) throws IOException {
         DBServer server = new DBServer();
         server.blockingListenOn(8889);
@@ -29,6 +33,8 @@ public class DBServer {
         } catch(IOException ioe) {
             System.out.println("Can't seem to create database storage folder " + storageFolderPath);
         }
+        // Repair any table left half-written by a crash before serving commands
+        Database.recoverStorage(storageFolderPath);
     }
 
     /**
@@ -38,6 +44,23 @@ public class DBServer {
     * <p>This method handles all incoming DB commands and carries out the required actions.
     */
     public String handleCommand(String command) {
+        return handleCommand(command, defaultSession);
+    }
+
+    /**
+     * Runs a command on behalf of one client, whose current database is kept in its session.
+     * Outside a transaction, a query repeated while its tables are unchanged is answered from the
+     * result cache without being parsed.
+     */
+    public String handleCommand(String command, Session session) {
+        Database database = session.getCurrentDatabase();
+        String cacheKey = database == null || session.getTransaction() != null ? null : ResultCache.key(database, command);
+        String cached = cacheKey == null ? null : resultCache.get(cacheKey);
+
+        if (cached != null) {
+            return cached;
+        }
+
         Tokeniser tokeniser = new Tokeniser(command);
         ArrayList<String> tokens = tokeniser.tokenise();
 
@@ -47,48 +70,101 @@ public class DBServer {
 
         Interpreter interpreter = new Interpreter(root, storageFolderPath);
 
-        interpreter.setDbInUse(currentDatabase);
+        interpreter.setDbInUse(session.getCurrentDatabase());
+        interpreter.setTransaction(session.getTransaction());
+
+        List<String> tables = cacheKey == null ? null : tablesRead(root);
+        long[] changeCounts = tables == null ? null : ResultCache.changeCounts(database, tables);
 
         String message = interpreter.evaluateTree();
 
-        currentDatabase = interpreter.getDbInUse();
+        if (tables != null && message.startsWith("[OK]")) {
+            resultCache.put(cacheKey, database, tables, changeCounts, message);
+        }
+
+        session.setCurrentDatabase(interpreter.getDbInUse());
+        session.setTransaction(interpreter.getTransaction());
 
         return message;
 
     }
 
+    // The tables a statement reads if it only reads them, so its response can be cached
+    private static List<String> tablesRead(Node root) {
+        Node first = root.getSibling();
+        Node second = first == null ? null : first.getSibling();
+
+        if (first == null || first.getType() != SyntaxType.TABLE_NAME) {
+            return null;
+        }
+
+        switch (root.getType()) {
+            case SELECT -> {
+                return List.of(first.getValue());
+            }
+            case JOIN -> {
+                return second == null || second.getType() != SyntaxType.TABLE_NAME ? null : List.of(first.getValue(), second.getValue());
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
 
     //  === Methods below handle networking aspects of the project - you will not need to change these ! ===
 
     public void blockingListenOn(int portNumber) throws IOException {
+        ExecutorService connectionHandlers = Executors.newCachedThreadPool();
         try (ServerSocket s = new ServerSocket(portNumber)) {
             System.out.println("Server listening on port " + portNumber);
             while (!Thread.interrupted()) {
                 try {
-                    blockingHandleConnection(s);
+                    Socket connection = s.accept();
+                    // Each connection gets its own session and thread; table locks keep them apart
+                    connectionHandlers.execute(() -> serveConnection(connection));
                 } catch (IOException e) {
                     System.err.println("Server encountered a non-fatal IO error:");
                     e.printStackTrace();
                     System.err.println("Continuing...");
                 }
             }
+        } finally {
+            connectionHandlers.shutdownNow();
         }
     }
 
-    private void blockingHandleConnection(ServerSocket serverSocket) throws IOException {
-        try (Socket s = serverSocket.accept();
+    private void serveConnection(Socket connection) {
+        try {
+            blockingHandleConnection(connection);
+        } catch (IOException e) {
+            System.err.println("Server encountered a non-fatal IO error:");
+            e.printStackTrace();
+            System.err.println("Continuing...");
+        }
+    }
+
+    private void blockingHandleConnection(Socket connection) throws IOException {
+        Session session = new Session();
+        try (Socket s = connection;
         BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream()));
         BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()))) {
 
-            System.out.println("Connection established: " + serverSocket.getInetAddress());
+            System.out.println("Connection established: " + s.getInetAddress());
             while (!Thread.interrupted()) {
                 String incomingCommand = reader.readLine();
+                if (incomingCommand == null) {
+                    System.out.println("Connection closed: " + s.getInetAddress());
+                    return;
+                }
                 System.out.println("Received message: " + incomingCommand);
-                String result = handleCommand(incomingCommand);
+                String result = handleCommand(incomingCommand, session);
                 writer.write(result);
                 writer.write("\n" + END_OF_TRANSMISSION + "\n");
                 writer.flush();
             }
+        } finally {
+            session.close();
         }
     }
 }
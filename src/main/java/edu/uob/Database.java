@@ -1,16 +1,236 @@
 package edu.uob;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.TreeSet;
 
 public class Database {
+    private static final String DURABILITY_FILE = ".durability";
+    private static final String VIEW_EXTENSION = ".view";
+    private static final String[] TABLE_SIDE_FILES = {".info", ".tab.tmp", ".info.tmp", ".commit", ".indexes", ".indexes.tmp", ".idx", ".idx.tmp", ".hll", ".hll.tmp", ".stats", ".stats.tmp", ".view", ".view.tmp"};
+    private static final HashSet<String> RECOVERED_FOLDERS = new HashSet<>();
+    private static final HashMap<String, Database> OPEN_DATABASES = new HashMap<>();
     private final String storageFolderPath;
     private final String databaseName;
+    private volatile Durability durability;
+    private final HashMap<String, Table> openTables = new HashMap<>();
+    // Materialized views by name, read from their definition files on first use
+    private HashMap<String, MaterializedView> views;
     public Database(String storageFolderPath, String databaseName)
     {
         this.storageFolderPath = storageFolderPath;
         this.databaseName = databaseName;
+        this.durability = loadDurability();
+    }
+
+    /**
+     * Returns the shared instance for a database, so every session sees the same open tables
+     * (including changes the flusher has not written yet) and the same durability setting.
+     */
+    public static Database open(String storageFolderPath, String databaseName)
+    {
+        synchronized (OPEN_DATABASES)
+        {
+            return OPEN_DATABASES.computeIfAbsent(storageFolderPath + File.separator + databaseName,
+                    k -> new Database(storageFolderPath, databaseName));
+        }
+    }
+
+    /** Writes out any unflushed tables and forgets the open instance, as on a server shutdown. */
+    public static void close(String storageFolderPath, String databaseName)
+    {
+        Database db = forget(storageFolderPath, databaseName);
+
+        if (db != null)
+        {
+            for (Table t: db.takeOpenTables())
+            {
+                TableFlusher.flush(t);
+                // the files may change before the table is opened again
+                Table.countChange(db, t.getTableName());
+            }
+        }
+    }
+
+    /** Forgets the open instance without writing anything, used when the database is dropped. */
+    public static void discard(String storageFolderPath, String databaseName)
+    {
+        Database db = forget(storageFolderPath, databaseName);
+
+        if (db != null)
+        {
+            for (Table t: db.takeOpenTables())
+            {
+                t.discard();
+            }
+        }
+    }
+
+    private static Database forget(String storageFolderPath, String databaseName)
+    {
+        synchronized (OPEN_DATABASES)
+        {
+            return OPEN_DATABASES.remove(storageFolderPath + File.separator + databaseName);
+        }
+    }
+
+    private synchronized ArrayList<Table> takeOpenTables()
+    {
+        ArrayList<Table> tables = new ArrayList<>(openTables.values());
+        openTables.clear();
+        return tables;
+    }
+
+    public synchronized Table getOpenTable(String tableName)
+    {
+        return openTables.get(tableName.toLowerCase());
+    }
+
+    public synchronized void addOpenTable(Table t)
+    {
+        openTables.put(t.getTableName(), t);
+    }
+
+    private synchronized HashMap<String, MaterializedView> views()
+    {
+        if (views == null)
+        {
+            views = new HashMap<>();
+            loadViews();
+        }
+
+        return views;
+    }
+
+    // Each view's table sits next to a file holding the SELECT or JOIN that defines it
+    private void loadViews()
+    {
+        File[] files = new File(storageFolderPath + File.separator + databaseName).listFiles((d, f) -> f.endsWith(VIEW_EXTENSION));
+
+        if (files == null)
+        {
+            return;
+        }
+
+        for (File f: files)
+        {
+            String name = f.getName().substring(0, f.getName().length() - VIEW_EXTENSION.length());
+
+            try (Snapshot s = VersionClock.open())
+            {
+                String definition = Files.readString(f.toPath());
+                Node query = new Parser(new Tokeniser(definition + " ;").tokenise()).generateAST();
+                MaterializedView view = MaterializedView.define(name, this, query, definition, s, new StringBuilder());
+
+                if (view != null)
+                {
+                    views.put(name, view);
+                }
+            }
+
+            catch (IOException e)
+            {
+                System.err.println("Unable to read materialized view " + name);
+            }
+        }
+    }
+
+    public synchronized MaterializedView getView(String name)
+    {
+        return views().get(name.toLowerCase());
+    }
+
+    /** The views reading a table, which its commits keep up to date. */
+    public synchronized ArrayList<MaterializedView> viewsOn(String tableName)
+    {
+        ArrayList<MaterializedView> reading = new ArrayList<>();
+
+        for (MaterializedView view: views().values())
+        {
+            if (view.getTables().contains(tableName.toLowerCase()))
+            {
+                reading.add(view);
+            }
+        }
+
+        return reading;
+    }
+
+    /** Saves the view's definition and starts keeping it up to date; its table must exist already. */
+    public synchronized boolean addView(MaterializedView view)
+    {
+        Path file = Paths.get(storageFolderPath, databaseName, view.getName() + VIEW_EXTENSION);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try
+        {
+            Files.writeString(temp, view.getDefinition());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        catch (IOException e)
+        {
+            return false;
+        }
+
+        views().put(view.getName(), view);
+        return true;
+    }
+
+    private Path durabilityFile()
+    {
+        return Paths.get(storageFolderPath, databaseName, DURABILITY_FILE);
+    }
+
+    private Durability loadDurability()
+    {
+        try
+        {
+            Path p = durabilityFile();
+            if (Files.isRegularFile(p))
+            {
+                Durability d = Durability.fromString(Files.readString(p).trim());
+                if (d != null)
+                {
+                    return d;
+                }
+            }
+        }
+
+        catch (IOException e)
+        {
+            return Durability.SYNC;
+        }
+
+        return Durability.SYNC;
+    }
+
+    public Durability getDurability()
+    {
+        return durability;
+    }
+
+    public boolean setDurability(Durability durability)
+    {
+        try
+        {
+            Files.writeString(durabilityFile(), durability.name());
+        }
+
+        catch (IOException e)
+        {
+            return false;
+        }
+
+        this.durability = durability;
+        return true;
     }
     public static boolean createDatabase(String storageFolderPath, String databaseName)
     {
@@ -32,7 +252,21 @@ public class Database {
     {
         tableName = tableName.toLowerCase();
         File f = new File(storageFolderPath + File.separator + databaseName + File.separator + tableName + ".tab");
-        File config = new File(storageFolderPath + File.separator + databaseName + File.separator + tableName + ".config");
+        Table open;
+
+        synchronized (this)
+        {
+            open = openTables.remove(tableName);
+            views().remove(tableName);
+        }
+
+        if (open != null)
+        {
+            open.discard();
+        }
+
+        Table.countChange(this, tableName);
+
         try
         {
             if (!f.delete())
@@ -40,9 +274,10 @@ public class Database {
                 return false;
             }
 
-            if (config.exists())
+            for (String suffix: TABLE_SIDE_FILES)
             {
-                if (!config.delete())
+                File sideFile = new File(storageFolderPath + File.separator + databaseName + File.separator + tableName + suffix);
+                if (sideFile.exists() && !sideFile.delete())
                 {
                     return false;
                 }
@@ -57,110 +292,107 @@ public class Database {
         return true;
     }
 
-    public ArrayList<ArrayList<String>> joinTables(Table t1, Table t2, String attribute1, String attribute2)
+    /**
+     * Runs crash recovery over every table of every database in the storage folder. Only the
+     * first server started on a folder in this JVM scans it, later ones would race live commits.
+     */
+    public static void recoverStorage(String storageFolderPath)
     {
+        synchronized (RECOVERED_FOLDERS)
+        {
+            if (!RECOVERED_FOLDERS.add(storageFolderPath))
+            {
+                return;
+            }
+        }
 
-        ArrayList<ArrayList<String>> t1Array = t1.tableToArrayList();
-        ArrayList<ArrayList<String>> t2Array = t2.tableToArrayList();
+        File[] databases = new File(storageFolderPath).listFiles(File::isDirectory);
 
-        ArrayList<ArrayList<String>> joinedTable = new ArrayList<>();
-        try {
+        if (databases == null)
+        {
+            return;
+        }
 
-            int index1 = t1Array.get(0).indexOf(attribute1);
-            int index2 = t2Array.get(0).indexOf(attribute2);
+        for (File db: databases)
+        {
+            TreeSet<String> tableNames = new TreeSet<>();
+            String[] files = db.list();
 
-            ArrayList<ArrayList<Integer>> matchingRows = new ArrayList<>();
+            if (files == null)
+            {
+                continue;
+            }
 
-            for (int i = 1; i < t1Array.size(); i++) {
-                for (int j = 1; j < t2Array.size(); j++) {
-                    if (t1Array.get(i).get(index1).equals(t2Array.get(j).get(index2))) {
-                        ArrayList<Integer> positionNumbers = new ArrayList<>(Arrays.asList(i, j));
-                        matchingRows.add(positionNumbers);
-                    }
+            for (String fileName: files)
+            {
+                if (!fileName.startsWith(".") && fileName.contains("."))
+                {
+                    tableNames.add(fileName.substring(0, fileName.indexOf('.')));
                 }
             }
 
-            ArrayList<String> temp1 = t1Array.get(0);
-            temp1.remove(index1);
-
-            temp1.replaceAll(s -> t1.getTableName() + "." + s);
-
-            ArrayList<String> temp2 = t2Array.get(0);
-            temp2.remove(index2);
-
-            temp2.replaceAll(s -> t2.getTableName() + "." + s);
-
-            temp1.addAll(temp2);
-            joinedTable.add(temp1);
-
-            for (ArrayList<Integer> match : matchingRows) {
-                int rowIndex1 = match.get(0);
-                int rowIndex2 = match.get(1);
-                ArrayList<String> rowToAdd1 = t1Array.get(rowIndex1);
-                ArrayList<String> rowToAdd2 = t2Array.get(rowIndex2);
-
-                rowToAdd1.remove(index1);
-                rowToAdd2.remove(index2);
-
-                rowToAdd1.addAll(rowToAdd2);
-                joinedTable.add(rowToAdd1);
-
+            for (String tableName: tableNames)
+            {
+                Table.recoverTable(db, tableName);
             }
-            
-            removeID(joinedTable, t1.getTableName(), t2.getTableName());
-            generateNewID(joinedTable);
         }
+    }
 
-        catch (Exception e)
+    /**
+     * Joins the rows of each table in the given set, or all its rows if the set is null, on the
+     * query's join columns. Only the join column and the columns shown are read from each row,
+     * and the side with fewer rows is hashed by join value so each row of the other finds its
+     * matches at once.
+     */
+    public ArrayList<ArrayList<String>> joinTables(Table t1, Table t2, JoinQuery query, RowSet rows1, RowSet rows2, Snapshot snapshot)
+    {
+        ArrayList<ArrayList<String>> joinedTable = new ArrayList<>();
+        ArrayList<String> heading = new ArrayList<>();
+        heading.add("id");
+
+        for (int[] column: query.getColumns())
         {
-            return null;
+            heading.add(query.getTable(column[0]) + "." + query.getColumnName(column));
         }
 
-        return joinedTable;
-
-    }
+        joinedTable.add(heading);
 
-    private void removeID(ArrayList<ArrayList<String>> table, String table1Name, String table2Name)
-    {
-        ArrayList<String> columnNames = table.get(0);
-        ArrayList<Integer> idPosition = new ArrayList<>();
+        // the smaller side is hashed and the larger one streamed past it; only the output rows are built
+        boolean hashLeft = rowCount(t1, rows1, snapshot) < rowCount(t2, rows2, snapshot);
+        int hashed = hashLeft ? JoinQuery.LEFT : JoinQuery.RIGHT;
+        int streamed = hashLeft ? JoinQuery.RIGHT : JoinQuery.LEFT;
+        HashMap<String, ArrayList<RowView>> byKey = new HashMap<>();
 
-        for (int i = 0; i < columnNames.size(); i++)
+        for (RowView row: (hashLeft ? t1 : t2).scan(hashLeft ? rows1 : rows2, snapshot))
         {
-            if (columnNames.get(i).contains(table1Name + ".id") || columnNames.get(i).contains(table2Name + ".id"))
-            {
-                idPosition.add(i);
-            }
+            byKey.computeIfAbsent(row.get(query.getKey(hashed)), k -> new ArrayList<>()).add(row);
         }
 
-        for (int id: idPosition)
+        for (RowView row: (hashLeft ? t2 : t1).scan(hashLeft ? rows2 : rows1, snapshot))
         {
-            for (int i = 0; i < table.size(); i++)
+            for (RowView match: byKey.getOrDefault(row.get(query.getKey(streamed)), new ArrayList<>()))
             {
-                ArrayList<String> row = table.get(i);
-                row.remove(id);
-                table.set(i, row);
+                RowView left = hashLeft ? match : row;
+                RowView right = hashLeft ? row : match;
+                ArrayList<String> joined = new ArrayList<>();
+                joined.add(Integer.toString(joinedTable.size()));
+
+                for (int[] column: query.getColumns())
+                {
+                    joined.add((column[0] == JoinQuery.LEFT ? left : right).get(column[1]));
+                }
+
+                joinedTable.add(joined);
             }
         }
 
+        return joinedTable;
     }
 
-    private void generateNewID(ArrayList<ArrayList<String>> table)
+    // The rows of the set, or of the table without a scan when it reads the latest commit
+    private static int rowCount(Table t, RowSet rows, Snapshot snapshot)
     {
-        int rowNumber = 1;
-
-        ArrayList<String> columnName = table.get(0);
-        columnName.add(0, "id");
-        table.set(0, columnName);
-
-        for (int i = 1; i < table.size(); i++)
-        {
-            ArrayList<String> row = table.get(i);
-            row.add(0, Integer.toString(rowNumber));
-            table.set(i, row);
-            rowNumber++;
-        }
-
+        return rows == null ? t.countRows(snapshot) : rows.size();
     }
 
     public String getPath()
@@ -0,0 +1,214 @@
+package edu.uob;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Lets each projected row through the first time it is seen, comparing values the way GROUP BY
+ * does, so 20 and 20.0 are the same. Seen rows are kept in hash partitions; past the memory
+ * budget the largest partition is written to disk behind a Bloom filter, which a new row of the
+ * partition is checked against before the files are read, so rows still come out in scan order.
+ */
+public class DistinctRows implements AutoCloseable {
+    private static final int PARTITIONS = 16;
+    // each written partition is split further so a probe reads a fraction of it
+    private static final int FILES_PER_PARTITION = 16;
+    private static final int BLOOM_BITS = 1 << 20;
+    private static final int BLOOM_HASHES = 3;
+    private static final long DEFAULT_MEMORY_BUDGET = 16L << 20;
+    private static final long ENTRY_OVERHEAD = 64;
+
+    private final long memoryBudget;
+    private final ArrayList<HashSet<String>> seen = new ArrayList<>();
+    private final long[] partitionBytes = new long[PARTITIONS];
+    // null until the partition is first written out
+    private final BitSet[] blooms = new BitSet[PARTITIONS];
+    private final Path[][] seenFiles = new Path[PARTITIONS][];
+    private long bytes;
+
+    public DistinctRows()
+    {
+        this(DEFAULT_MEMORY_BUDGET);
+    }
+
+    DistinctRows(long memoryBudget)
+    {
+        this.memoryBudget = memoryBudget;
+
+        for (int p = 0; p < PARTITIONS; p++)
+        {
+            seen.add(new HashSet<>());
+        }
+    }
+
+    private static String key(String row)
+    {
+        StringBuilder key = new StringBuilder();
+
+        for (String value: row.split("\t", -1))
+        {
+            key.append(DBHelper.equalityKey(value)).append('\t');
+        }
+
+        return key.toString();
+    }
+
+    /** Whether the row is the first with its values, and so should be output. */
+    public boolean firstSeen(String row) throws IOException
+    {
+        String key = key(row);
+        int p = Math.floorMod(key.hashCode(), PARTITIONS);
+
+        if (seen.get(p).contains(key) || written(p, key))
+        {
+            return false;
+        }
+
+        seen.get(p).add(key);
+        long size = ENTRY_OVERHEAD + 2L * key.length();
+        partitionBytes[p] += size;
+        bytes += size;
+
+        if (bytes > memoryBudget)
+        {
+            spillLargest();
+        }
+
+        return true;
+    }
+
+    // Whether the key was written out with its partition, reading only the file it would be in
+    private boolean written(int p, String key) throws IOException
+    {
+        if (blooms[p] == null)
+        {
+            return false;
+        }
+
+        long hash = HyperLogLog.hash(key);
+
+        for (int i = 0; i < BLOOM_HASHES; i++)
+        {
+            if (!blooms[p].get(bloomBit(hash, i)))
+            {
+                return false;
+            }
+        }
+
+        Path file = seenFiles[p][fileOf(hash)];
+
+        if (file == null)
+        {
+            return false;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file))
+        {
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            {
+                if (line.equals(key))
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static int bloomBit(long hash, int i)
+    {
+        return Math.floorMod((int) hash + i * (int) (hash >>> 32), BLOOM_BITS);
+    }
+
+    private static int fileOf(long hash)
+    {
+        return (int) (hash >>> 60) & (FILES_PER_PARTITION - 1);
+    }
+
+    private void spillLargest() throws IOException
+    {
+        int largest = 0;
+
+        for (int p = 1; p < PARTITIONS; p++)
+        {
+            if (partitionBytes[p] > partitionBytes[largest])
+            {
+                largest = p;
+            }
+        }
+
+        if (blooms[largest] == null)
+        {
+            blooms[largest] = new BitSet(BLOOM_BITS);
+            seenFiles[largest] = new Path[FILES_PER_PARTITION];
+        }
+
+        ArrayList<List<String>> byFile = new ArrayList<>();
+
+        for (int f = 0; f < FILES_PER_PARTITION; f++)
+        {
+            byFile.add(new ArrayList<>());
+        }
+
+        for (String key: seen.get(largest))
+        {
+            long hash = HyperLogLog.hash(key);
+            byFile.get(fileOf(hash)).add(key);
+
+            for (int i = 0; i < BLOOM_HASHES; i++)
+            {
+                blooms[largest].set(bloomBit(hash, i));
+            }
+        }
+
+        for (int f = 0; f < FILES_PER_PARTITION; f++)
+        {
+            if (byFile.get(f).isEmpty())
+            {
+                continue;
+            }
+
+            if (seenFiles[largest][f] == null)
+            {
+                seenFiles[largest][f] = Files.createTempFile("distinct", ".seen");
+            }
+
+            Files.write(seenFiles[largest][f], byFile.get(f), StandardOpenOption.APPEND);
+        }
+
+        seen.set(largest, new HashSet<>());
+        bytes -= partitionBytes[largest];
+        partitionBytes[largest] = 0;
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            for (Path[] files: seenFiles)
+            {
+                for (Path file: files == null ? new Path[0] : files)
+                {
+                    if (file != null)
+                    {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        }
+
+        catch (IOException ignored)
+        {
+            // temporary files are left for the system to clear
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package edu.uob;
+
+/** How eagerly a database forces committed table files to disk. */
+public enum Durability {
+    /** fsync every commit before the command returns. */
+    SYNC,
+    /** commits arriving within a short window mark their tables dirty and wait on one write of each. */
+    GROUP,
+    /** commits only mark the table dirty; the background flusher writes it every few hundred ms. */
+    ASYNC;
+
+    public static Durability fromString(String mode)
+    {
+        for (Durability d: values())
+        {
+            if (d.name().equalsIgnoreCase(mode))
+            {
+                return d;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,154 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * GROUP BY as a hash table from group key to the aggregates of the group. Large inputs are split
+ * into id ranges aggregated on worker threads; the partial tables are merged in range order, so
+ * groups come out in the order of their first row either way.
+ */
+public class HashAggregation {
+    public static final int WORKER_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(WORKER_COUNT, r -> {
+        Thread t = new Thread(r, "aggregate-worker");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final int[] groupPositions;
+    private final ArrayList<Aggregate> aggregates;
+    private final int[] aggregatePositions;
+    private final LinkedHashMap<String, Group> groups = new LinkedHashMap<>();
+
+    private static final class Group {
+        private final String[] values;
+        private final Aggregate[] aggregates;
+
+        private Group(String[] values, Aggregate[] aggregates)
+        {
+            this.values = values;
+            this.aggregates = aggregates;
+        }
+    }
+
+    /**
+     * Groups on the values at the given positions of each row and feeds each aggregate the value
+     * at its position in the header, where position 0 is the row id.
+     */
+    public HashAggregation(int[] groupPositions, ArrayList<Aggregate> aggregates, int[] aggregatePositions)
+    {
+        this.groupPositions = groupPositions;
+        this.aggregates = aggregates;
+        this.aggregatePositions = aggregatePositions;
+    }
+
+    public void add(RowView row)
+    {
+        StringBuilder key = new StringBuilder();
+
+        for (int position: groupPositions)
+        {
+            key.append(DBHelper.equalityKey(row.get(position))).append('\t');
+        }
+
+        Group group = groups.get(key.toString());
+
+        if (group == null)
+        {
+            String[] groupValues = new String[groupPositions.length];
+            Aggregate[] groupAggregates = new Aggregate[aggregates.size()];
+
+            for (int i = 0; i < groupValues.length; i++)
+            {
+                groupValues[i] = row.get(groupPositions[i]);
+            }
+
+            for (int i = 0; i < groupAggregates.length; i++)
+            {
+                groupAggregates[i] = aggregates.get(i).fresh();
+            }
+
+            group = new Group(groupValues, groupAggregates);
+            groups.put(key.toString(), group);
+        }
+
+        for (int i = 0; i < aggregatePositions.length; i++)
+        {
+            group.aggregates[i].add(row.get(aggregatePositions[i]));
+        }
+    }
+
+    /** Folds in the groups of a partial result over later rows. */
+    public void merge(HashAggregation other)
+    {
+        for (Map.Entry<String, Group> entry: other.groups.entrySet())
+        {
+            Group group = groups.putIfAbsent(entry.getKey(), entry.getValue());
+
+            if (group != null)
+            {
+                for (int i = 0; i < group.aggregates.length; i++)
+                {
+                    group.aggregates[i].merge(entry.getValue().aggregates[i]);
+                }
+            }
+        }
+    }
+
+    /** Runs the partial aggregations, in parallel if there are several, and merges them in order. */
+    public static HashAggregation combine(List<Callable<HashAggregation>> partials)
+            throws InterruptedException, ExecutionException
+    {
+        if (partials.size() == 1)
+        {
+            try
+            {
+                return partials.get(0).call();
+            }
+
+            catch (Exception e)
+            {
+                throw new ExecutionException(e);
+            }
+        }
+
+        List<Future<HashAggregation>> results = WORKERS.invokeAll(partials);
+        HashAggregation combined = results.get(0).get();
+
+        for (Future<HashAggregation> result: results.subList(1, results.size()))
+        {
+            combined.merge(result.get());
+        }
+
+        return combined;
+    }
+
+    /** One line per group: the group values followed by the aggregate results. */
+    public ArrayList<String[]> results()
+    {
+        ArrayList<String[]> lines = new ArrayList<>();
+
+        for (Group group: groups.values())
+        {
+            String[] line = new String[group.values.length + group.aggregates.length];
+            System.arraycopy(group.values, 0, line, 0, group.values.length);
+
+            for (int i = 0; i < group.aggregates.length; i++)
+            {
+                line[group.values.length + i] = group.aggregates[i].result();
+            }
+
+            lines.add(line);
+        }
+
+        return lines;
+    }
+}
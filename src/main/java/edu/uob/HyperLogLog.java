@@ -0,0 +1,109 @@
+package edu.uob;
+
+import java.util.Base64;
+
+/**
+ * Estimates how many distinct values a column holds in a fixed 4 KB of registers, to within a
+ * few percent. Values are hashed through DBHelper.equalityKey, so 20 and 20.0 count once. A
+ * sketch only grows: values that are deleted or overwritten still count until it is rebuilt.
+ */
+public class HyperLogLog {
+    private static final int PRECISION = 12;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers;
+
+    public HyperLogLog()
+    {
+        this(new byte[REGISTERS]);
+    }
+
+    private HyperLogLog(byte[] registers)
+    {
+        this.registers = registers;
+    }
+
+    // FNV-1a over the characters, then a 64 bit finaliser to spread the bits
+    static long hash(String value)
+    {
+        long h = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < value.length(); i++)
+        {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    public void add(String value)
+    {
+        long h = hash(DBHelper.equalityKey(value));
+        int register = (int) (h >>> (64 - PRECISION));
+        // the set bit caps the rank once the remaining bits run out
+        int rank = Long.numberOfLeadingZeros((h << PRECISION) | (1L << (PRECISION - 1))) + 1;
+
+        if (rank > registers[register])
+        {
+            registers[register] = (byte) rank;
+        }
+    }
+
+    /** Folds in the values seen by another sketch. */
+    public void merge(HyperLogLog other)
+    {
+        for (int i = 0; i < REGISTERS; i++)
+        {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+    }
+
+    public long estimate()
+    {
+        double sum = 0;
+        int empty = 0;
+
+        for (byte r: registers)
+        {
+            sum += 1.0 / (1L << r);
+
+            if (r == 0)
+            {
+                empty++;
+            }
+        }
+
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+
+        // small cardinalities are counted more closely from the share of empty registers
+        if (estimate <= 2.5 * REGISTERS && empty > 0)
+        {
+            estimate = REGISTERS * Math.log((double) REGISTERS / empty);
+        }
+
+        return Math.round(estimate);
+    }
+
+    public String encode()
+    {
+        return Base64.getEncoder().encodeToString(registers);
+    }
+
+    public static HyperLogLog decode(String encoded)
+    {
+        byte[] registers = Base64.getDecoder().decode(encoded);
+
+        if (registers.length != REGISTERS)
+        {
+            throw new IllegalArgumentException("Expected " + REGISTERS + " registers");
+        }
+
+        return new HyperLogLog(registers);
+    }
+}
@@ -0,0 +1,83 @@
+package edu.uob;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Hands out row ids for one table. Ids are reserved in blocks by durably raising the ceiling kept
+ * in the table's .info file before any id of the block is used, so after a crash ids may be
+ * skipped but are never issued twice.
+ */
+public class IdAllocator {
+    private static final int BLOCK_SIZE = 1024;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path infoFile;
+    private int next;
+    private int ceiling;
+
+    public IdAllocator(Path infoFile, int next)
+    {
+        this.infoFile = infoFile;
+        this.next = next;
+        this.ceiling = next;
+    }
+
+    /** Returns the first of count consecutive ids, or -1 if a new block could not be reserved. */
+    public synchronized int allocate(int count)
+    {
+        if (next + count > ceiling)
+        {
+            int newCeiling = next + count + BLOCK_SIZE;
+
+            if (!storeCeiling(newCeiling))
+            {
+                return -1;
+            }
+
+            ceiling = newCeiling;
+        }
+
+        int first = next;
+        next += count;
+        return first;
+    }
+
+    private boolean storeCeiling(int value)
+    {
+        Path temp = infoFile.resolveSibling(infoFile.getFileName() + TEMP_SUFFIX);
+
+        try
+        {
+            Files.writeString(temp, Integer.toString(value));
+
+            // Always forced: the ceiling is what stops a restarted server reusing ids
+            if (!CommitScheduler.prepare(Durability.SYNC, temp))
+            {
+                Files.deleteIfExists(temp);
+                return false;
+            }
+
+            Files.move(temp, infoFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        catch (IOException e)
+        {
+            try
+            {
+                Files.deleteIfExists(temp);
+            }
+
+            catch (IOException ignored)
+            {
+                // recovery removes leftover temporaries on the next start
+            }
+
+            return false;
+        }
+
+        return CommitScheduler.installed(Durability.SYNC, infoFile.getParent());
+    }
+}
@@ -0,0 +1,30 @@
+package edu.uob;
+
+/** The kinds of secondary index a column can be given with CREATE ... INDEX. */
+public enum IndexKind {
+    /** one row set per distinct value, for boolean and other low-cardinality columns. */
+    BITMAP,
+    /** row sets per three character substring, narrowing LIKE on string columns. */
+    TRIGRAM;
+
+    public static IndexKind fromString(String kind)
+    {
+        for (IndexKind k: values())
+        {
+            if (k.name().equalsIgnoreCase(kind))
+            {
+                return k;
+            }
+        }
+
+        return null;
+    }
+
+    public TableIndex create(String column)
+    {
+        return switch (this) {
+            case BITMAP -> new BitmapIndex(column);
+            case TRIGRAM -> new TrigramIndex(column);
+        };
+    }
+}
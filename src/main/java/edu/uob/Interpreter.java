@@ -1,8 +1,12 @@
 package edu.uob;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.HashSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import static edu.uob.SyntaxType.*;
@@ -10,7 +14,11 @@ import static edu.uob.SyntaxType.*;
 public class Interpreter {
     private final Node root;
     private Database dbInUse;
+    private Snapshot snapshot;
+    private Transaction transaction;
     private static final String OK_MESSAGE = "[OK]";
+    private static final EnumSet<SyntaxType> TRANSACTIONAL_COMMANDS =
+            EnumSet.of(ALTER, INSERT, SELECT, UPDATE, DELETE, JOIN, LOAD, COMMIT, ROLLBACK);
     private final String storageFolderPath;
     public Interpreter(Node root, String storageFolderPath)
     {
@@ -25,6 +33,12 @@ public class Interpreter {
         {
             return errorMessage.toString();
         }
+
+        if (transaction != null && !TRANSACTIONAL_COMMANDS.contains(root.getType()))
+        {
+            return createErrorMessage("Command cannot be run inside a transaction, COMMIT or ROLLBACK first");
+        }
+
         switch (root.getType()) {
             case USE -> {
                 return interpretUse(root);
@@ -33,34 +47,216 @@ public class Interpreter {
                 return interpretCreateDatabase(root);
             }
             case CREATE_TABLE -> {
-                return interpretCreateTable(root);
+                return exclusively(root.getSibling(), () -> interpretCreateTable(root));
+            }
+            case CREATE_INDEX -> {
+                return exclusively(root.getSibling(), () -> interpretCreateIndex(root));
+            }
+            case CREATE_VIEW -> {
+                return interpretCreateView(root);
             }
             case DROP -> {
+                if (root.getSibling().getType() == TABLE_NAME)
+                {
+                    return exclusively(root.getSibling(), () -> interpretDrop(root));
+                }
                 return interpretDrop(root);
             }
             case ALTER -> {
-                return interpretAlter(root);
+                return exclusively(root.getSibling(), () -> interpretAlter(root));
             }
             case INSERT -> {
-                return interpretInsert(root);
+                return exclusively(root.getSibling(), () -> interpretInsert(root));
             }
             case SELECT -> {
-                return interpretSelect(root);
+                return shared(() -> interpretSelect(root));
             }
             case UPDATE -> {
-                return interpretUpdate(root);
+                return exclusively(root.getSibling(), () -> interpretUpdate(root));
             }
             case DELETE -> {
-                return interpretDelete(root);
+                return exclusively(root.getSibling(), () -> interpretDelete(root));
             }
             case JOIN -> {
-                return interpretJoin(root);
+                return shared(() -> interpretJoin(root));
+            }
+            case ANALYZE -> {
+                return shared(() -> interpretAnalyze(root));
+            }
+            case SET_DURABILITY -> {
+                return interpretSetDurability(root);
+            }
+            case LOAD -> {
+                return exclusively(root.getSibling(), () -> interpretLoad(root));
+            }
+            case BEGIN -> {
+                return interpretBegin();
+            }
+            case COMMIT -> {
+                return interpretCommit();
+            }
+            case ROLLBACK -> {
+                return interpretRollback();
             }
             default -> {
                 return createErrorMessage("Unexpected instruction");
             }
         }
     }
+
+    /*
+     * Writers hold the table's write lock for the whole statement and read their own staged
+     * changes. The changes are committed together if the statement succeeds and dropped if not.
+     */
+    private String exclusively(Node tableName, Supplier<String> command)
+    {
+        if (dbInUse == null)
+        {
+            return command.get();
+        }
+
+        StampedLock lock = LockManager.lockFor(dbInUse, tableName.getValue());
+
+        if (transaction != null)
+        {
+            return inTransaction(tableName, lock, command);
+        }
+
+        return LockManager.writeLocked(() -> {
+            Table existing = openIfExists(tableName.getValue());
+            String result;
+
+            try (Snapshot s = VersionClock.open(existing == null ? List.of() : List.of(existing)))
+            {
+                snapshot = s;
+                result = command.get();
+            }
+
+            Table t = dbInUse.getOpenTable(tableName.getValue());
+
+            if (t == null)
+            {
+                return result;
+            }
+
+            if (result.startsWith(OK_MESSAGE))
+            {
+                if (!t.commit())
+                {
+                    return createErrorMessage("Unable to save changes to table");
+                }
+                return result;
+            }
+
+            t.rollback();
+            return result;
+        }, lock, () -> createErrorMessage("Timed out waiting for table " + tableName.getValue()));
+    }
+
+    /*
+     * Inside a transaction the table lock is kept until COMMIT or ROLLBACK and the changes stay
+     * staged. A statement that fails rolls back the whole transaction.
+     */
+    private String inTransaction(Node tableName, StampedLock lock, Supplier<String> command)
+    {
+        if (!transaction.lock(lock))
+        {
+            transaction.rollback();
+            transaction = null;
+            return createErrorMessage("Timed out waiting for table " + tableName.getValue() + ", transaction rolled back");
+        }
+
+        Table existing = openIfExists(tableName.getValue());
+
+        if (existing != null)
+        {
+            transaction.addTable(existing);
+        }
+
+        String result;
+
+        try (Snapshot s = VersionClock.open(transaction.getTables()))
+        {
+            snapshot = s;
+            result = command.get();
+        }
+
+        if (!result.startsWith(OK_MESSAGE))
+        {
+            transaction.rollback();
+            transaction = null;
+            return result + System.lineSeparator() + "Transaction rolled back";
+        }
+
+        return result;
+    }
+
+    private Table openIfExists(String tableName)
+    {
+        if (!dbInUse.checkTableExists(tableName))
+        {
+            return null;
+        }
+
+        return Table.loadTable(tableName, dbInUse, null);
+    }
+
+    // Readers take no locks, they see the tables as of the last commit before they started
+    private String shared(Supplier<String> command)
+    {
+        try (Snapshot s = VersionClock.open(transaction == null ? List.of() : transaction.getTables()))
+        {
+            snapshot = s;
+            return command.get();
+        }
+    }
+
+    private String interpretBegin()
+    {
+        if (transaction != null)
+        {
+            return createErrorMessage("A transaction is already in progress");
+        }
+
+        if (dbInUse == null)
+        {
+            return createErrorMessage("Choose DB before starting a transaction");
+        }
+
+        transaction = new Transaction();
+        return OK_MESSAGE;
+    }
+
+    private String interpretCommit()
+    {
+        if (transaction == null)
+        {
+            return createErrorMessage("No transaction in progress");
+        }
+
+        boolean saved = transaction.commit();
+        transaction = null;
+
+        if (!saved)
+        {
+            return createErrorMessage("Unable to save changes to table");
+        }
+
+        return OK_MESSAGE;
+    }
+
+    private String interpretRollback()
+    {
+        if (transaction == null)
+        {
+            return createErrorMessage("No transaction in progress");
+        }
+
+        transaction.rollback();
+        transaction = null;
+        return OK_MESSAGE;
+    }
+
     private String interpretUse(Node n)
     {
         if (n.getType() == USE) {
@@ -120,6 +316,189 @@ public class Interpreter {
         return createErrorMessage("Could not create new table" + message);
     }
 
+    private String interpretCreateIndex(Node n)
+    {
+        if (dbInUse == null)
+        {
+            return createErrorMessage("Need to use DB in order to create an index");
+        }
+
+        String tableName = n.getSibling().getValue();
+
+        if (!dbInUse.checkTableExists(tableName))
+        {
+            return createErrorMessage("Table to index does not exist");
+        }
+
+        Table t = Table.loadTable(tableName, dbInUse, null);
+
+        if (t == null)
+        {
+            return createErrorMessage("Unable to load table");
+        }
+
+        StringBuilder attribute = new StringBuilder();
+
+        if (differentTableNames(t.getTableName(), n.getChild().getValue(), attribute))
+        {
+            return createErrorMessage("Table name associated with attribute " + n.getChild().getValue() +
+                    " is different to table loaded");
+        }
+
+        String attributeName = attribute.toString();
+
+        if (attributeName.equalsIgnoreCase("ID") || !t.containsColumn(attributeName, snapshot))
+        {
+            return createErrorMessage("Unable to index attribute " + attributeName);
+        }
+
+        if (t.hasIndex(attributeName))
+        {
+            return createErrorMessage("Attribute " + attributeName + " is already indexed");
+        }
+
+        if (!t.createIndex(IndexKind.fromString(n.getValue()), attributeName))
+        {
+            return createErrorMessage("Unable to store index");
+        }
+
+        return OK_MESSAGE;
+    }
+
+    /*
+     * Holds the write locks of the tables the view reads, then the view's own, while it is filled,
+     * so no commit to them can fall between reading their rows and the view following their changes.
+     */
+    private String interpretCreateView(Node n)
+    {
+        if (dbInUse == null)
+        {
+            return createErrorMessage("Need to use DB in order to create a materialized view");
+        }
+
+        String viewName = n.getSibling().getValue().toLowerCase();
+        List<String> tables = MaterializedView.baseTables(n.getChild());
+
+        if (tables == null)
+        {
+            return createErrorMessage("A materialized view has to be a SELECT or a JOIN");
+        }
+
+        ArrayList<StampedLock> locks = new ArrayList<>();
+
+        for (String tableName: new TreeSet<>(tables))
+        {
+            locks.add(LockManager.lockFor(dbInUse, tableName));
+        }
+
+        locks.add(LockManager.lockFor(dbInUse, viewName));
+        List<Long> stamps = LockManager.tryLockAll(locks);
+
+        if (stamps == null)
+        {
+            return createErrorMessage("Timed out waiting for the tables of materialized view " + viewName);
+        }
+
+        try (Snapshot s = VersionClock.open())
+        {
+            snapshot = s;
+            return createView(n, viewName);
+        }
+
+        finally
+        {
+            LockManager.unlockAll(locks, stamps);
+        }
+    }
+
+    private String createView(Node n, String viewName)
+    {
+        if (dbInUse.checkTableExists(viewName))
+        {
+            return createErrorMessage("Table called " + viewName + " exists already");
+        }
+
+        StringBuilder message = new StringBuilder();
+        MaterializedView view = MaterializedView.define(viewName, dbInUse, n.getChild(), n.getValue(), snapshot, message);
+
+        if (view == null)
+        {
+            return createErrorMessage("Unable to create materialized view: " + message);
+        }
+
+        ArrayList<String> heading = new ArrayList<>(view.getColumns());
+        heading.add(0, "id");
+        HashMap<Integer, ArrayList<String>> rows = new HashMap<>();
+        rows.put(-1, heading);
+        Table t = Table.loadTable(viewName, dbInUse, rows);
+
+        if (t == null)
+        {
+            return createErrorMessage("Unable to create table for materialized view");
+        }
+
+        if (!dbInUse.addView(view))
+        {
+            dbInUse.deleteTable(viewName);
+            return createErrorMessage("Unable to save materialized view");
+        }
+
+        view.reconcile(t, snapshot);
+
+        if (!t.commit())
+        {
+            return createErrorMessage("Unable to save changes to table");
+        }
+
+        return OK_MESSAGE;
+    }
+
+    private String viewChangedError(String tableName)
+    {
+        return createErrorMessage(tableName + " is a materialized view, it only changes with the tables it reads");
+    }
+
+    private String viewReaderError(String tableName)
+    {
+        StringBuilder names = new StringBuilder();
+        dbInUse.viewsOn(tableName).forEach(v -> names.append(" ").append(v.getName()));
+        return createErrorMessage("Table " + tableName + " is read by materialized view(s)" + names + ", drop them first");
+    }
+
+    private String interpretAnalyze(Node n)
+    {
+        if (dbInUse == null)
+        {
+            return createErrorMessage("Need to use DB in order to analyze a table");
+        }
+
+        String tableName = n.getSibling().getValue();
+
+        if (!dbInUse.checkTableExists(tableName))
+        {
+            return createErrorMessage("Table named " + tableName + " does not exist in " + dbInUse.getDatabaseName());
+        }
+
+        Table t = Table.loadTable(tableName, dbInUse, null);
+        TableStatistics statistics = t == null ? null : t.analyze(snapshot);
+
+        if (statistics == null)
+        {
+            return createErrorMessage("Unable to analyze table");
+        }
+
+        StringBuilder output = new StringBuilder(OK_MESSAGE).append(System.lineSeparator());
+        output.append("Column\tRows\tNulls\tDistinct\tMin\tMax");
+
+        for (TableStatistics.ColumnStatistics c: statistics.getColumns())
+        {
+            output.append(System.lineSeparator()).append(String.join("\t", c.getName(), Long.toString(statistics.getRowCount()),
+                    Long.toString(c.getNullCount()), Long.toString(c.getDistinct()), c.getMin(), c.getMax()));
+        }
+
+        return output.toString();
+    }
+
     private String interpretDrop(Node n)
     {
         switch (n.getSibling().getType()) {
@@ -133,6 +512,10 @@ public class Interpreter {
                             " does not exist in database " + dbInUse.getDatabaseName());
                 }
 
+                if (!dbInUse.viewsOn(n.getSibling().getValue()).isEmpty()) {
+                    return viewReaderError(n.getSibling().getValue());
+                }
+
                 if (!dbInUse.deleteTable(n.getSibling().getValue())) {
                     return createErrorMessage("Unable to delete table");
                 }
@@ -156,6 +539,8 @@ public class Interpreter {
 
     private boolean deleteDatabase(String databaseName)
     {
+        Database.discard(storageFolderPath, databaseName);
+
         try
         {
             String path = storageFolderPath + File.separator + databaseName;
@@ -255,6 +640,16 @@ public class Interpreter {
             return createErrorMessage("Table to alter does not exist");
         }
 
+        if (dbInUse.getView(tableName) != null)
+        {
+            return viewChangedError(tableName);
+        }
+
+        if (!dbInUse.viewsOn(tableName).isEmpty())
+        {
+            return viewReaderError(tableName);
+        }
+
         Table t = Table.loadTable(tableName, dbInUse, null);
 
         if (t == null)
@@ -281,7 +676,7 @@ public class Interpreter {
 
         switch (n.getChild().getType()) {
             case ADD -> {
-                if (t.containsColumn(attributeName)) {
+                if (t.containsColumn(attributeName, snapshot)) {
                     return createErrorMessage("Column name " + attributeName + " exists in table " + t.getTableName());
                 }
 
@@ -292,7 +687,7 @@ public class Interpreter {
                 return OK_MESSAGE;
             }
             case DROP -> {
-                if (!t.containsColumn(attributeName)) {
+                if (!t.containsColumn(attributeName, snapshot)) {
                     return createErrorMessage("Column name " + attributeName + " does not exist in table " + t.getTableName());
                 }
 
@@ -316,6 +711,11 @@ public class Interpreter {
             return createErrorMessage("Unable to insert values into table before DB specified");
         }
 
+        if (dbInUse.getView(n.getSibling().getValue()) != null)
+        {
+            return viewChangedError(n.getSibling().getValue());
+        }
+
         Table t = Table.loadTable(n.getSibling().getValue(), dbInUse, null);
 
         if (t == null)
@@ -323,23 +723,30 @@ public class Interpreter {
             return createErrorMessage("Could not load table");
         }
 
-        LinkedHashSet<String> valuesToAdd = new LinkedHashSet<>();
-        gatherValueList(n.getChild(), valuesToAdd);
+        ArrayList<ArrayList<String>> rowsToAdd = new ArrayList<>();
 
-        if (valuesToAdd.size() != t.editableColumns())
+        for (Node tuple = n.getChild(); tuple != null; tuple = tuple.getChild())
         {
-            return createErrorMessage("You must insert exactly " + t.editableColumns() + " values");
+            ArrayList<String> valuesToAdd = new ArrayList<>();
+            gatherValueList(tuple, valuesToAdd);
+
+            if (valuesToAdd.size() != t.editableColumns(snapshot))
+            {
+                return createErrorMessage("You must insert exactly " + t.editableColumns(snapshot) + " values");
+            }
+
+            rowsToAdd.add(valuesToAdd);
         }
 
-        if (!t.addRow(new ArrayList<>(valuesToAdd)))
+        if (!t.addRows(rowsToAdd))
         {
-            return createErrorMessage("Unable to add values");
+            return createErrorMessage("Unable to reserve ids for new rows");
         }
 
         return OK_MESSAGE;
     }
 
-    private void gatherValueList(Node n, HashSet<String> values)
+    private void gatherValueList(Node n, ArrayList<String> values)
     {
         if (n == null)
         {
@@ -372,6 +779,15 @@ public class Interpreter {
             return createErrorMessage("Unable to load table");
         }
 
+        Node firstClause = n.getSibling().getSibling();
+
+        boolean distinct = "DISTINCT".equals(n.getValue());
+
+        if (n.getChild().getType() == AGGREGATE_LIST || (firstClause != null && firstClause.getType() == GROUP_BY))
+        {
+            return distinct ? createErrorMessage("DISTINCT cannot be used with aggregate functions") : interpretAggregateSelect(n, t);
+        }
+
         ArrayList<String> rawSelectedAttributes = interpretWildAttributes(n.getChild(), t);
         ArrayList<String> selectedAttributes = new ArrayList<>();
 
@@ -387,7 +803,7 @@ public class Interpreter {
 
             attribute = tempAttribute.toString();
 
-            if (!t.containsColumn(attribute))
+            if (!t.containsColumn(attribute, snapshot))
             {
                 return createErrorMessage("Unable to find attribute " + attribute + " in table");
             }
@@ -396,17 +812,45 @@ public class Interpreter {
         }
 
         StringBuilder output = new StringBuilder();
+        Node orderBy = null;
+        Node limit = null;
+
+        for (Node clause = n.getSibling().getSibling(); clause != null; clause = clause.getSibling())
+        {
+            if (clause.getType() == ORDER_BY)
+            {
+                orderBy = clause;
+            }
+
+            else if (clause.getType() == LIMIT)
+            {
+                limit = clause;
+            }
+        }
+
+        int rowLimit = limit == null ? -1 : Integer.parseInt(limit.getValue());
+        int rowOffset = limit == null || limit.getChild() == null ? 0 : Integer.parseInt(limit.getChild().getValue());
+
+        if (orderBy != null)
+        {
+            return interpretOrderedSelect(n, orderBy, t, selectedAttributes, distinct, rowOffset, rowLimit);
+        }
+
+        if (limit != null || distinct)
+        {
+            return interpretStreamedSelect(n, t, selectedAttributes, distinct, rowOffset, rowLimit);
+        }
 
         if (n.getChild().getSibling() != null)
         {
-            HashSet<Integer> rowsToSelect = interpretCondition(n.getChild().getSibling(), t);
+            RowSet rowsToSelect = interpretCondition(n.getChild().getSibling(), t);
 
             if (rowsToSelect == null)
             {
                 return createErrorMessage("Error in interpreting condition(s)");
             }
 
-            if (!t.selectTable(output, selectedAttributes, rowsToSelect))
+            if (!t.selectTable(output, selectedAttributes, rowsToSelect, snapshot))
             {
                 return createErrorMessage("Error in selecting table");
 
@@ -415,7 +859,7 @@ public class Interpreter {
 
         else
         {
-            if (!t.selectTable(output, selectedAttributes))
+            if (!t.selectTable(output, selectedAttributes, snapshot))
             {
                 return createErrorMessage("Error in selecting table");
             }
@@ -424,11 +868,251 @@ public class Interpreter {
         return OK_MESSAGE + System.lineSeparator() + output;
     }
 
+    /*
+     * Without an ORDER BY the rows come out in id order, so the condition is checked row by row
+     * as the table is scanned and the scan stops once the page is full. DISTINCT drops repeated
+     * rows in the same pass, before they count towards the page.
+     */
+    private String interpretStreamedSelect(Node n, Table t, ArrayList<String> selectedAttributes, boolean distinct,
+                                           int offset, int limit)
+    {
+        RowFilter filter = null;
+
+        if (n.getChild().getSibling() != null)
+        {
+            filter = interpretFilter(n.getChild().getSibling(), t);
+
+            if (filter == null)
+            {
+                return createErrorMessage("Error in interpreting condition(s)");
+            }
+        }
+
+        StringBuilder output = new StringBuilder();
+
+        try (DistinctRows distinctRows = distinct ? new DistinctRows() : null)
+        {
+            t.selectTable(output, selectedAttributes, filter, distinctRows, offset, limit, snapshot);
+        }
+
+        catch (IOException e)
+        {
+            return createErrorMessage("Unable to remove duplicate rows");
+        }
+
+        return OK_MESSAGE + System.lineSeparator() + output;
+    }
+
+    // The per-row counterpart of interpretCondition
+    private RowFilter interpretFilter(Node n, Table t)
+    {
+        ConditionPlan plan = planCondition(n, t);
+
+        return plan == null ? null : plan.filter();
+    }
+
+    private String interpretOrderedSelect(Node n, Node orderBy, Table t, ArrayList<String> selectedAttributes,
+                                          boolean distinct, int offset, int limit)
+    {
+        StringBuilder orderColumn = new StringBuilder();
+
+        if (differentTableNames(t.getTableName(), orderBy.getChild().getValue(), orderColumn))
+        {
+            return createErrorMessage("Table name associated with attribute " + orderBy.getChild().getValue() +
+                    " is different to table loaded");
+        }
+
+        if (!t.containsColumn(orderColumn.toString(), snapshot))
+        {
+            return createErrorMessage("Unable to order by attribute " + orderColumn + ", it is not in the table");
+        }
+
+        if (distinct && indexOfIgnoreCase(selectedAttributes, orderColumn.toString()) < 0)
+        {
+            return createErrorMessage("Attribute " + orderColumn + " has to be selected to order DISTINCT rows");
+        }
+
+        RowSet rowsToSelect = null;
+
+        if (n.getChild().getSibling() != null)
+        {
+            rowsToSelect = interpretCondition(n.getChild().getSibling(), t);
+
+            if (rowsToSelect == null)
+            {
+                return createErrorMessage("Error in interpreting condition(s)");
+            }
+        }
+
+        StringBuilder output = new StringBuilder();
+
+        try (DistinctRows distinctRows = distinct ? new DistinctRows() : null)
+        {
+            t.selectTable(output, selectedAttributes, rowsToSelect, orderColumn.toString(),
+                    orderBy.getValue().equals("DESC"), distinctRows, offset, limit, snapshot);
+        }
+
+        catch (IOException e)
+        {
+            return createErrorMessage("Unable to sort rows");
+        }
+
+        return OK_MESSAGE + System.lineSeparator() + output;
+    }
+
+    /*
+     * Aggregates are computed in one pass over the matching rows. Without GROUP BY they give a
+     * single row, with it one row per group, and plain attributes have to be grouped ones.
+     */
+    private String interpretAggregateSelect(Node n, Table t)
+    {
+        Node groupBy = null;
+
+        for (Node clause = n.getSibling().getSibling(); clause != null; clause = clause.getSibling())
+        {
+            if (clause.getType() != GROUP_BY)
+            {
+                return createErrorMessage("ORDER BY and LIMIT cannot be used with aggregate functions");
+            }
+
+            groupBy = clause;
+        }
+
+        ArrayList<String> groupColumns = new ArrayList<>();
+
+        for (Node a = groupBy == null ? null : groupBy.getChild(); a != null; a = a.getChild())
+        {
+            String column = resolveColumn(t, a.getValue());
+
+            if (column == null)
+            {
+                return createErrorMessage("Unable to find attribute " + a.getValue() + " in table");
+            }
+
+            groupColumns.add(column);
+        }
+
+        if (n.getChild().getType() == SELECT_ALL)
+        {
+            return createErrorMessage("SELECT * cannot be grouped, list the attributes");
+        }
+
+        // Each output column is a group column or, after those, an aggregate
+        ArrayList<Aggregate> aggregates = new ArrayList<>();
+        ArrayList<Integer> outputs = new ArrayList<>();
+        StringJoiner labels = new StringJoiner("\t");
+        boolean aggregateList = n.getChild().getType() == AGGREGATE_LIST;
+
+        for (Node a = aggregateList ? n.getChild().getChild() : n.getChild(); a != null; a = aggregateList ? a.getSibling() : a.getChild())
+        {
+            if (a.getType() == ATTRIBUTE_NAME)
+            {
+                String column = resolveColumn(t, a.getValue());
+                int group = column == null ? -1 : indexOfIgnoreCase(groupColumns, column);
+
+                if (group < 0)
+                {
+                    return createErrorMessage("Attribute " + a.getValue() + " has to be in GROUP BY to be selected");
+                }
+
+                outputs.add(group);
+                labels.add(column);
+                continue;
+            }
+
+            String column = null;
+
+            if (a.getChild().getType() == ATTRIBUTE_NAME)
+            {
+                column = resolveColumn(t, a.getChild().getValue());
+
+                if (column == null)
+                {
+                    return createErrorMessage("Unable to find attribute " + a.getChild().getValue() + " in table");
+                }
+            }
+
+            Aggregate aggregate = new Aggregate(Aggregate.Function.fromString(a.getValue()), column);
+            outputs.add(groupColumns.size() + aggregates.size());
+            aggregates.add(aggregate);
+            labels.add(aggregate.getLabel());
+        }
+
+        RowSet rowsToSelect = null;
+
+        if (n.getChild().getSibling() != null)
+        {
+            rowsToSelect = interpretCondition(n.getChild().getSibling(), t);
+
+            if (rowsToSelect == null)
+            {
+                return createErrorMessage("Error in interpreting condition(s)");
+            }
+        }
+
+        StringBuilder output = new StringBuilder(OK_MESSAGE).append(System.lineSeparator()).append(labels);
+
+        if (groupBy == null)
+        {
+            t.aggregate(aggregates, rowsToSelect, snapshot);
+            StringJoiner results = new StringJoiner("\t");
+            aggregates.forEach(a -> results.add(a.result()));
+            return output.append(System.lineSeparator()).append(results).toString();
+        }
+
+        HashAggregation groups;
+
+        try
+        {
+            groups = t.groupAggregate(groupColumns, aggregates, rowsToSelect, snapshot);
+        }
+
+        catch (InterruptedException | ExecutionException e)
+        {
+            return createErrorMessage("Unable to group rows");
+        }
+
+        for (String[] line: groups.results())
+        {
+            StringJoiner results = new StringJoiner("\t");
+            outputs.forEach(i -> results.add(line[i]));
+            output.append(System.lineSeparator()).append(results);
+        }
+
+        return output.toString();
+    }
+
+    // The stored name of an attribute of the table, without its table prefix, or null if it has none
+    private String resolveColumn(Table t, String attribute)
+    {
+        StringBuilder column = new StringBuilder();
+
+        if (differentTableNames(t.getTableName(), attribute, column) || !t.containsColumn(column.toString(), snapshot))
+        {
+            return null;
+        }
+
+        return column.toString();
+    }
+
+    private static int indexOfIgnoreCase(ArrayList<String> names, String name)
+    {
+        for (int i = 0; i < names.size(); i++)
+        {
+            if (names.get(i).equalsIgnoreCase(name))
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
     private ArrayList<String> interpretWildAttributes(Node n, Table t)
     {
         ArrayList<String> attributeList = null;
         switch (n.getType()) {
-            case SELECT_ALL -> attributeList = t.getColumnNames();
+            case SELECT_ALL -> attributeList = t.getColumnNames(snapshot);
             case ATTRIBUTE_NAME -> {
                 attributeList = new ArrayList<>();
                 visitAttributeNodes(n, attributeList);
@@ -452,69 +1136,61 @@ public class Interpreter {
         visitAttributeNodes(n.getChild(), attributeList);
     }
 
-    private HashSet<Integer> interpretCondition(Node n, Table t)
+    private RowSet interpretCondition(Node n, Table t)
     {
         if (n == null)
         {
-            return new HashSet<>();
+            return new RowSet();
         }
 
-        switch(n.getType())
-        {
-            case CONDITION:
-            {
-                HashSet<Integer> values1 = interpretCondition(n.getChild(), t);
+        ConditionPlan plan = planCondition(n, t);
+
+        return plan == null ? null : plan.rows(t, snapshot);
+    }
 
-                if (values1 == null)
+    /*
+     * Turns the condition tree into a plan ordered by the table's statistics. Every attribute is
+     * checked here, so a condition that is never evaluated still fails the query if it is wrong.
+     */
+    private ConditionPlan planCondition(Node n, Table t)
+    {
+        switch (n.getType()) {
+            case CONDITION -> {
+                ConditionPlan first = planCondition(n.getChild(), t);
+
+                if (first == null || !isNodeBoolean(n.getSibling()))
                 {
-                    return null;
+                    return first;
                 }
 
-                if (isNodeBoolean(n.getSibling()))
-                {
-                    HashSet<Integer> values2 = interpretCondition(n.getSibling().getSibling(), t);
+                ConditionPlan second = planCondition(n.getSibling().getSibling(), t);
 
-                    if (values2 == null)
-                    {
-                        return null;
-                    }
+                return second == null ? null : ConditionPlan.combine(n.getSibling().getType(), first, second);
+            }
+            case ATTRIBUTE_NAME -> {
+                StringBuilder columnName = new StringBuilder();
 
-                    switch(n.getSibling().getType())
-                    {
-                        case AND:
-                        {
-                            values1.retainAll(values2);
-                            break;
-                        }
-
-                        case OR:
-                        {
-                            values1.addAll(values2);
-                            break;
-                        }
-
-                        default:
-                        {
-
-                        }
-                    }
+                if (differentTableNames(t.getTableName(), n.getValue(), columnName))
+                {
+                    return null;
                 }
 
-               return values1;
-            }
-
-            case ATTRIBUTE_NAME:
-            {
-                return getRelevantRows(n, t);
-            }
+                String column = columnName.toString();
+                SyntaxType operator = n.getSibling().getType();
+                String value = n.getSibling().getSibling().getValue();
+                RowFilter filter = t.rowFilter(column, operator, value, snapshot);
 
-            default:
-            {
+                if (filter == null)
+                {
+                    return null;
+                }
 
+                return ConditionPlan.condition(column, operator, value, filter, t.canAnswer(column, operator, value), t.getStatistics());
+            }
+            default -> {
+                return null;
             }
         }
-
-        return null;
     }
 
     private String interpretUpdate(Node n)
@@ -531,6 +1207,11 @@ public class Interpreter {
             return createErrorMessage("Table to be updated does not exist");
         }
 
+        if (dbInUse.getView(tableName) != null)
+        {
+            return viewChangedError(tableName);
+        }
+
         Table t = Table.loadTable(tableName, dbInUse, null);
 
         if (t == null)
@@ -556,7 +1237,7 @@ public class Interpreter {
 
             attribute = tempAttribute.toString();
 
-            if (!t.containsColumn(attribute))
+            if (!t.containsColumn(attribute, snapshot))
             {
                 return createErrorMessage("Table " + tableName + " does not contain " + attribute);
             }
@@ -564,14 +1245,14 @@ public class Interpreter {
             attributeNames.add(attribute);
         }
 
-        HashSet<Integer> rowsToChange = interpretCondition(n.getSibling().getSibling(), t);
+        RowSet rowsToChange = interpretCondition(n.getSibling().getSibling(), t);
 
         if (rowsToChange == null)
         {
             return createErrorMessage("Error in interpreting condition(s)");
         }
 
-        for (int i: rowsToChange)
+        for (int i: rowsToChange.toArray())
         {
             for (int j = 0; j < attributeNames.size(); j++)
             {
@@ -598,23 +1279,6 @@ public class Interpreter {
         getNameValuePairs(n.getChild(), attributes, values);
     }
 
-    private HashSet<Integer> getRelevantRows(Node n, Table t)
-    {
-        String columnName = n.getValue();
-        StringBuilder tempAttribute = new StringBuilder();
-
-        if (differentTableNames(t.getTableName(), columnName, tempAttribute))
-        {
-            return null;
-        }
-
-        columnName = tempAttribute.toString();
-        SyntaxType comparator = n.getSibling().getType();
-        String value = n.getSibling().getSibling().getValue();
-
-        return t.getRelevantRows(columnName, comparator, value);
-    }
-
     private boolean isNodeBoolean(Node n)
     {
         if (n == null)
@@ -640,6 +1304,11 @@ public class Interpreter {
 
         }
 
+        if (dbInUse.getView(tableName) != null)
+        {
+            return viewChangedError(tableName);
+        }
+
         Table t = Table.loadTable(tableName, dbInUse, null);
 
         if (t == null)
@@ -647,14 +1316,14 @@ public class Interpreter {
             return createErrorMessage("Could not load table");
         }
 
-        HashSet<Integer> rowsToDelete = interpretCondition(n.getChild(), t);
+        RowSet rowsToDelete = interpretCondition(n.getChild(), t);
 
         if (rowsToDelete == null)
         {
             return createErrorMessage("Error in interpreting condition(s)");
         }
 
-        for (int row: rowsToDelete)
+        for (int row: rowsToDelete.toArray())
         {
             t.removeRow(row);
         }
@@ -699,12 +1368,44 @@ public class Interpreter {
         attribute1 = column1.toString();
         attribute2 = column2.toString();
 
-        if (!t1.containsColumn(attribute1) || !t2.containsColumn(attribute2))
+        if (!t1.containsColumn(attribute1, snapshot) || !t2.containsColumn(attribute2, snapshot))
         {
             return createErrorMessage("Ensure that selected attributes are present in table");
         }
 
-        ArrayList<ArrayList<String>> joinedTable = dbInUse.joinTables(t1, t2, attribute1, attribute2);
+        StringBuilder message = new StringBuilder();
+        JoinQuery query = JoinQuery.resolve(n, t1.getTableName(), t1.getColumnNames(snapshot), t2.getTableName(),
+                t2.getColumnNames(snapshot), message);
+
+        if (query == null)
+        {
+            return createErrorMessage(message.toString());
+        }
+
+        ArrayList<RowSet> sides = new ArrayList<>();
+
+        for (int side = JoinQuery.LEFT; side <= JoinQuery.RIGHT; side++)
+        {
+            Table t = side == JoinQuery.LEFT ? t1 : t2;
+            ConditionPlan plan = null;
+
+            for (Node condition: query.getConditions(side))
+            {
+                ConditionPlan part = planCondition(condition, t);
+
+                if (part == null)
+                {
+                    return createErrorMessage("Error in interpreting condition(s)");
+                }
+
+                plan = plan == null ? part : ConditionPlan.combine(AND, plan, part);
+            }
+
+            // each table's rows are filtered before the join, with its indexes where they help
+            sides.add(plan == null ? null : plan.rows(t, snapshot));
+        }
+
+        ArrayList<ArrayList<String>> joinedTable = dbInUse.joinTables(t1, t2, query, sides.get(0), sides.get(1), snapshot);
 
         if (joinedTable == null)
         {
@@ -719,6 +1420,88 @@ public class Interpreter {
 
     }
 
+    private String interpretLoad(Node n)
+    {
+        if (dbInUse == null)
+        {
+            return createErrorMessage("Choose DB before loading data into a table");
+        }
+
+        String tableName = n.getSibling().getValue();
+
+        if (!dbInUse.checkTableExists(tableName))
+        {
+            return createErrorMessage("Table to load into does not exist");
+        }
+
+        if (dbInUse.getView(tableName) != null)
+        {
+            return viewChangedError(tableName);
+        }
+
+        Table t = Table.loadTable(tableName, dbInUse, null);
+
+        if (t == null)
+        {
+            return createErrorMessage("Could not load table");
+        }
+
+        File file = new File(n.getChild().getValue());
+
+        if (!file.isFile())
+        {
+            return createErrorMessage("File " + file + " does not exist");
+        }
+
+        BulkLoader loader = new BulkLoader(t, file.toPath(), snapshot);
+
+        try
+        {
+            if (!loader.load())
+            {
+                return createErrorMessage("Unable to reserve ids for loaded rows");
+            }
+        }
+
+        catch (Exception e)
+        {
+            return createErrorMessage("Unable to read " + file + ": " + e.getMessage());
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append("Loaded ").append(loader.getLoaded()).append(" rows, rejected ").append(loader.getRejected())
+                .append(", read ").append(loader.getRead()).append(" lines");
+
+        for (String error: loader.getErrors())
+        {
+            report.append(System.lineSeparator()).append(error);
+        }
+
+        return OK_MESSAGE + System.lineSeparator() + report;
+    }
+
+    private String interpretSetDurability(Node n)
+    {
+        if (dbInUse == null)
+        {
+            return createErrorMessage("Choose DB before setting its durability");
+        }
+
+        Durability durability = Durability.fromString(n.getSibling().getValue());
+
+        if (durability == null)
+        {
+            return createErrorMessage("Unknown durability mode");
+        }
+
+        if (!dbInUse.setDurability(durability))
+        {
+            return createErrorMessage("Unable to store durability setting");
+        }
+
+        return OK_MESSAGE;
+    }
+
     private String createErrorMessage(String message)
     {
         return "[ERROR]" + System.lineSeparator() + message;
@@ -742,7 +1525,7 @@ public class Interpreter {
 
     private void useDB(String databaseName)
     {
-        dbInUse = new Database(storageFolderPath, databaseName);
+        dbInUse = Database.open(storageFolderPath, databaseName);
     }
 
     public void setDbInUse(Database db)
@@ -755,6 +1538,16 @@ public class Interpreter {
         return dbInUse;
     }
 
+    public void setTransaction(Transaction transaction)
+    {
+        this.transaction = transaction;
+    }
+
+    public Transaction getTransaction()
+    {
+        return transaction;
+    }
+
     private boolean createNewDB(String databaseName)
     {
         return Database.createDatabase(storageFolderPath, databaseName.toLowerCase());
@@ -0,0 +1,221 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A JOIN resolved against the columns of its two tables: the join columns, the columns it shows
+ * and its WHERE condition split into the parts ANDed together, each given to the one table it
+ * reads so it can be checked on that table's rows before they are joined.
+ */
+public class JoinQuery {
+    public static final int LEFT = 0;
+    public static final int RIGHT = 1;
+
+    private final String[] tables;
+    private final List<ArrayList<String>> headers;
+    private final int[] keys = new int[2];
+    // Table and header position of each column shown, where position 0 is the row's id
+    private final ArrayList<int[]> columns = new ArrayList<>();
+    private final List<ArrayList<Node>> conditions = List.of(new ArrayList<>(), new ArrayList<>());
+
+    private JoinQuery(String left, ArrayList<String> leftHeader, String right, ArrayList<String> rightHeader)
+    {
+        tables = new String[] {left, right};
+        headers = List.of(leftHeader, rightHeader);
+    }
+
+    /**
+     * Resolves the JOIN node against the tables' column names. Returns null with the reason in
+     * the message if a column is missing or ambiguous, or a condition reads both tables.
+     */
+    public static JoinQuery resolve(Node join, String left, ArrayList<String> leftHeader, String right,
+                                    ArrayList<String> rightHeader, StringBuilder message)
+    {
+        JoinQuery query = new JoinQuery(left, leftHeader, right, rightHeader);
+        Node leftKey = join.getChild();
+        Node rightKey = leftKey.getChild();
+        query.keys[LEFT] = position(leftHeader, left, leftKey.getValue());
+        query.keys[RIGHT] = position(rightHeader, right, rightKey.getValue());
+
+        if (query.keys[LEFT] < 0 || query.keys[RIGHT] < 0)
+        {
+            message.append("Ensure that selected attributes are present in table");
+            return null;
+        }
+
+        if (rightKey.getSibling() == null)
+        {
+            // every column but the ids and the join columns
+            for (int side = LEFT; side <= RIGHT; side++)
+            {
+                for (int i = 1; i < query.headers.get(side).size(); i++)
+                {
+                    if (i != query.keys[side])
+                    {
+                        query.columns.add(new int[] {side, i});
+                    }
+                }
+            }
+        }
+
+        for (Node n = rightKey.getSibling(); n != null; n = n.getChild())
+        {
+            int[] column = query.locate(n.getValue(), message);
+
+            if (column == null)
+            {
+                return null;
+            }
+
+            query.columns.add(column);
+        }
+
+        return query.splitCondition(leftKey.getSibling(), message) ? query : null;
+    }
+
+    // Position in the header of a column, given with or without its table's name, or -1
+    static int position(ArrayList<String> header, String table, String attribute)
+    {
+        if (attribute.contains("."))
+        {
+            String[] components = attribute.split(Pattern.quote("."));
+
+            if (!components[0].equalsIgnoreCase(table))
+            {
+                return -1;
+            }
+
+            attribute = components[1];
+        }
+
+        for (int i = 0; i < header.size(); i++)
+        {
+            if (header.get(i).equalsIgnoreCase(attribute))
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    // The table and position of a column; one without a table name has to be in just one of them
+    private int[] locate(String attribute, StringBuilder message)
+    {
+        int inLeft = position(headers.get(LEFT), tables[LEFT], attribute);
+        int inRight = position(headers.get(RIGHT), tables[RIGHT], attribute);
+
+        if (inLeft >= 0 && inRight >= 0 && !tables[LEFT].equalsIgnoreCase(tables[RIGHT]))
+        {
+            message.append("Attribute ").append(attribute).append(" is in both tables, name its table");
+            return null;
+        }
+
+        if (inLeft < 0 && inRight < 0)
+        {
+            message.append("Attribute ").append(attribute).append(" is not in either table");
+            return null;
+        }
+
+        return inLeft >= 0 ? new int[] {LEFT, inLeft} : new int[] {RIGHT, inRight};
+    }
+
+    /*
+     * Groups nest to the right, so a condition followed by AND is one part and the rest of the
+     * chain another, while one followed by OR takes the rest of the chain with it.
+     */
+    private boolean splitCondition(Node n, StringBuilder message)
+    {
+        while (n != null)
+        {
+            Node bool = n.getSibling();
+            boolean and = bool != null && bool.getType() == SyntaxType.AND;
+            Node part = and ? n.getChild() : n;
+            ArrayList<String> attributes = new ArrayList<>();
+            collectAttributes(part, attributes);
+            int side = -1;
+
+            for (String attribute: attributes)
+            {
+                int[] column = locate(attribute, message);
+
+                if (column == null)
+                {
+                    return false;
+                }
+
+                if (side >= 0 && column[0] != side)
+                {
+                    message.append("Each condition ANDed in a JOIN has to read one table");
+                    return false;
+                }
+
+                side = column[0];
+            }
+
+            conditions.get(side).add(part);
+            n = and ? bool.getSibling() : null;
+        }
+
+        return true;
+    }
+
+    private static void collectAttributes(Node n, ArrayList<String> attributes)
+    {
+        if (n == null)
+        {
+            return;
+        }
+
+        if (n.getType() == SyntaxType.ATTRIBUTE_NAME)
+        {
+            attributes.add(n.getValue());
+            return;
+        }
+
+        collectAttributes(n.getChild(), attributes);
+        Node bool = n.getSibling();
+
+        if (bool != null && (bool.getType() == SyntaxType.AND || bool.getType() == SyntaxType.OR))
+        {
+            collectAttributes(bool.getSibling(), attributes);
+        }
+    }
+
+    /** Position of a table's join column in its header, where 0 is the id. */
+    public int getKey(int side)
+    {
+        return keys[side];
+    }
+
+    /** The parts of the WHERE condition reading one table, all of which a row has to pass. */
+    public ArrayList<Node> getConditions(int side)
+    {
+        return conditions.get(side);
+    }
+
+    /** Table and header position of each column shown. */
+    public ArrayList<int[]> getColumns()
+    {
+        return columns;
+    }
+
+    public String getTable(int side)
+    {
+        return tables[side];
+    }
+
+    /** The column's name in its table's header. */
+    public String getColumnName(int[] column)
+    {
+        return headers.get(column[0]).get(column[1]);
+    }
+
+    /** A value of a row, where position 0 is its id. */
+    public static String value(int id, List<String> values, int position)
+    {
+        return position == 0 ? Integer.toString(id) : values.get(position - 1);
+    }
+}
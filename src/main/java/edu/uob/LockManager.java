@@ -0,0 +1,96 @@
+package edu.uob;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Table level write locks shared by every session, keyed by database and table name. Writers to
+ * the same table queue here; readers never do, they read a {@link Snapshot} instead.
+ */
+public class LockManager {
+    // Writers waiting on each other's tables give up instead of deadlocking
+    static final long LOCK_TIMEOUT_MS = 5000;
+
+    private static final ConcurrentHashMap<String, StampedLock> LOCKS = new ConcurrentHashMap<>();
+
+    private LockManager()
+    {
+    }
+
+    public static StampedLock lockFor(Database database, String tableName)
+    {
+        String key = database.getPath() + File.separator + database.getDatabaseName() + File.separator + tableName.toLowerCase();
+        return LOCKS.computeIfAbsent(key, k -> new StampedLock());
+    }
+
+    /** The stamp of the write lock, or 0 if it was not free in time. */
+    public static long tryLock(StampedLock lock)
+    {
+        try
+        {
+            return lock.tryWriteLock(LOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    /** Takes every lock in order, or none and null if one of them was not free in time. */
+    public static List<Long> tryLockAll(List<StampedLock> locks)
+    {
+        ArrayList<Long> stamps = new ArrayList<>();
+
+        for (StampedLock lock: locks)
+        {
+            long stamp = tryLock(lock);
+
+            if (stamp == 0)
+            {
+                unlockAll(locks.subList(0, stamps.size()), stamps);
+                return null;
+            }
+
+            stamps.add(stamp);
+        }
+
+        return stamps;
+    }
+
+    /** Releases locks taken by {@link #tryLockAll}, last first. */
+    public static void unlockAll(List<StampedLock> locks, List<Long> stamps)
+    {
+        for (int i = locks.size() - 1; i >= 0; i--)
+        {
+            locks.get(i).unlockWrite(stamps.get(i));
+        }
+    }
+
+    /** Runs the write under the lock, or returns what timedOut gives if the lock was not free in time. */
+    public static String writeLocked(Supplier<String> write, StampedLock lock, Supplier<String> timedOut)
+    {
+        long stamp = tryLock(lock);
+
+        if (stamp == 0)
+        {
+            return timedOut.get();
+        }
+
+        try
+        {
+            return write.get();
+        }
+
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
+    }
+}
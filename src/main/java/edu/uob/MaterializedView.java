@@ -0,0 +1,643 @@
+package edu.uob;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A SELECT or JOIN whose result is kept as a table of its own. A commit to a table the view reads
+ * hands its row changes to the view, which stages the rows they add, change or remove in the
+ * same commit. The query only runs in full when the view is created and the first time the view
+ * is maintained in a process, which lines the stored rows up with its tables again.
+ */
+public class MaterializedView {
+    private final String name;
+    private final Database database;
+    private final String definition;
+    private final SyntaxType kind;
+    // Lower case, the left table first for a JOIN
+    private final List<String> tables;
+    private final ArrayList<String> columns = new ArrayList<>();
+
+    // SELECT: the rows passing the filter, keeping their table's ids
+    private RowFilter filter;
+    private final ArrayList<Integer> projection = new ArrayList<>();
+
+    // JOIN: its columns and the filter each table's rows pass before they are joined
+    private JoinQuery join;
+    private final RowFilter[] sideFilters = new RowFilter[2];
+    // The pair of rows behind each view row, and the view rows each row takes part in
+    private final HashMap<Integer, int[]> pairs = new HashMap<>();
+    private final HashMap<Integer, HashSet<Integer>> byLeft = new HashMap<>();
+    private final HashMap<Integer, HashSet<Integer>> byRight = new HashMap<>();
+    // The ids of each table's rows passing its filter, by join value, so a change finds its partners
+    private final List<HashMap<String, HashSet<Integer>>> idsByKey = List.of(new HashMap<>(), new HashMap<>());
+
+    private boolean reconciled;
+
+    /** A row a commit adds, changes or deletes; before or after is null if the row did not exist. */
+    public static final class RowChange {
+        private final int id;
+        private final ArrayList<String> before;
+        private final ArrayList<String> after;
+
+        public RowChange(int id, ArrayList<String> before, ArrayList<String> after)
+        {
+            this.id = id;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private MaterializedView(String name, Database database, String definition, SyntaxType kind, List<String> tables)
+    {
+        this.name = name;
+        this.database = database;
+        this.definition = definition;
+        this.kind = kind;
+        this.tables = tables;
+    }
+
+    /**
+     * Checks a SELECT or JOIN can be kept up to date and works out the view's columns from the
+     * tables it reads as of the snapshot. Returns null with the reason in the message otherwise.
+     */
+    public static MaterializedView define(String name, Database database, Node query, String definition,
+                                          Snapshot snapshot, StringBuilder message)
+    {
+        List<String> tables = baseTables(query);
+
+        if (tables == null)
+        {
+            message.append("A materialized view has to be a SELECT or a JOIN");
+            return null;
+        }
+
+        ArrayList<Table> loaded = new ArrayList<>();
+
+        for (String table: tables)
+        {
+            Table t = database.checkTableExists(table) ? Table.loadTable(table, database, null) : null;
+
+            if (t == null)
+            {
+                message.append("Table ").append(table).append(" does not exist");
+                return null;
+            }
+
+            if (database.getView(table) != null)
+            {
+                message.append("A materialized view cannot read another view");
+                return null;
+            }
+
+            loaded.add(t);
+        }
+
+        MaterializedView view = new MaterializedView(name.toLowerCase(), database, definition, query.getType(), tables);
+        boolean bound = query.getType() == SyntaxType.SELECT ? view.bindSelect(query, loaded.get(0), snapshot, message)
+                : view.bindJoin(query, loaded.get(0), loaded.get(1), snapshot, message);
+
+        return bound ? view : null;
+    }
+
+    /** The tables a SELECT or JOIN reads, or null for any other statement. */
+    public static List<String> baseTables(Node query)
+    {
+        return switch (query.getType()) {
+            case SELECT -> List.of(query.getSibling().getValue().toLowerCase());
+            case JOIN -> List.of(query.getSibling().getValue().toLowerCase(),
+                    query.getSibling().getSibling().getValue().toLowerCase());
+            default -> null;
+        };
+    }
+
+    private boolean bindSelect(Node query, Table t, Snapshot snapshot, StringBuilder message)
+    {
+        if ("DISTINCT".equals(query.getValue()) || query.getChild().getType() == SyntaxType.AGGREGATE_LIST
+                || query.getSibling().getSibling() != null)
+        {
+            message.append("A materialized SELECT can only choose columns and filter rows");
+            return false;
+        }
+
+        ArrayList<String> header = t.getColumnNames(snapshot);
+        ArrayList<String> selected = new ArrayList<>();
+
+        if (query.getChild().getType() == SyntaxType.SELECT_ALL)
+        {
+            selected.addAll(header);
+        }
+
+        for (Node n = query.getChild(); n != null && n.getType() == SyntaxType.ATTRIBUTE_NAME; n = n.getChild())
+        {
+            selected.add(n.getValue());
+        }
+
+        for (String attribute: selected)
+        {
+            int position = JoinQuery.position(header, t.getTableName(), attribute);
+
+            if (position < 0)
+            {
+                message.append("Attribute ").append(attribute).append(" is not in table ").append(t.getTableName());
+                return false;
+            }
+
+            if (columns.stream().anyMatch(header.get(position)::equalsIgnoreCase))
+            {
+                message.append("Duplicate column names");
+                return false;
+            }
+
+            // the view's rows keep the ids of the table's rows
+            if (position > 0)
+            {
+                columns.add(header.get(position));
+                projection.add(position - 1);
+            }
+        }
+
+        Node condition = query.getChild().getSibling();
+        filter = condition == null ? (id, values) -> true : filter(condition, t.getTableName(), header);
+
+        if (filter == null)
+        {
+            message.append("Error in interpreting condition(s)");
+            return false;
+        }
+
+        return true;
+    }
+
+    private boolean bindJoin(Node query, Table left, Table right, Snapshot snapshot, StringBuilder message)
+    {
+        ArrayList<String> leftHeader = left.getColumnNames(snapshot);
+        ArrayList<String> rightHeader = right.getColumnNames(snapshot);
+        join = JoinQuery.resolve(query, left.getTableName(), leftHeader, right.getTableName(), rightHeader, message);
+
+        if (join == null)
+        {
+            return false;
+        }
+
+        for (int side = JoinQuery.LEFT; side <= JoinQuery.RIGHT; side++)
+        {
+            ArrayList<String> header = side == JoinQuery.LEFT ? leftHeader : rightHeader;
+            RowFilter sideFilter = (id, values) -> true;
+
+            for (Node condition: join.getConditions(side))
+            {
+                RowFilter part = filter(condition, join.getTable(side), header);
+
+                if (part == null)
+                {
+                    message.append("Error in interpreting condition(s)");
+                    return false;
+                }
+
+                sideFilter = sideFilter.and(part);
+            }
+
+            sideFilters[side] = sideFilter;
+        }
+
+        // a name both tables use, or an id, is prefixed with its table's, as JOIN does with a dot
+        for (int[] column: join.getColumns())
+        {
+            String name = join.getColumnName(column);
+            boolean shared = name.equalsIgnoreCase("id")
+                    || join.getColumns().stream().filter(c -> join.getColumnName(c).equalsIgnoreCase(name)).count() > 1;
+            String named = shared ? join.getTable(column[0]) + name : name;
+
+            if (columns.stream().anyMatch(named::equalsIgnoreCase))
+            {
+                message.append("Duplicate column names");
+                return false;
+            }
+
+            columns.add(named);
+        }
+
+        return true;
+    }
+
+    // The WHERE condition as a check on one row; AND and OR group to the right as in a SELECT
+    private static RowFilter filter(Node n, String table, ArrayList<String> header)
+    {
+        switch (n.getType()) {
+            case CONDITION -> {
+                RowFilter first = filter(n.getChild(), table, header);
+                Node bool = n.getSibling();
+
+                if (first == null || bool == null || (bool.getType() != SyntaxType.AND && bool.getType() != SyntaxType.OR))
+                {
+                    return first;
+                }
+
+                RowFilter second = filter(bool.getSibling(), table, header);
+
+                if (second == null)
+                {
+                    return null;
+                }
+
+                return bool.getType() == SyntaxType.AND ? first.and(second) : first.or(second);
+            }
+            case ATTRIBUTE_NAME -> {
+                int position = JoinQuery.position(header, table, n.getValue());
+                SyntaxType operator = n.getSibling().getType();
+                String value = n.getSibling().getSibling().getValue();
+
+                if (position < 0)
+                {
+                    return null;
+                }
+
+                if (position == 0)
+                {
+                    return (id, values) -> DBHelper.conditionMet(Integer.toString(id), value, operator);
+                }
+
+                return (id, values) -> DBHelper.conditionMet(values.get(position - 1), value, operator);
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public Database getDatabase()
+    {
+        return database;
+    }
+
+    public String getDefinition()
+    {
+        return definition;
+    }
+
+    public List<String> getTables()
+    {
+        return tables;
+    }
+
+    /** The view's column names, without the id column. */
+    public ArrayList<String> getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * Stages the changes that the pending rows of the committing tables make to the view and
+     * returns the view's table, or null if it could not be loaded. The caller holds the view's
+     * write lock; the snapshot sees the committing tables' pending rows.
+     */
+    public Table maintain(Collection<Table> committing, Snapshot snapshot)
+    {
+        Table view = Table.loadTable(name, database, null);
+
+        if (view == null)
+        {
+            reconciled = false;
+            return null;
+        }
+
+        // the pairs behind a JOIN's rows are only known once the view has been lined up in this process
+        if (!reconciled)
+        {
+            reconcile(view, snapshot);
+            return view;
+        }
+
+        Table left = find(committing, tables.get(0));
+        Table right = kind == SyntaxType.JOIN ? find(committing, tables.get(1)) : null;
+
+        if (kind == SyntaxType.SELECT)
+        {
+            applySelect(view, left.pendingChanges());
+            return view;
+        }
+
+        List<RowChange> leftChanges = left == null ? List.of() : left.pendingChanges();
+        List<RowChange> rightChanges = right == null ? List.of() : right.pendingChanges();
+
+        // each side's pass pairs rows with the other side as of the snapshot, so both maps move on first
+        track(JoinQuery.LEFT, leftChanges);
+        track(JoinQuery.RIGHT, rightChanges);
+
+        HashSet<Integer> changedLeft = applyJoin(view, leftChanges, true, Set.of(), snapshot);
+        applyJoin(view, rightChanges, false, changedLeft, snapshot);
+        return view;
+    }
+
+    private static Table find(Collection<Table> tables, String tableName)
+    {
+        for (Table t: tables)
+        {
+            if (t.getTableName().equals(tableName))
+            {
+                return t;
+            }
+        }
+
+        return null;
+    }
+
+    /** Stages whatever it takes for the view's rows to be the query's result over the snapshot. */
+    public void reconcile(Table view, Snapshot snapshot)
+    {
+        HashMap<Integer, ArrayList<String>> stored = new HashMap<>();
+
+        for (RowView row: view.scan(null, snapshot))
+        {
+            stored.put(row.getId(), new ArrayList<>(row.getValues()));
+        }
+
+        if (kind == SyntaxType.SELECT)
+        {
+            reconcileSelect(view, stored, snapshot);
+        }
+
+        else
+        {
+            reconcileJoin(view, stored, snapshot);
+        }
+
+        reconciled = true;
+    }
+
+    private ArrayList<String> project(List<String> values)
+    {
+        ArrayList<String> row = new ArrayList<>();
+
+        for (int position: projection)
+        {
+            row.add(values.get(position));
+        }
+
+        return row;
+    }
+
+    private void reconcileSelect(Table view, HashMap<Integer, ArrayList<String>> stored, Snapshot snapshot)
+    {
+        Table t = Table.loadTable(tables.get(0), database, null);
+
+        for (RowView row: t.scan(null, snapshot))
+        {
+            if (filter.test(row.getId(), row.getValues()))
+            {
+                ArrayList<String> projected = project(row.getValues());
+
+                if (!projected.equals(stored.remove(row.getId())))
+                {
+                    view.putRow(row.getId(), projected);
+                }
+            }
+        }
+
+        for (int id: stored.keySet())
+        {
+            view.removeRow(id);
+        }
+    }
+
+    private void applySelect(Table view, List<RowChange> changes)
+    {
+        for (RowChange change: changes)
+        {
+            boolean was = change.before != null && filter.test(change.id, change.before);
+            boolean is = change.after != null && filter.test(change.id, change.after);
+
+            if (is && (!was || !project(change.before).equals(project(change.after))))
+            {
+                view.putRow(change.id, project(change.after));
+            }
+
+            else if (was && !is)
+            {
+                view.removeRow(change.id);
+            }
+        }
+    }
+
+    private ArrayList<String> joinedRow(int leftId, List<String> left, int rightId, List<String> right)
+    {
+        ArrayList<String> row = new ArrayList<>();
+
+        for (int[] column: join.getColumns())
+        {
+            row.add(column[0] == JoinQuery.LEFT ? JoinQuery.value(leftId, left, column[1])
+                    : JoinQuery.value(rightId, right, column[1]));
+        }
+
+        return row;
+    }
+
+    private void reconcileJoin(Table view, HashMap<Integer, ArrayList<String>> stored, Snapshot snapshot)
+    {
+        pairs.clear();
+        byLeft.clear();
+        byRight.clear();
+        idsByKey.forEach(HashMap::clear);
+
+        // stored rows are matched to the pairs by their values, only the differences are staged
+        HashMap<ArrayList<String>, ArrayDeque<Integer>> unmatched = new HashMap<>();
+
+        for (Map.Entry<Integer, ArrayList<String>> row: stored.entrySet())
+        {
+            unmatched.computeIfAbsent(row.getValue(), k -> new ArrayDeque<>()).add(row.getKey());
+        }
+
+        Table left = Table.loadTable(tables.get(0), database, null);
+        Table right = Table.loadTable(tables.get(1), database, null);
+        HashMap<String, ArrayList<RowView>> rightByKey = new HashMap<>();
+
+        for (RowView row: right.scan(null, snapshot))
+        {
+            if (sideFilters[JoinQuery.RIGHT].test(row.getId(), row.getValues()))
+            {
+                rightByKey.computeIfAbsent(row.get(join.getKey(JoinQuery.RIGHT)), k -> new ArrayList<>()).add(row);
+                addKey(JoinQuery.RIGHT, row.getId(), row.getValues());
+            }
+        }
+
+        for (RowView leftRow: left.scan(null, snapshot))
+        {
+            if (!sideFilters[JoinQuery.LEFT].test(leftRow.getId(), leftRow.getValues()))
+            {
+                continue;
+            }
+
+            addKey(JoinQuery.LEFT, leftRow.getId(), leftRow.getValues());
+
+            for (RowView rightRow: rightByKey.getOrDefault(leftRow.get(join.getKey(JoinQuery.LEFT)), new ArrayList<>()))
+            {
+                int leftId = leftRow.getId();
+                int rightId = rightRow.getId();
+                ArrayList<String> row = joinedRow(leftId, leftRow.getValues(), rightId, rightRow.getValues());
+                ArrayDeque<Integer> same = unmatched.get(row);
+                Integer id = same == null ? null : same.poll();
+
+                if (id == null)
+                {
+                    addPair(view, leftId, rightId, row);
+                }
+
+                else
+                {
+                    recordPair(id, leftId, rightId);
+                }
+            }
+        }
+
+        for (ArrayDeque<Integer> ids: unmatched.values())
+        {
+            ids.forEach(view::removeRow);
+        }
+    }
+
+    private void addKey(int side, int id, List<String> values)
+    {
+        idsByKey.get(side).computeIfAbsent(JoinQuery.value(id, values, join.getKey(side)), k -> new HashSet<>()).add(id);
+    }
+
+    private void removeKey(int side, int id, List<String> values)
+    {
+        String key = JoinQuery.value(id, values, join.getKey(side));
+        HashSet<Integer> ids = idsByKey.get(side).get(key);
+
+        if (ids != null && ids.remove(id) && ids.isEmpty())
+        {
+            idsByKey.get(side).remove(key);
+        }
+    }
+
+    // Moves the changed rows of one side to the join values of their new versions
+    private void track(int side, List<RowChange> changes)
+    {
+        for (RowChange change: changes)
+        {
+            if (change.before != null)
+            {
+                removeKey(side, change.id, change.before);
+            }
+
+            if (change.after != null && sideFilters[side].test(change.id, change.after))
+            {
+                addKey(side, change.id, change.after);
+            }
+        }
+    }
+
+    private void addPair(Table view, int leftId, int rightId, ArrayList<String> row)
+    {
+        int id = view.insertRow(row);
+
+        if (id < 0)
+        {
+            // lined up again from the tables on the next commit
+            reconciled = false;
+            return;
+        }
+
+        recordPair(id, leftId, rightId);
+    }
+
+    private void recordPair(int id, int leftId, int rightId)
+    {
+        pairs.put(id, new int[] {leftId, rightId});
+        byLeft.computeIfAbsent(leftId, k -> new HashSet<>()).add(id);
+        byRight.computeIfAbsent(rightId, k -> new HashSet<>()).add(id);
+    }
+
+    private void removePair(Table view, int id)
+    {
+        int[] pair = pairs.remove(id);
+        byLeft.get(pair[0]).remove(id);
+        byRight.get(pair[1]).remove(id);
+        view.removeRow(id);
+    }
+
+    /*
+     * Drops the view rows of every changed row on one side and pairs the rows' new values with
+     * the matching rows of the other side, looked up by join value. Right side changes leave the
+     * pairs with changed left rows alone, as the left side's pass already made them from the new
+     * values of both. Returns the ids of the changed rows.
+     */
+    private HashSet<Integer> applyJoin(Table view, List<RowChange> changes, boolean leftSide, Set<Integer> changedLeft,
+                                       Snapshot snapshot)
+    {
+        HashMap<Integer, HashSet<Integer>> byChanged = leftSide ? byLeft : byRight;
+        int side = leftSide ? JoinQuery.LEFT : JoinQuery.RIGHT;
+        int otherSide = leftSide ? JoinQuery.RIGHT : JoinQuery.LEFT;
+        HashSet<Integer> changed = new HashSet<>();
+        HashMap<String, ArrayList<RowChange>> added = new HashMap<>();
+
+        for (RowChange change: changes)
+        {
+            changed.add(change.id);
+
+            for (int id: new ArrayList<>(byChanged.getOrDefault(change.id, new HashSet<>())))
+            {
+                if (leftSide || !changedLeft.contains(pairs.get(id)[0]))
+                {
+                    removePair(view, id);
+                }
+            }
+
+            if (change.after != null && sideFilters[side].test(change.id, change.after))
+            {
+                String key = JoinQuery.value(change.id, change.after, join.getKey(side));
+                added.computeIfAbsent(key, k -> new ArrayList<>()).add(change);
+            }
+        }
+
+        if (added.isEmpty())
+        {
+            return changed;
+        }
+
+        Table other = Table.loadTable(tables.get(leftSide ? 1 : 0), database, null);
+        int otherKey = join.getKey(otherSide);
+        RowSet matching = new RowSet();
+
+        for (String key: added.keySet())
+        {
+            idsByKey.get(otherSide).getOrDefault(key, new HashSet<>()).forEach(matching::add);
+        }
+
+        for (RowView row: other.scan(matching, snapshot))
+        {
+            if (!leftSide && changedLeft.contains(row.getId()))
+            {
+                continue;
+            }
+
+            for (RowChange change: added.get(row.get(otherKey)))
+            {
+                if (leftSide)
+                {
+                    addPair(view, change.id, row.getId(), joinedRow(change.id, change.after, row.getId(), row.getValues()));
+                }
+
+                else
+                {
+                    addPair(view, row.getId(), change.id, joinedRow(row.getId(), row.getValues(), change.id, change.after));
+                }
+            }
+        }
+
+        return changed;
+    }
+}
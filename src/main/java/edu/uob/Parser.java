@@ -7,6 +7,8 @@ import static edu.uob.DBHelper.*;
 import static edu.uob.SyntaxType.*;
 
 public class Parser {
+    // Words added with later clauses (ORDER, LIMIT, INDEX, ...) are only matched where those
+    // clauses can appear, so tables and attributes that already use them as names keep working
     private static final String[] KEYWORDS =
             {"USE", "CREATE", "DATABASE", "TABLE", "DROP",
             "ALTER", "INSERT", "INTO", "SELECT", "FROM", "WHERE",
@@ -109,6 +111,30 @@ public class Parser {
                 currentIndex++;
                 return parseJoinQuery();
             }
+            case "SET" -> {
+                currentIndex++;
+                return parseSetQuery();
+            }
+            case "LOAD" -> {
+                currentIndex++;
+                return parseLoadQuery();
+            }
+            case "ANALYZE" -> {
+                currentIndex++;
+                return parseAnalyzeQuery();
+            }
+            case "BEGIN" -> {
+                currentIndex++;
+                return new Node(BEGIN);
+            }
+            case "COMMIT" -> {
+                currentIndex++;
+                return new Node(COMMIT);
+            }
+            case "ROLLBACK" -> {
+                currentIndex++;
+                return new Node(ROLLBACK);
+            }
             default -> {
                 return createErrorNode("No valid CommandType encountered");
             }
@@ -135,6 +161,13 @@ public class Parser {
 
     }
 
+    private Node parseAnalyzeQuery()
+    {
+        Node n = new Node(ANALYZE);
+        n.setSibling(parseTableName());
+        return n;
+    }
+
     private Node parseCreateQuery()
     {
         if (currentIndex >= tokens.size())
@@ -151,13 +184,105 @@ public class Parser {
                 currentIndex++;
                 return parseCreateTable();
             }
+            case "MATERIALIZED" -> {
+                currentIndex++;
+                return parseCreateView();
+            }
             default -> {
-                return createErrorNode("Expected DATABASE or TABLE following CREATE");
+                IndexKind kind = IndexKind.fromString(tokens.get(currentIndex));
+
+                if (kind == null)
+                {
+                    return createErrorNode("Expected DATABASE, TABLE, MATERIALIZED VIEW or an index kind following CREATE");
+                }
+
+                currentIndex++;
+                return parseCreateIndex(kind);
             }
         }
 
     }
 
+    private Node parseCreateIndex(IndexKind kind)
+    {
+        if (currentIndex >= tokens.size() || !tokens.get(currentIndex).equalsIgnoreCase("INDEX")) {
+            return createErrorNode("Expected INDEX following CREATE " + kind);
+        }
+
+        currentIndex++;
+
+        if (currentIndex >= tokens.size() || !tokens.get(currentIndex).equalsIgnoreCase("ON")) {
+            return createErrorNode("Expected ON following CREATE " + kind + " INDEX");
+        }
+
+        currentIndex++;
+
+        Node n = new Node(CREATE_INDEX, kind.name());
+        n.setSibling(parseTableName());
+
+        if (currentIndex >= tokens.size() || !tokens.get(currentIndex).equals("(")) {
+            return createErrorNode("Missing ( before indexed attribute");
+        }
+
+        currentIndex++;
+
+        n.setChild(parseAttributeName());
+
+        if (currentIndex >= tokens.size() || !tokens.get(currentIndex).equals(")")) {
+            return createErrorNode("Missing ) following indexed attribute");
+        }
+
+        currentIndex++;
+
+        return n;
+    }
+
+    /*
+     * The view keeps the text of its SELECT or JOIN, rebuilt from the tokens, to parse it again
+     * when the database is next opened.
+     */
+    private Node parseCreateView()
+    {
+        if (currentIndex >= tokens.size() || !tokens.get(currentIndex).equalsIgnoreCase("VIEW"))
+        {
+            return createErrorNode("Expected VIEW following MATERIALIZED");
+        }
+
+        currentIndex++;
+        Node name = parseTableName();
+
+        if (currentIndex >= tokens.size() || !tokens.get(currentIndex).equalsIgnoreCase("AS"))
+        {
+            return createErrorNode("Expected AS following view name");
+        }
+
+        currentIndex++;
+        int start = currentIndex;
+        Node query;
+
+        if (currentIndex < tokens.size() && tokens.get(currentIndex).equalsIgnoreCase("SELECT"))
+        {
+            currentIndex++;
+            query = parseSelectQuery();
+        }
+
+        else if (currentIndex < tokens.size() && tokens.get(currentIndex).equalsIgnoreCase("JOIN"))
+        {
+            currentIndex++;
+            query = parseJoinQuery();
+        }
+
+        else
+        {
+            return createErrorNode("Expected SELECT or JOIN following AS");
+        }
+
+        Node n = new Node(CREATE_VIEW, String.join(" ", tokens.subList(start, Math.min(currentIndex, tokens.size()))));
+        n.setSibling(name);
+        n.setChild(query);
+        return n;
+    }
+
     private Node parseCreateDatabase()
     {
         if (currentIndex >= tokens.size())
@@ -421,6 +546,12 @@ public class Parser {
 
         currentIndex++;
 
+        return parseValueTuples();
+    }
+
+    // Each tuple is a chain of VALUE siblings; further tuples hang off the first value as its child
+    private Node parseValueTuples()
+    {
         if (currentIndex >= tokens.size()) {
             return createErrorNode("Expected token");
         }
@@ -440,6 +571,12 @@ public class Parser {
 
         currentIndex++;
 
+        if (currentIndex < tokens.size() && tokens.get(currentIndex).equals(","))
+        {
+            currentIndex++;
+            n.setChild(parseValueTuples());
+        }
+
         return n;
     }
 
@@ -512,7 +649,16 @@ public class Parser {
 
     private Node parseSelectQuery()
     {
-        Node n = new Node(SELECT);
+        // an attribute called distinct is followed by FROM or a comma rather than by what it selects
+        boolean distinct = currentIndex + 1 < tokens.size() && tokens.get(currentIndex).equalsIgnoreCase("DISTINCT")
+                && !tokens.get(currentIndex + 1).equalsIgnoreCase("FROM") && !tokens.get(currentIndex + 1).equals(",");
+
+        if (distinct)
+        {
+            currentIndex++;
+        }
+
+        Node n = distinct ? new Node(SELECT, "DISTINCT") : new Node(SELECT);
         n.setChild(parseWildAttributes());
 
         if (currentIndex >= tokens.size()) {
@@ -541,6 +687,90 @@ public class Parser {
 
         }
 
+        Node clause = n.getSibling();
+
+        if (currentIndex < tokens.size() && tokens.get(currentIndex).equalsIgnoreCase("GROUP"))
+        {
+            currentIndex++;
+            clause.setSibling(parseGroupBy());
+            clause = clause.getSibling();
+        }
+
+        if (currentIndex < tokens.size() && tokens.get(currentIndex).equalsIgnoreCase("ORDER"))
+        {
+            currentIndex++;
+            clause.setSibling(parseOrderBy());
+            clause = clause.getSibling();
+        }
+
+        if (currentIndex < tokens.size() && tokens.get(currentIndex).equalsIgnoreCase("LIMIT"))
+        {
+            currentIndex++;
+            clause.setSibling(parseLimit());
+        }
+
+        return n;
+    }
+
+    private Node parseGroupBy()
+    {
+        if (currentIndex >= tokens.size() || !tokens.get(currentIndex).equalsIgnoreCase("BY"))
+        {
+            return createErrorNode("Expected BY");
+        }
+
+        currentIndex++;
+        Node n = new Node(GROUP_BY);
+        n.setChild(parseAttributeList());
+        return n;
+    }
+
+    private Node parseLimit()
+    {
+        Node n = parseRowCount(LIMIT);
+
+        if (currentIndex < tokens.size() && tokens.get(currentIndex).equalsIgnoreCase("OFFSET"))
+        {
+            currentIndex++;
+            n.setChild(parseRowCount(OFFSET));
+        }
+
+        return n;
+    }
+
+    private Node parseRowCount(SyntaxType type)
+    {
+        if (currentIndex >= tokens.size() || !isIntegerLiteral(tokens.get(currentIndex))
+                || Integer.parseInt(tokens.get(currentIndex)) < 0)
+        {
+            return createErrorNode("Expected a row count");
+        }
+
+        Node n = new Node(type, Integer.toString(Integer.parseInt(tokens.get(currentIndex))));
+        currentIndex++;
+        return n;
+    }
+
+    private Node parseOrderBy()
+    {
+        if (currentIndex >= tokens.size() || !tokens.get(currentIndex).equalsIgnoreCase("BY"))
+        {
+            return createErrorNode("Expected BY");
+        }
+
+        currentIndex++;
+        Node attribute = parseAttributeName();
+        String direction = "ASC";
+
+        if (currentIndex < tokens.size() && (tokens.get(currentIndex).equalsIgnoreCase("ASC")
+                || tokens.get(currentIndex).equalsIgnoreCase("DESC")))
+        {
+            direction = tokens.get(currentIndex).toUpperCase();
+            currentIndex++;
+        }
+
+        Node n = new Node(ORDER_BY, direction);
+        n.setChild(attribute);
         return n;
     }
 
@@ -559,12 +789,82 @@ public class Parser {
             return n;
         }
 
+        if (selectsAggregates())
+        {
+            n = new Node(AGGREGATE_LIST);
+            n.setChild(parseAggregates());
+            return n;
+        }
+
         n = parseAttributeList();
 
         return n;
 
     }
 
+    private boolean atAggregate()
+    {
+        return currentIndex + 1 < tokens.size() && Aggregate.Function.fromString(tokens.get(currentIndex)) != null
+                && tokens.get(currentIndex + 1).equals("(");
+    }
+
+    // Whether an aggregate function appears before FROM, making this a list of aggregates and attributes
+    private boolean selectsAggregates()
+    {
+        for (int i = currentIndex; i + 1 < tokens.size() && !tokens.get(i).equalsIgnoreCase("FROM"); i++)
+        {
+            if (Aggregate.Function.fromString(tokens.get(i)) != null && tokens.get(i + 1).equals("("))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private Node parseAggregates()
+    {
+        Node n = atAggregate() ? parseAggregate() : parseAttributeName();
+
+        if (currentIndex < tokens.size() && tokens.get(currentIndex).equals(","))
+        {
+            currentIndex++;
+            n.setSibling(parseAggregates());
+        }
+
+        return n;
+    }
+
+    private Node parseAggregate()
+    {
+        if (!atAggregate())
+        {
+            return createErrorNode("Expected an aggregate function");
+        }
+
+        Node n = new Node(AGGREGATE, tokens.get(currentIndex).toUpperCase());
+        currentIndex += 2;
+
+        if (currentIndex < tokens.size() && tokens.get(currentIndex).equals("*") && n.getValue().equals("COUNT"))
+        {
+            n.setChild(new Node(SELECT_ALL));
+            currentIndex++;
+        }
+
+        else
+        {
+            n.setChild(parseAttributeName());
+        }
+
+        if (currentIndex >= tokens.size() || !tokens.get(currentIndex).equals(")"))
+        {
+            return createErrorNode("Expected )");
+        }
+
+        currentIndex++;
+        return n;
+    }
+
     private Node parseAttributeList()
     {
         if (currentIndex >= tokens.size()) {
@@ -815,6 +1115,21 @@ public class Parser {
             return createErrorNode("Expected token");
         }
 
+        Node projection = null;
+
+        if (currentIndex + 1 < tokens.size() && (tokens.get(currentIndex + 1).equals(",")
+                || tokens.get(currentIndex + 1).equalsIgnoreCase("FROM")))
+        {
+            projection = parseAttributeList();
+
+            if (currentIndex >= tokens.size() || !tokens.get(currentIndex).equalsIgnoreCase("FROM"))
+            {
+                return createErrorNode("Expected FROM");
+            }
+
+            currentIndex++;
+        }
+
         Node n = new Node(JOIN);
         n.setSibling(parseTableName());
 
@@ -841,9 +1156,76 @@ public class Parser {
         currentIndex++;
 
         n.getChild().setChild(parseAttributeName());
+        n.getChild().getChild().setSibling(projection);
+
+        if (currentIndex < tokens.size() && tokens.get(currentIndex).equalsIgnoreCase("WHERE"))
+        {
+            currentIndex++;
+            n.getChild().setSibling(parseCondition());
+        }
+
+        return n;
+    }
+    private Node parseSetQuery()
+    {
+        if (currentIndex >= tokens.size() || !tokens.get(currentIndex).equalsIgnoreCase("DURABILITY")) {
+            return createErrorNode("Expected DURABILITY following SET");
+        }
+
+        currentIndex++;
+
+        if (currentIndex >= tokens.size()) {
+            return createErrorNode("Expected durability mode");
+        }
+
+        String mode = tokens.get(currentIndex);
+
+        if (Durability.fromString(mode) == null)
+        {
+            return createErrorNode("Durability mode must be SYNC, GROUP or ASYNC");
+        }
+
+        Node n = new Node(SET_DURABILITY);
+        n.setSibling(new Node(DURABILITY_MODE, mode.toUpperCase()));
+        currentIndex++;
+
+        return n;
+    }
+
+    private Node parseLoadQuery()
+    {
+        if (currentIndex >= tokens.size() || !tokens.get(currentIndex).equalsIgnoreCase("DATA")) {
+            return createErrorNode("Expected DATA following LOAD");
+        }
+
+        currentIndex++;
+
+        if (currentIndex >= tokens.size()) {
+            return createErrorNode("Expected file path");
+        }
+
+        String path = tokens.get(currentIndex);
+
+        if (path.length() < 3 || path.charAt(0) != '\'' || path.charAt(path.length() - 1) != '\'')
+        {
+            return createErrorNode("File path must be enclosed in single quotes");
+        }
+
+        currentIndex++;
+
+        if (currentIndex >= tokens.size() || !tokens.get(currentIndex).equalsIgnoreCase("INTO")) {
+            return createErrorNode("Expected INTO");
+        }
+
+        currentIndex++;
+
+        Node n = new Node(LOAD);
+        n.setChild(new Node(FILE_PATH, path.substring(1, path.length() - 1)));
+        n.setSibling(parseTableName());
 
         return n;
     }
+
     private Node createErrorNode(String errorMessage)
     {
         if (this.errorMessage != null)
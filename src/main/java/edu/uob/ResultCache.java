@@ -0,0 +1,167 @@
+package edu.uob;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Responses of recent SELECT and JOIN statements, keyed by database and statement text, so a
+ * repeated query is answered without being parsed. Each entry remembers the change count of the
+ * tables it read when it ran and only answers while none of them has changed since. The least
+ * recently used entries go once the cache holds too many responses or too much text.
+ */
+public class ResultCache {
+    private static final int DEFAULT_MAX_ENTRIES = 1024;
+    private static final long DEFAULT_MAX_CHARS = 8L << 20;
+
+    private final int maxEntries;
+    private final long maxChars;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long chars;
+
+    private static final class Entry {
+        private final Database database;
+        private final List<String> tables;
+        private final long[] changeCounts;
+        private final String response;
+
+        private Entry(Database database, List<String> tables, long[] changeCounts, String response)
+        {
+            this.database = database;
+            this.tables = tables;
+            this.changeCounts = changeCounts;
+            this.response = response;
+        }
+
+        private boolean current()
+        {
+            for (int i = 0; i < tables.size(); i++)
+            {
+                if (Table.changeCount(database, tables.get(i)) != changeCounts[i])
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    public ResultCache()
+    {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_CHARS);
+    }
+
+    ResultCache(int maxEntries, long maxChars)
+    {
+        this.maxEntries = maxEntries;
+        this.maxChars = maxChars;
+    }
+
+    /** The key of a statement run against a database; statements differing only in spacing share one. */
+    public static String key(Database database, String command)
+    {
+        return database.getPath() + File.separator + database.getDatabaseName() + "\n" + normalise(command);
+    }
+
+    // Collapses whitespace outside string literals, which is all the tokeniser ignores
+    private static String normalise(String command)
+    {
+        StringBuilder s = new StringBuilder(command.length());
+        boolean quoted = false;
+        boolean space = false;
+
+        for (char c: command.trim().toCharArray())
+        {
+            if (!quoted && Character.isWhitespace(c))
+            {
+                space = true;
+                continue;
+            }
+
+            if (space)
+            {
+                s.append(' ');
+                space = false;
+            }
+
+            quoted ^= c == '\'';
+            s.append(c);
+        }
+
+        return s.toString();
+    }
+
+    /** Reads the change counts of the tables a statement is about to read, before it opens its snapshot. */
+    public static long[] changeCounts(Database database, List<String> tables)
+    {
+        long[] counts = new long[tables.size()];
+
+        for (int i = 0; i < counts.length; i++)
+        {
+            counts[i] = Table.changeCount(database, tables.get(i));
+        }
+
+        return counts;
+    }
+
+    /** The cached response for the key, or null if there is none or a table it read has changed. */
+    public synchronized String get(String key)
+    {
+        Entry entry = entries.get(key);
+
+        if (entry == null)
+        {
+            return null;
+        }
+
+        if (!entry.current())
+        {
+            remove(key);
+            return null;
+        }
+
+        return entry.response;
+    }
+
+    /**
+     * Stores a response, given the change counts read before it was computed. A table that changed
+     * meanwhile makes the entry stale straight away, so it is never served.
+     */
+    public synchronized void put(String key, Database database, List<String> tables, long[] changeCounts, String response)
+    {
+        if (response.length() > maxChars)
+        {
+            return;
+        }
+
+        remove(key);
+        entries.put(key, new Entry(database, tables, changeCounts, response));
+        chars += response.length();
+
+        Iterator<Map.Entry<String, Entry>> oldest = entries.entrySet().iterator();
+
+        while (entries.size() > maxEntries || chars > maxChars)
+        {
+            chars -= oldest.next().getValue().response.length();
+            oldest.remove();
+        }
+    }
+
+    private void remove(String key)
+    {
+        Entry removed = entries.remove(key);
+
+        if (removed != null)
+        {
+            chars -= removed.response.length();
+        }
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+}
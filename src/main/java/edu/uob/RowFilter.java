@@ -0,0 +1,18 @@
+package edu.uob;
+
+import java.util.List;
+
+/** A WHERE condition checked one row at a time, so a scan can stop once it has enough rows. */
+public interface RowFilter {
+    boolean test(int id, List<String> values);
+
+    default RowFilter and(RowFilter other)
+    {
+        return (id, values) -> test(id, values) && other.test(id, values);
+    }
+
+    default RowFilter or(RowFilter other)
+    {
+        return (id, values) -> test(id, values) || other.test(id, values);
+    }
+}
@@ -0,0 +1,598 @@
+package edu.uob;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A set of row ids kept as compressed bitmap containers, one per block of 65536 ids: a sorted
+ * array while the block is sparse and a 1024 word bitmap once it holds more than 4096 ids.
+ * Ids come out in ascending order and AND/OR work a container, or a word, at a time.
+ */
+public class RowSet {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private int[] keys = new int[4];
+    private Container[] containers = new Container[4];
+    private int containerCount;
+
+    private static final class Container {
+        // Exactly one of these is in use
+        private char[] array;
+        private long[] bitmap;
+        private int cardinality;
+
+        private static Container ofArray(char[] array, int cardinality)
+        {
+            Container c = new Container();
+            c.array = array;
+            c.cardinality = cardinality;
+            return c;
+        }
+
+        private static Container ofBitmap(long[] bitmap, int cardinality)
+        {
+            Container c = new Container();
+            c.bitmap = bitmap;
+            c.cardinality = cardinality;
+            return c;
+        }
+
+        private Container copy()
+        {
+            return array != null ? ofArray(Arrays.copyOf(array, cardinality), cardinality)
+                    : ofBitmap(bitmap.clone(), cardinality);
+        }
+
+        private boolean contains(char low)
+        {
+            if (bitmap != null)
+            {
+                return (bitmap[low >>> 6] & (1L << low)) != 0;
+            }
+
+            return Arrays.binarySearch(array, 0, cardinality, low) >= 0;
+        }
+
+        private void add(char low)
+        {
+            if (bitmap != null)
+            {
+                long bit = 1L << low;
+
+                if ((bitmap[low >>> 6] & bit) == 0)
+                {
+                    bitmap[low >>> 6] |= bit;
+                    cardinality++;
+                }
+
+                return;
+            }
+
+            // Rows are nearly always added in id order, so check the end first
+            int position = cardinality > 0 && array[cardinality - 1] < low ? -cardinality - 1
+                    : Arrays.binarySearch(array, 0, cardinality, low);
+
+            if (position >= 0)
+            {
+                return;
+            }
+
+            if (cardinality == ARRAY_LIMIT)
+            {
+                toBitmap();
+                add(low);
+                return;
+            }
+
+            position = -position - 1;
+
+            if (cardinality == array.length)
+            {
+                array = Arrays.copyOf(array, Math.min(ARRAY_LIMIT, Math.max(4, cardinality * 2)));
+            }
+
+            System.arraycopy(array, position, array, position + 1, cardinality - position);
+            array[position] = low;
+            cardinality++;
+        }
+
+        private void remove(char low)
+        {
+            if (bitmap != null)
+            {
+                long bit = 1L << low;
+
+                if ((bitmap[low >>> 6] & bit) != 0)
+                {
+                    bitmap[low >>> 6] &= ~bit;
+                    cardinality--;
+                }
+
+                return;
+            }
+
+            int position = Arrays.binarySearch(array, 0, cardinality, low);
+
+            if (position >= 0)
+            {
+                System.arraycopy(array, position + 1, array, position, cardinality - position - 1);
+                cardinality--;
+            }
+        }
+
+        private void toBitmap()
+        {
+            bitmap = new long[BITMAP_WORDS];
+
+            for (int i = 0; i < cardinality; i++)
+            {
+                bitmap[array[i] >>> 6] |= 1L << array[i];
+            }
+
+            array = null;
+        }
+
+        private Container and(Container other)
+        {
+            if (bitmap != null && other.bitmap != null)
+            {
+                long[] words = new long[BITMAP_WORDS];
+                int count = 0;
+
+                for (int i = 0; i < BITMAP_WORDS; i++)
+                {
+                    words[i] = bitmap[i] & other.bitmap[i];
+                    count += Long.bitCount(words[i]);
+                }
+
+                return shrink(words, count);
+            }
+
+            if (array != null && other.array != null)
+            {
+                char[] result = new char[Math.min(cardinality, other.cardinality)];
+                int count = 0;
+                int i = 0;
+                int j = 0;
+
+                while (i < cardinality && j < other.cardinality)
+                {
+                    if (array[i] < other.array[j])
+                    {
+                        i++;
+                    }
+
+                    else if (array[i] > other.array[j])
+                    {
+                        j++;
+                    }
+
+                    else
+                    {
+                        result[count++] = array[i];
+                        i++;
+                        j++;
+                    }
+                }
+
+                return count == 0 ? null : ofArray(result, count);
+            }
+
+            Container sparse = array != null ? this : other;
+            Container dense = array != null ? other : this;
+            char[] result = new char[sparse.cardinality];
+            int count = 0;
+
+            for (int i = 0; i < sparse.cardinality; i++)
+            {
+                if (dense.contains(sparse.array[i]))
+                {
+                    result[count++] = sparse.array[i];
+                }
+            }
+
+            return count == 0 ? null : ofArray(result, count);
+        }
+
+        private Container or(Container other)
+        {
+            if (bitmap != null && other.bitmap != null)
+            {
+                long[] words = new long[BITMAP_WORDS];
+                int count = 0;
+
+                for (int i = 0; i < BITMAP_WORDS; i++)
+                {
+                    words[i] = bitmap[i] | other.bitmap[i];
+                    count += Long.bitCount(words[i]);
+                }
+
+                return ofBitmap(words, count);
+            }
+
+            if (array != null && other.array != null)
+            {
+                char[] result = new char[cardinality + other.cardinality];
+                int count = 0;
+                int i = 0;
+                int j = 0;
+
+                while (i < cardinality || j < other.cardinality)
+                {
+                    if (j == other.cardinality || (i < cardinality && array[i] < other.array[j]))
+                    {
+                        result[count++] = array[i++];
+                    }
+
+                    else if (i == cardinality || array[i] > other.array[j])
+                    {
+                        result[count++] = other.array[j++];
+                    }
+
+                    else
+                    {
+                        result[count++] = array[i];
+                        i++;
+                        j++;
+                    }
+                }
+
+                Container c = ofArray(result, count);
+
+                if (count > ARRAY_LIMIT)
+                {
+                    c.toBitmap();
+                }
+
+                return c;
+            }
+
+            Container dense = (array != null ? other : this).copy();
+            Container sparse = array != null ? this : other;
+
+            for (int i = 0; i < sparse.cardinality; i++)
+            {
+                dense.add(sparse.array[i]);
+            }
+
+            return dense;
+        }
+
+        private static Container shrink(long[] words, int count)
+        {
+            if (count == 0)
+            {
+                return null;
+            }
+
+            if (count > ARRAY_LIMIT)
+            {
+                return ofBitmap(words, count);
+            }
+
+            char[] result = new char[count];
+            int n = 0;
+
+            for (int i = 0; i < BITMAP_WORDS; i++)
+            {
+                long word = words[i];
+
+                while (word != 0)
+                {
+                    result[n++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+
+            return ofArray(result, count);
+        }
+    }
+
+    public void add(int id)
+    {
+        int key = id >>> 16;
+        char low = (char) id;
+
+        if (containerCount > 0 && keys[containerCount - 1] == key)
+        {
+            containers[containerCount - 1].add(low);
+            return;
+        }
+
+        int position = containerCount == 0 || keys[containerCount - 1] < key ? -containerCount - 1
+                : Arrays.binarySearch(keys, 0, containerCount, key);
+
+        if (position < 0)
+        {
+            position = -position - 1;
+            insertContainer(position, key, Container.ofArray(new char[4], 0));
+        }
+
+        containers[position].add(low);
+    }
+
+    public void remove(int id)
+    {
+        int position = Arrays.binarySearch(keys, 0, containerCount, id >>> 16);
+
+        if (position < 0)
+        {
+            return;
+        }
+
+        containers[position].remove((char) id);
+
+        if (containers[position].cardinality == 0)
+        {
+            System.arraycopy(keys, position + 1, keys, position, containerCount - position - 1);
+            System.arraycopy(containers, position + 1, containers, position, containerCount - position - 1);
+            containerCount--;
+            containers[containerCount] = null;
+        }
+    }
+
+    private void insertContainer(int position, int key, Container c)
+    {
+        if (containerCount == keys.length)
+        {
+            keys = Arrays.copyOf(keys, containerCount * 2);
+            containers = Arrays.copyOf(containers, containerCount * 2);
+        }
+
+        System.arraycopy(keys, position, keys, position + 1, containerCount - position);
+        System.arraycopy(containers, position, containers, position + 1, containerCount - position);
+        keys[position] = key;
+        containers[position] = c;
+        containerCount++;
+    }
+
+    private void append(int key, Container c)
+    {
+        insertContainer(containerCount, key, c);
+    }
+
+    public boolean contains(int id)
+    {
+        int position = Arrays.binarySearch(keys, 0, containerCount, id >>> 16);
+        return position >= 0 && containers[position].contains((char) id);
+    }
+
+    public int size()
+    {
+        int size = 0;
+
+        for (int i = 0; i < containerCount; i++)
+        {
+            size += containers[i].cardinality;
+        }
+
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return containerCount == 0;
+    }
+
+    /** Rows in both sets. */
+    public RowSet and(RowSet other)
+    {
+        RowSet result = new RowSet();
+        int i = 0;
+        int j = 0;
+
+        while (i < containerCount && j < other.containerCount)
+        {
+            if (keys[i] < other.keys[j])
+            {
+                i++;
+            }
+
+            else if (keys[i] > other.keys[j])
+            {
+                j++;
+            }
+
+            else
+            {
+                Container c = containers[i].and(other.containers[j]);
+
+                if (c != null)
+                {
+                    result.append(keys[i], c);
+                }
+
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    /** Rows in either set. */
+    public RowSet or(RowSet other)
+    {
+        RowSet result = new RowSet();
+        int i = 0;
+        int j = 0;
+
+        while (i < containerCount || j < other.containerCount)
+        {
+            if (j == other.containerCount || (i < containerCount && keys[i] < other.keys[j]))
+            {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            }
+
+            else if (i == containerCount || keys[i] > other.keys[j])
+            {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            }
+
+            else
+            {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    public int[] toArray()
+    {
+        int[] ids = new int[size()];
+        int n = 0;
+
+        for (PrimitiveIterator.OfInt it = iterator(); it.hasNext(); )
+        {
+            ids[n++] = it.nextInt();
+        }
+
+        return ids;
+    }
+
+    /** Writes the ids in ascending order as comma separated ids and first-last runs. */
+    public String encode()
+    {
+        StringBuilder sb = new StringBuilder();
+        PrimitiveIterator.OfInt it = iterator();
+
+        if (!it.hasNext())
+        {
+            return "";
+        }
+
+        int first = it.nextInt();
+        int last = first;
+
+        while (true)
+        {
+            boolean more = it.hasNext();
+            int id = more ? it.nextInt() : 0;
+
+            if (more && id == last + 1)
+            {
+                last = id;
+                continue;
+            }
+
+            if (sb.length() > 0)
+            {
+                sb.append(',');
+            }
+
+            sb.append(first);
+
+            if (last != first)
+            {
+                sb.append('-').append(last);
+            }
+
+            if (!more)
+            {
+                return sb.toString();
+            }
+
+            first = id;
+            last = id;
+        }
+    }
+
+    /** Reads a set written by {@link #encode()}. */
+    public static RowSet decode(String encoded)
+    {
+        RowSet set = new RowSet();
+
+        if (encoded.isEmpty())
+        {
+            return set;
+        }
+
+        for (String run: encoded.split(","))
+        {
+            int dash = run.indexOf('-', 1);
+            int first = Integer.parseInt(dash < 0 ? run : run.substring(0, dash));
+            int last = dash < 0 ? first : Integer.parseInt(run.substring(dash + 1));
+
+            for (int id = first; id <= last; id++)
+            {
+                set.add(id);
+            }
+        }
+
+        return set;
+    }
+
+    /** Walks the ids in ascending order. */
+    public PrimitiveIterator.OfInt iterator()
+    {
+        return new PrimitiveIterator.OfInt() {
+            private int container;
+            private int position;
+            private long word;
+
+            @Override
+            public boolean hasNext()
+            {
+                while (container < containerCount)
+                {
+                    Container c = containers[container];
+
+                    if (c.array != null)
+                    {
+                        if (position < c.cardinality)
+                        {
+                            return true;
+                        }
+                    }
+
+                    else
+                    {
+                        while (word == 0 && position < BITMAP_WORDS)
+                        {
+                            word = c.bitmap[position++];
+                        }
+
+                        if (word != 0)
+                        {
+                            return true;
+                        }
+                    }
+
+                    container++;
+                    position = 0;
+                    word = 0;
+                }
+
+                return false;
+            }
+
+            @Override
+            public int nextInt()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+
+                Container c = containers[container];
+                int high = keys[container] << 16;
+
+                if (c.array != null)
+                {
+                    return high | c.array[position++];
+                }
+
+                int low = (position - 1) * 64 + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                return high | low;
+            }
+        };
+    }
+}
@@ -0,0 +1,236 @@
+package edu.uob;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Puts selected rows in ORDER BY order, ties in id order, and skips the first offset of them.
+ * With a limit only the rows up to offset + limit are kept, in a heap whose top is the row to
+ * give up next. Without one, rows beyond the memory budget are sorted into runs on disk that
+ * are merged when the result is written.
+ */
+public class RowSorter implements AutoCloseable {
+    private static final long DEFAULT_MEMORY_BUDGET = 16L << 20;
+    private static final long ENTRY_OVERHEAD = 64;
+    private static final String TAB = "\t";
+
+    private final Comparator<Entry> order;
+    private final int offset;
+    private final int keep;
+    private final long memoryBudget;
+    private final PriorityQueue<Entry> best;
+    private final ArrayList<Entry> buffer = new ArrayList<>();
+    private final ArrayList<Path> runs = new ArrayList<>();
+    private long bufferedBytes;
+
+    private static final class Entry {
+        private final String key;
+        private final int id;
+        private final String line;
+
+        private Entry(String key, int id, String line)
+        {
+            this.key = key;
+            this.id = id;
+            this.line = line;
+        }
+
+        private long bytes()
+        {
+            return ENTRY_OVERHEAD + 2L * (key.length() + line.length());
+        }
+    }
+
+    /** Writes every row after the offset, or only {@code limit} of them if it is not negative. */
+    public RowSorter(boolean descending, int offset, int limit)
+    {
+        this(descending, offset, limit, DEFAULT_MEMORY_BUDGET);
+    }
+
+    RowSorter(boolean descending, int offset, int limit, long memoryBudget)
+    {
+        Comparator<Entry> byKey = (a, b) -> DBHelper.compareValues(a.key, b.key);
+        this.order = (descending ? byKey.reversed() : byKey).thenComparingInt(e -> e.id);
+        this.offset = offset;
+        this.keep = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        this.memoryBudget = memoryBudget;
+        this.best = limit < 0 ? null : new PriorityQueue<>(order.reversed());
+    }
+
+    /** Adds a row, given the value it is ordered by and its output line. */
+    public void add(String key, int id, String line) throws IOException
+    {
+        Entry e = new Entry(key, id, line);
+
+        if (best != null)
+        {
+            if (best.size() < keep)
+            {
+                best.add(e);
+            }
+
+            else if (keep > 0 && order.compare(e, best.peek()) < 0)
+            {
+                best.poll();
+                best.add(e);
+            }
+
+            return;
+        }
+
+        buffer.add(e);
+        bufferedBytes += e.bytes();
+
+        if (bufferedBytes > memoryBudget)
+        {
+            spill();
+        }
+    }
+
+    private void spill() throws IOException
+    {
+        buffer.sort(order);
+        Path run = Files.createTempFile("rows", ".run");
+        runs.add(run);
+
+        try (BufferedWriter bw = Files.newBufferedWriter(run))
+        {
+            for (Entry e: buffer)
+            {
+                bw.write(e.id + TAB + e.key + TAB + e.line);
+                bw.newLine();
+            }
+        }
+
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    /** Appends the rows in order, one line each. */
+    public void writeTo(StringBuilder s) throws IOException
+    {
+        if (best != null)
+        {
+            buffer.addAll(best);
+            best.clear();
+        }
+
+        if (runs.isEmpty())
+        {
+            buffer.sort(order);
+
+            for (Entry e: buffer.subList(Math.min(offset, buffer.size()), buffer.size()))
+            {
+                s.append(e.line).append(System.lineSeparator());
+            }
+
+            return;
+        }
+
+        if (!buffer.isEmpty())
+        {
+            spill();
+        }
+
+        merge(s);
+    }
+
+    private static final class Run {
+        private final BufferedReader reader;
+        private Entry current;
+
+        private Run(Path file) throws IOException
+        {
+            reader = Files.newBufferedReader(file);
+        }
+
+        private boolean advance() throws IOException
+        {
+            String line = reader.readLine();
+
+            if (line == null)
+            {
+                current = null;
+                return false;
+            }
+
+            String[] fields = line.split(TAB, 3);
+            current = new Entry(fields[1], Integer.parseInt(fields[0]), fields[2]);
+            return true;
+        }
+    }
+
+    private void merge(StringBuilder s) throws IOException
+    {
+        PriorityQueue<Run> heads = new PriorityQueue<>((a, b) -> order.compare(a.current, b.current));
+        ArrayList<Run> open = new ArrayList<>();
+        int skipped = 0;
+
+        try
+        {
+            for (Path file: runs)
+            {
+                Run run = new Run(file);
+                open.add(run);
+
+                if (run.advance())
+                {
+                    heads.add(run);
+                }
+            }
+
+            while (!heads.isEmpty())
+            {
+                Run run = heads.poll();
+
+                if (skipped < offset)
+                {
+                    skipped++;
+                }
+
+                else
+                {
+                    s.append(run.current.line).append(System.lineSeparator());
+                }
+
+                if (run.advance())
+                {
+                    heads.add(run);
+                }
+            }
+        }
+
+        finally
+        {
+            for (Run run: open)
+            {
+                run.reader.close();
+            }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        for (Path run: runs)
+        {
+            try
+            {
+                Files.deleteIfExists(run);
+            }
+
+            catch (IOException ignored)
+            {
+                // temporary files are left for the system to clear
+            }
+        }
+
+        runs.clear();
+    }
+}
@@ -0,0 +1,72 @@
+package edu.uob;
+
+import java.util.ArrayList;
+
+/**
+ * One state of a row. Versions of the same row are chained newest first; a version without
+ * values marks the row as deleted. New versions stay pending until their statement commits.
+ */
+public class RowVersion {
+    private static final long PENDING = Long.MAX_VALUE;
+    private final ArrayList<String> values;
+    private volatile long commitTimestamp;
+    private volatile RowVersion previous;
+
+    private RowVersion(ArrayList<String> values, long commitTimestamp)
+    {
+        this.values = values;
+        this.commitTimestamp = commitTimestamp;
+    }
+
+    /** A version read from disk, visible to every snapshot. */
+    public static RowVersion loaded(ArrayList<String> values)
+    {
+        return new RowVersion(values, 0);
+    }
+
+    public static RowVersion pending(ArrayList<String> values)
+    {
+        return new RowVersion(values, PENDING);
+    }
+
+    public static RowVersion deleted()
+    {
+        return new RowVersion(null, PENDING);
+    }
+
+    // The values are never changed once the version exists, readers may share them
+    public ArrayList<String> getValues()
+    {
+        return values;
+    }
+
+    public boolean isDeleted()
+    {
+        return values == null;
+    }
+
+    public boolean isPending()
+    {
+        return commitTimestamp == PENDING;
+    }
+
+    public long getCommitTimestamp()
+    {
+        return commitTimestamp;
+    }
+
+    public void stamp(long timestamp)
+    {
+        commitTimestamp = timestamp;
+    }
+
+    public RowVersion getPrevious()
+    {
+        return previous;
+    }
+
+    public void setPrevious(RowVersion previous)
+    {
+        this.previous = previous;
+    }
+}
@@ -0,0 +1,50 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A row as a snapshot sees it, read in place: position 0 is the id and the row's values follow
+ * in header order. A version's values never change once it exists, so a view stays valid after
+ * the row is updated or deleted, and reading through it copies nothing.
+ */
+public final class RowView {
+    private final int id;
+    private final List<String> values;
+
+    RowView(int id, ArrayList<String> values)
+    {
+        this.id = id;
+        this.values = Collections.unmodifiableList(values);
+    }
+
+    public int getId()
+    {
+        return id;
+    }
+
+    /** The number of positions, counting the id. */
+    public int size()
+    {
+        return values.size() + 1;
+    }
+
+    /** The value at a header position, where 0 is the id. */
+    public String get(int position)
+    {
+        return position == 0 ? Integer.toString(id) : values.get(position - 1);
+    }
+
+    /** The values after the id, which cannot be changed through the list. */
+    public List<String> getValues()
+    {
+        return values;
+    }
+
+    @Override
+    public String toString()
+    {
+        return id + "\t" + String.join("\t", values);
+    }
+}
@@ -0,0 +1,37 @@
+package edu.uob;
+
+/** State kept for one client connection between its commands. */
+public class Session {
+    private Database currentDatabase;
+    private Transaction transaction;
+
+    public Database getCurrentDatabase()
+    {
+        return currentDatabase;
+    }
+
+    public void setCurrentDatabase(Database database)
+    {
+        currentDatabase = database;
+    }
+
+    public Transaction getTransaction()
+    {
+        return transaction;
+    }
+
+    public void setTransaction(Transaction transaction)
+    {
+        this.transaction = transaction;
+    }
+
+    /** Rolls back a transaction the client left open when it went away. */
+    public void close()
+    {
+        if (transaction != null)
+        {
+            transaction.rollback();
+            transaction = null;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package edu.uob;
+
+import java.util.Collection;
+
+/**
+ * A point in commit order that a statement reads at. Versions committed later are invisible;
+ * pending versions are only seen in the tables whose write lock the reader holds.
+ */
+public class Snapshot implements AutoCloseable {
+    private final long timestamp;
+    private final Collection<Table> writing;
+
+    Snapshot(long timestamp, Collection<Table> writing)
+    {
+        this.timestamp = timestamp;
+        this.writing = writing;
+    }
+
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public boolean isWriting(Table table)
+    {
+        return writing.contains(table);
+    }
+
+    /** Returns the newest version of the chain visible here, or null if the row does not exist. */
+    public RowVersion visible(Table table, RowVersion head)
+    {
+        for (RowVersion v = head; v != null; v = v.getPrevious())
+        {
+            if (v.isPending() ? writing.contains(table) : v.getCommitTimestamp() <= timestamp)
+            {
+                return v.isDeleted() ? null : v;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void close()
+    {
+        VersionClock.release(this);
+    }
+}
@@ -8,6 +8,13 @@ public enum SyntaxType {
     DATABASE_NAME, TABLE_NAME, ATTRIBUTE_NAME,
     SELECT_ALL,
     EQUAL_TO, LT, LT_EQUAL_TO, GT, GT_EQUAL_TO, NOT_EQUAL, LIKE,
-    STRING_LITERAL, BOOLEAN_LITERAL, FLOAT_LITERAL, INTEGER_LITERAL, NULL_VALUE
+    STRING_LITERAL, BOOLEAN_LITERAL, FLOAT_LITERAL, INTEGER_LITERAL, NULL_VALUE,
+    SET_DURABILITY, DURABILITY_MODE,
+    LOAD, FILE_PATH,
+    BEGIN, COMMIT, ROLLBACK,
+    CREATE_INDEX,
+    ORDER_BY, LIMIT, OFFSET,
+    AGGREGATE_LIST, AGGREGATE, GROUP_BY,
+    ANALYZE, CREATE_VIEW
 
 }
@@ -1,22 +1,66 @@
 package edu.uob;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
 public class Table {
     private static final String EXTENSION = ".tab";
+    private static final String INFO_EXTENSION = ".info";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String COMMIT_EXTENSION = ".commit";
+    private static final String INDEX_EXTENSION = ".indexes";
+    private static final String INDEX_DATA_EXTENSION = ".idx";
+    private static final String SKETCH_EXTENSION = ".hll";
+    private static final String STATISTICS_EXTENSION = ".stats";
     private static final String TAB = "\t";
     private static final Integer COLUMN_IDENTIFIER = -1;
+    private static final int ROWS_PER_PARTITION = 50000;
+    // Visible changes to each table by file, including creating and dropping it
+    private static final ConcurrentHashMap<Path, AtomicLong> CHANGE_COUNTS = new ConcurrentHashMap<>();
     private final String tableName;
-    private HashMap<Integer, ArrayList<String>> data;
-    private int currentIDNumber;
+    // Newest version of every row (and of the column names, under COLUMN_IDENTIFIER) by id
+    private final ConcurrentSkipListMap<Integer, RowVersion> rows = new ConcurrentSkipListMap<>();
+    private final LinkedHashMap<Integer, RowVersion> pending = new LinkedHashMap<>();
+    private final HashSet<Integer> superseded = new HashSet<>();
+    private long pendingBytes;
+    private final IdAllocator ids;
+    private final ArrayList<TableIndex> indexes = new ArrayList<>();
+    // Indexes of a table read from disk are only loaded once something needs them
+    private boolean indexesLoaded = true;
+    // Distinct value sketches of the committed rows by upper case column name, loaded on first use
+    private final HashMap<String, HyperLogLog> sketches = new HashMap<>();
+    private boolean sketchesLoaded;
+    // From the last ANALYZE, read from disk on first use
+    private TableStatistics statistics;
+    private boolean statisticsLoaded;
+    // Set from just before a commit is stamped until its indexes are updated
+    private volatile boolean committing;
+    private long committedAt;
+    // Rows as of the latest commit
+    private int rowCount;
     private final Database database;
+    private boolean dirty;
+    private boolean discarded;
 
     public Table(String tableName, Database database, int currentIDNumber)
     {
         this.tableName = tableName;
         this.database = database;
-        this.currentIDNumber = currentIDNumber;
+        this.ids = new IdAllocator(Paths.get(database.getPath(), database.getDatabaseName(), tableName + INFO_EXTENSION), currentIDNumber);
 
     }
 
@@ -24,8 +68,14 @@ public class Table {
     {
         this.tableName = tableName;
         this.database = database;
-        this.currentIDNumber = currentIDNumber;
-        this.data = data;
+        this.ids = new IdAllocator(Paths.get(database.getPath(), database.getDatabaseName(), tableName + INFO_EXTENSION), currentIDNumber);
+
+        for (Map.Entry<Integer, ArrayList<String>> map: data.entrySet())
+        {
+            rows.put(map.getKey(), RowVersion.loaded(new ArrayList<>(map.getValue())));
+        }
+
+        rowCount = data.containsKey(COLUMN_IDENTIFIER) ? data.size() - 1 : data.size();
     }
 
     public static Table loadTable(String tableName, Database database, HashMap<Integer, ArrayList<String>> data)
@@ -33,27 +83,46 @@ public class Table {
         tableName = tableName.toLowerCase();
 
         File f = new File(database.getPath() + File.separator + database.getDatabaseName() + File.separator + tableName + EXTENSION);
-        File configFile = new File(database.getPath() + File.separator + database.getDatabaseName() + File.separator + tableName + ".info");
+        File configFile = new File(database.getPath() + File.separator + database.getDatabaseName() + File.separator + tableName + INFO_EXTENSION);
 
-        if (f.isFile())
+        synchronized (database)
         {
-            HashMap<Integer, ArrayList<String>> rows = loadAllValues(f);
-            int currentIDNumber = loadCurrentID(rows, configFile);
-            return new Table(tableName, database, currentIDNumber, rows);
-        }
+            Table open = database.getOpenTable(tableName);
 
-        else
-        {
-            if (createNewTable(tableName, database, data))
+            if (open != null)
+            {
+                return open;
+            }
+
+            Table t;
+
+            if (f.isFile())
             {
-                return new Table(tableName, database, 1);
+                HashMap<Integer, ArrayList<String>> rows = loadAllValues(f);
+
+                if (rows == null)
+                {
+                    return null;
+                }
 
+                int currentIDNumber = loadCurrentID(rows, configFile);
+                t = new Table(tableName, database, currentIDNumber, rows);
+                t.indexesLoaded = false;
             }
 
             else
             {
-                return null;
+                if (data == null || !createNewTable(tableName, database, data))
+                {
+                    return null;
+                }
+
+                t = new Table(tableName, database, 1, data);
+                countChange(database, tableName);
             }
+
+            database.addOpenTable(t);
+            return t;
         }
     }
     private static HashMap<Integer, ArrayList<String>> loadAllValues(File f)
@@ -134,384 +203,1916 @@ public class Table {
 
     public boolean addRow(ArrayList<String> row)
     {
-        data.put(currentIDNumber, row);
-        currentIDNumber++;
-        return saveTable();
+        return addRows(List.of(row));
+    }
+
+    /**
+     * Stages the rows under consecutive ids; they become visible and are written on commit.
+     * Returns false if no ids could be reserved for them.
+     */
+    public synchronized boolean addRows(List<ArrayList<String>> newRows)
+    {
+        int id = ids.allocate(newRows.size());
+
+        if (id < 0)
+        {
+            return false;
+        }
+
+        for (ArrayList<String> row: newRows)
+        {
+            stage(id, RowVersion.pending(new ArrayList<>(row)), rowBytes(row));
+            id++;
+        }
+
+        return true;
+    }
+
+    /** Stages one row under a new id and returns the id, or -1 if no id could be reserved. */
+    public synchronized int insertRow(ArrayList<String> row)
+    {
+        int id = ids.allocate(1);
+
+        if (id >= 0)
+        {
+            stage(id, RowVersion.pending(new ArrayList<>(row)), rowBytes(row));
+        }
+
+        return id;
+    }
+
+    /** Stages the row under a given id, replacing any row there; a view uses it to keep its table's ids. */
+    public synchronized void putRow(int id, ArrayList<String> row)
+    {
+        stage(id, RowVersion.pending(new ArrayList<>(row)), rowBytes(row));
     }
 
-    public void removeRow(int num)
+    public synchronized void removeRow(int num)
     {
         if (num < 1)
         {
             return;
         }
 
-        if (!data.containsKey(num))
+        RowVersion current = latest(num);
+
+        if (current == null)
         {
             return;
         }
 
-        data.remove(num);
-        saveTable();
+        stage(num, RowVersion.deleted(), rowBytes(current.getValues()));
     }
 
-    private static boolean createNewTable(String tableName, Database database, HashMap<Integer, ArrayList<String>> data)
+    /*
+     * Mutations never touch a version readers may be looking at: they put a new pending version
+     * at the head of the row's chain, replacing one this statement already staged there.
+     * Only the holder of the table's write lock stages versions.
+     */
+    private void stage(int key, RowVersion version, long changedBytes)
     {
-        try
-        {
-            FileWriter fw = new FileWriter(database.getPath() + File.separator + database.getDatabaseName() + File.separator + tableName + ".tab");
-            FileWriter index = new FileWriter(database.getPath() + File.separator + database.getDatabaseName() + File.separator + tableName + ".info");
-            BufferedWriter bw = new BufferedWriter(fw);
-            BufferedWriter indexWriter = new BufferedWriter(index);
-            for (Map.Entry<Integer, ArrayList<String>> map: data.entrySet())
-            {
-                ArrayList<String> values = map.getValue();
-                bw.write(String.join(TAB, values));
-                bw.newLine();
+        RowVersion head = rows.get(key);
+        version.setPrevious(head != null && head.isPending() ? head.getPrevious() : head);
+        rows.put(key, version);
+        pending.put(key, version);
+        pendingBytes += changedBytes;
+    }
 
-            }
+    // The newest version including staged ones; only meaningful to the write lock holder
+    private RowVersion latest(int key)
+    {
+        RowVersion head = rows.get(key);
+        return head == null || head.isDeleted() ? null : head;
+    }
 
-            bw.close();
-            fw.close();
+    /** Makes the staged changes visible to new snapshots and persists them. */
+    public boolean commit()
+    {
+        return commit(List.of(this));
+    }
 
-            indexWriter.write("1");
-            indexWriter.close();
+    /**
+     * Commits the staged changes of several tables as one step of the commit clock, then writes
+     * each table that changed once. If a view on them stays locked past the lock timeout the
+     * changes are rolled back instead.
+     */
+    public static boolean commit(Collection<Table> tables)
+    {
+        TreeMap<String, MaterializedView> views = new TreeMap<>();
 
+        for (Table t: tables)
+        {
+            if (t.hasPendingRows())
+            {
+                t.database.viewsOn(t.tableName).forEach(v -> views.put(v.getName(), v));
+            }
         }
 
-        catch(Exception e)
+        if (views.isEmpty())
         {
-            e.printStackTrace();
-            return false;
+            return commitStaged(tables);
         }
 
-        return true;
-    }
+        // views are locked in name order after their tables, so commits to different tables cannot deadlock
+        ArrayList<StampedLock> locks = new ArrayList<>();
 
+        for (MaterializedView v: views.values())
+        {
+            locks.add(LockManager.lockFor(v.getDatabase(), v.getName()));
+        }
 
-    public boolean saveTable()
-    {
-        try
+        List<Long> stamps = LockManager.tryLockAll(locks);
+
+        if (stamps == null)
         {
-            FileWriter fw = new FileWriter(database.getPath() + File.separator + database.getDatabaseName() + File.separator + tableName + EXTENSION);
-            FileWriter fileIndex = new FileWriter(database.getPath() + File.separator + database.getDatabaseName() + File.separator + tableName + ".info");
+            tables.forEach(Table::rollback);
+            return false;
+        }
 
-            BufferedWriter bw = new BufferedWriter(fw);
-            BufferedWriter writeIndex = new BufferedWriter(fileIndex);
+        try (Snapshot s = VersionClock.open(tables))
+        {
+            ArrayList<Table> committing = new ArrayList<>(tables);
 
-            for (Map.Entry<Integer, ArrayList<String>> map: data.entrySet())
+            for (MaterializedView v: views.values())
             {
-                int key = map.getKey();
-                ArrayList<String> values = map.getValue();
-                if (key != COLUMN_IDENTIFIER)
+                Table view = v.maintain(tables, s);
+
+                if (view != null)
                 {
-                    bw.write(key + TAB);
+                    committing.add(view);
                 }
-                bw.write(String.join(TAB, values));
-                bw.newLine();
-
             }
 
-            writeIndex.write(Integer.toString(currentIDNumber));
+            return commitStaged(committing);
+        }
 
-            writeIndex.flush();
-            writeIndex.close();
-            bw.close();
+        finally
+        {
+            LockManager.unlockAll(locks, stamps);
+        }
+    }
 
-            fw.close();
+    /*
+     * Makes the staged changes of the tables, and of the views they keep up to date, visible in
+     * one step of the commit clock.
+     */
+    private static boolean commitStaged(Collection<Table> tables)
+    {
+        ArrayList<RowVersion> versions = new ArrayList<>();
 
+        for (Table t: tables)
+        {
+            versions.addAll(t.pendingVersions());
         }
 
-        catch(Exception e)
+        if (versions.isEmpty())
         {
-            return false;
+            return true;
         }
 
-        return true;
-    }
+        for (Table t: tables)
+        {
+            t.committing = true;
+        }
 
+        long timestamp = VersionClock.commit(versions);
+        boolean saved = true;
 
-    public boolean containsColumn(String columnName)
-    {
-        columnName = columnName.toUpperCase();
-        ArrayList<String> values = data.get(COLUMN_IDENTIFIER);
+        ArrayList<Table> grouped = new ArrayList<>();
 
-        for (String name: values)
+        for (Table t: tables)
         {
-            name = name.toUpperCase();
-            if (name.equals(columnName))
+            saved &= t.finishCommit(timestamp);
+
+            if (t.database.getDurability() == Durability.GROUP)
             {
-                return true;
+                grouped.add(t);
             }
         }
 
-        return false;
+        // waited on outside the tables' monitors, as the group write takes them
+        return grouped.isEmpty() ? saved : CommitScheduler.awaitGroupWrite(grouped) && saved;
+    }
 
+    private synchronized boolean hasPendingRows()
+    {
+        return pending.keySet().stream().anyMatch(key -> key != COLUMN_IDENTIFIER);
     }
 
-    public boolean addColumn(String columnName)
+    /** The rows the staged changes add, change or delete, as they were last committed and as staged. */
+    public synchronized List<MaterializedView.RowChange> pendingChanges()
     {
-        try
+        ArrayList<MaterializedView.RowChange> changes = new ArrayList<>();
+
+        for (Map.Entry<Integer, RowVersion> map: pending.entrySet())
         {
-            for (Map.Entry<Integer, ArrayList<String>> map: data.entrySet())
-            {
-                int key = map.getKey();
-                ArrayList<String> values = map.getValue();
-                if (key != COLUMN_IDENTIFIER)
-                {
-                    values.add("NULL");
-                }
+            RowVersion previous = map.getValue().getPrevious();
 
-                else
-                {
-                    values.add(columnName);
-                }
+            if (map.getKey() != COLUMN_IDENTIFIER)
+            {
+                changes.add(new MaterializedView.RowChange(map.getKey(),
+                        previous == null ? null : previous.getValues(), map.getValue().getValues()));
             }
         }
 
-        catch (Exception e)
-        {
-            return false;
-        }
+        return changes;
+    }
 
-        return saveTable();
+    private synchronized ArrayList<RowVersion> pendingVersions()
+    {
+        // the commit moves the indexes and sketches on from the state before it
+        ensureIndexes();
+        ensureSketches();
+        return new ArrayList<>(pending.values());
     }
 
-    public boolean removeColumn(String columnName)
+    private synchronized boolean finishCommit(long timestamp)
     {
-        ArrayList<String> columns = data.get(COLUMN_IDENTIFIER);
+        if (pending.isEmpty())
+        {
+            committing = false;
+            return true;
+        }
 
-        //Off by one due to discrepancies in how column names and values are stored
-        int index = columns.indexOf(columnName) - 1;
+        updateIndexes();
+        updateSketches();
+        committedAt = timestamp;
+        committing = false;
+        countChange(database, tableName);
 
-        try
+        for (Map.Entry<Integer, RowVersion> map: pending.entrySet())
         {
-            for (Map.Entry<Integer, ArrayList<String>> map: data.entrySet())
-            {
-                int currentKey = map.getKey();
-                if (currentKey != COLUMN_IDENTIFIER)
-                {
-                    ArrayList<String> values = map.getValue();
-                    values.remove(index);
+            RowVersion previous = map.getValue().getPrevious();
 
-                    data.put(currentKey, values);
-                }
+            if (previous != null)
+            {
+                superseded.add(map.getKey());
             }
 
-            columns.remove(columns.indexOf(columnName));
+            boolean existed = previous != null && !previous.isDeleted();
+
+            if (map.getKey() != COLUMN_IDENTIFIER && existed == map.getValue().isDeleted())
+            {
+                rowCount += existed ? -1 : 1;
+            }
         }
 
-        catch (Exception e)
+        if (!superseded.isEmpty())
         {
-            return false;
+            VersionClock.markReclaimable(this);
         }
 
-        return saveTable();
+        long changedBytes = pendingBytes;
+        pending.clear();
+        pendingBytes = 0;
+
+        return commitChange(changedBytes);
     }
 
-    public int editableColumns()
+    /** Throws away the staged changes. */
+    public synchronized void rollback()
     {
-        ArrayList<String> columns = data.get(COLUMN_IDENTIFIER);
-        return columns.size() - 1;
+        for (Map.Entry<Integer, RowVersion> map: pending.entrySet())
+        {
+            RowVersion previous = map.getValue().getPrevious();
+
+            if (previous == null)
+            {
+                rows.remove(map.getKey());
+            }
+
+            else
+            {
+                rows.put(map.getKey(), previous);
+            }
+        }
+
+        pending.clear();
+        pendingBytes = 0;
     }
 
-    public HashSet<Integer> getRelevantRows(String columnName, SyntaxType operator, String value)
+    /**
+     * Cuts every chain below the version the oldest open snapshot reads, and drops deleted rows
+     * no snapshot can see any more. Called from the reclaimer thread.
+     */
+    public synchronized void reclaimVersions(long oldestSnapshot)
     {
-        HashSet<Integer> relevantRows = new HashSet<>();
+        // the index update of a commit in flight still needs the versions it replaced
+        if (committing)
+        {
+            return;
+        }
 
-        try
+        Iterator<Integer> keys = superseded.iterator();
+
+        while (keys.hasNext())
         {
-            int relevantIndex = getColumnPosition(columnName) - 1;
-            for (Map.Entry<Integer, ArrayList<String>> map: data.entrySet())
-                {
-                    int currentKey = map.getKey();
+            int key = keys.next();
+            RowVersion head = rows.get(key);
+            RowVersion v = head;
 
-                    String relevantValue;
+            while (v != null && (v.isPending() || v.getCommitTimestamp() > oldestSnapshot))
+            {
+                v = v.getPrevious();
+            }
 
-                    if (relevantIndex == COLUMN_IDENTIFIER)
-                    {
-                        relevantValue = Integer.toString(currentKey);
-                    }
+            if (head == null)
+            {
+                keys.remove();
+                continue;
+            }
 
-                    else
-                    {
-                        relevantValue = map.getValue().get(relevantIndex);
-                    }
+            if (v == null)
+            {
+                continue;
+            }
 
-                    if (currentKey != COLUMN_IDENTIFIER)
-                    {
-                       if (DBHelper.conditionMet(relevantValue, value, operator))
-                       {
-                           relevantRows.add(currentKey);
-                       }
+            v.setPrevious(null);
 
-                    }
+            if (v == head)
+            {
+                keys.remove();
 
+                if (v.isDeleted())
+                {
+                    rows.remove(key);
                 }
-
             }
+        }
 
-            catch (Exception e)
-            {
-                return null;
-            }
+        if (superseded.isEmpty())
+        {
+            VersionClock.forget(this);
+        }
+    }
 
-        return relevantRows;
+    private static boolean createNewTable(String tableName, Database database, HashMap<Integer, ArrayList<String>> data)
+    {
+        return writeTableFiles(tableName, database, database.getDurability(), data, 1, new CRC32());
     }
 
-    public boolean changeValue(String columnName, String value, int row)
+    public synchronized boolean saveTable()
     {
-        try
+        if (discarded)
         {
-            int indexToChange = getColumnPosition(columnName) - 1;
-            data.get(row).set(indexToChange, value);
+            return false;
         }
 
-        catch (Exception e)
+        if (!writeTable(database.getDurability()))
         {
             return false;
         }
 
-        return saveTable();
+        dirty = false;
+        return true;
     }
 
-    public ArrayList<String> getColumnNames()
+    /*
+     * Under ASYNC durability the change only marks the table dirty and the flusher writes it later.
+     * Under GROUP it marks the table dirty for the group write its commit then waits on. Otherwise
+     * the whole table is written before the command returns.
+     */
+    private boolean commitChange(long changedBytes)
     {
-        return data.get(COLUMN_IDENTIFIER);
+        switch (database.getDurability()) {
+            case ASYNC -> {
+                dirty = true;
+                TableFlusher.markDirty(this, changedBytes);
+                return true;
+            }
+            case GROUP -> {
+                dirty = true;
+                return true;
+            }
+            default -> {
+                return saveTable();
+            }
+        }
     }
 
-    private int getColumnPosition(String columnName)
+    /** Writes the table if it has unflushed changes; called from the background flusher and group writes. */
+    public synchronized boolean flush()
     {
-        ArrayList<String> columnNames= data.get(COLUMN_IDENTIFIER);
+        if (!dirty || discarded)
+        {
+            return true;
+        }
 
-        for (int i = 0; i < columnNames.size(); i++)
+        if (!writeTable(Durability.SYNC))
         {
-            if (columnName.equalsIgnoreCase(columnNames.get(i)))
-            {
-                return i;
-            }
+            return false;
         }
 
-        return -1;
+        dirty = false;
+        return true;
     }
 
-    public boolean selectTable(StringBuilder s, ArrayList<String> attributes)
+    /*
+     * Writes the committed rows, then the indexes and sketches if they hold exactly those rows.
+     * Otherwise their files keep the checksum of an older table file and are rebuilt when next loaded.
+     */
+    private boolean writeTable(Durability durability)
     {
-        ArrayList<Integer> columnIndex = new ArrayList<>();
-        selectTableHelper(s, attributes, columnIndex);
-
-        for (Map.Entry<Integer, ArrayList<String>> map: data.entrySet())
+        try (Snapshot s = VersionClock.open())
         {
-            int key = map.getKey();
-            ArrayList<String> values = map.getValue();
+            CRC32 checksum = new CRC32();
 
-            if (key == COLUMN_IDENTIFIER)
+            if (!writeTableFiles(tableName, database, durability, rowsAt(s), null, checksum))
             {
-                continue;
+                return false;
             }
 
-            for (int i: columnIndex)
-            {
-                if (i == COLUMN_IDENTIFIER)
-                {
-                    s.append(key);
-                    s.append(TAB);
-                }
-
-                else
-                {
-                    s.append(values.get(i));
-                    s.append(TAB);
-                }
+            boolean current = !committing && committedAt <= s.getTimestamp();
 
+            if (indexesLoaded && !indexes.isEmpty() && current)
+            {
+                saveIndexData(checksum.getValue());
             }
 
-            s.deleteCharAt(s.length() - 1);
-
-            s.append(System.lineSeparator());
-
+            if (sketchesLoaded && current)
+            {
+                saveSketches(checksum.getValue());
+            }
         }
 
-        s.deleteCharAt(s.length() - 1);
         return true;
     }
 
-    private void selectTableHelper(StringBuilder s, ArrayList<String> attributes, ArrayList<Integer> columnIndex) {
-
-        for (String attribute: attributes)
-        {
-            int position = getColumnPosition(attribute);
-            columnIndex.add(position - 1);
-            s.append(data.get(COLUMN_IDENTIFIER).get(position));
-            s.append(TAB);
-        }
+    /** Drops unflushed changes, used once the table or its database has been deleted. */
+    public synchronized void discard()
+    {
+        discarded = true;
+        dirty = false;
+        VersionClock.forget(this);
+        countChange(database, tableName);
+    }
 
-        s.deleteCharAt(s.length() - 1);
+    /**
+     * How many times the table's visible contents have changed in this process. The count moves
+     * on once a commit can be seen, so a result read after fetching a count is at least that new.
+     */
+    public static long changeCount(Database database, String tableName)
+    {
+        AtomicLong count = CHANGE_COUNTS.get(tableFile(database, tableName));
+        return count == null ? 0 : count.get();
+    }
 
-        s.append(System.lineSeparator());
+    /** Records a change made outside a commit, such as the table being dropped or closed. */
+    public static void countChange(Database database, String tableName)
+    {
+        CHANGE_COUNTS.computeIfAbsent(tableFile(database, tableName), k -> new AtomicLong()).incrementAndGet();
     }
 
-    public boolean selectTable(StringBuilder s, ArrayList<String> attributes, HashSet<Integer> rows)
+    private static Path tableFile(Database database, String tableName)
     {
-        ArrayList<Integer> columnIndex = new ArrayList<>();
-        selectTableHelper(s, attributes, columnIndex);
+        return Paths.get(database.getPath(), database.getDatabaseName(), tableName.toLowerCase() + EXTENSION);
+    }
 
-        ArrayList<Integer> rowsToSelect = new ArrayList<>(rows);
-        Collections.sort(rowsToSelect);
+    // Committed contents as of the snapshot, in the shape written to disk
+    private LinkedHashMap<Integer, ArrayList<String>> rowsAt(Snapshot s)
+    {
+        LinkedHashMap<Integer, ArrayList<String>> data = new LinkedHashMap<>();
 
-        for (int i: rowsToSelect)
+        for (Map.Entry<Integer, RowVersion> map: rows.entrySet())
         {
-            for (int j: columnIndex)
-            {
-                if (j == COLUMN_IDENTIFIER)
-                {
-                    s.append(i);
-                    s.append(TAB);
-                }
-
-                else
-                {
-                    s.append(data.get(i).get(j));
-                    s.append(TAB);
-                }
+            RowVersion v = s.visible(this, map.getValue());
 
+            if (v != null)
+            {
+                data.put(map.getKey(), v.getValues());
             }
-
-            s.deleteCharAt(s.length() - 1);
-
-            s.append(System.lineSeparator());
         }
 
-        s.deleteCharAt(s.length() - 1);
+        return data;
+    }
 
-        return true;
+    private static long rowBytes(ArrayList<String> row)
+    {
+        long bytes = 0;
+
+        for (String value: row)
+        {
+            bytes += value.length() + 1;
+        }
 
+        return bytes;
     }
-    public ArrayList<ArrayList<String>> tableToArrayList()
-    {
-        ArrayList<ArrayList<String>> table = new ArrayList<>();
 
-        table.add(data.get(COLUMN_IDENTIFIER));
+    /*
+     * Both files are written to temporaries and only renamed over the live ones once the pair is
+     * complete. The commit marker is created in between, so recovery can tell a finished pair that
+     * was interrupted mid-rename (roll forward) from a half-written one (throw away). Ordinary
+     * commits pass no id and leave the .info file to the table's IdAllocator. The checksum is
+     * updated with the bytes of the table file.
+     */
+    private static boolean writeTableFiles(String tableName, Database database, Durability durability,
+                                           HashMap<Integer, ArrayList<String>> data, Integer currentID, CRC32 checksum)
+    {
+        Path directory = Paths.get(database.getPath(), database.getDatabaseName());
+        Path tab = directory.resolve(tableName + EXTENSION);
+        Path info = directory.resolve(tableName + INFO_EXTENSION);
+        Path tabTemp = directory.resolve(tableName + EXTENSION + TEMP_SUFFIX);
+        Path infoTemp = directory.resolve(tableName + INFO_EXTENSION + TEMP_SUFFIX);
+        Path marker = directory.resolve(tableName + COMMIT_EXTENSION);
 
-        for (Map.Entry<Integer, ArrayList<String>> map: data.entrySet())
+        try
         {
-            int key = map.getKey();
-            ArrayList<String> values = map.getValue();
-            if (key != COLUMN_IDENTIFIER)
+            try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(
+                    new CheckedOutputStream(Files.newOutputStream(tabTemp), checksum), StandardCharsets.UTF_8)))
             {
-               values.add(0, Integer.toString(key));
-               table.add(values);
+                bw.write(String.join(TAB, data.get(COLUMN_IDENTIFIER)));
+                bw.newLine();
+
+                for (Map.Entry<Integer, ArrayList<String>> map: data.entrySet())
+                {
+                    int key = map.getKey();
+                    if (key != COLUMN_IDENTIFIER)
+                    {
+                        bw.write(key + TAB);
+                        bw.write(String.join(TAB, map.getValue()));
+                        bw.newLine();
+                    }
+                }
             }
 
-        }
+            Path[] written = currentID == null ? new Path[] {tabTemp} : new Path[] {tabTemp, infoTemp};
 
-        return table;
-    }
+            if (currentID != null)
+            {
+                Files.writeString(infoTemp, Integer.toString(currentID));
+            }
+
+            if (!CommitScheduler.prepare(durability, written))
+            {
+                return false;
+            }
+
+            Files.deleteIfExists(marker);
+            Files.createFile(marker);
+            Files.move(tabTemp, tab, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            if (currentID != null)
+            {
+                Files.move(infoTemp, info, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            Files.delete(marker);
+        }
+
+        catch(Exception e)
+        {
+            try
+            {
+                Files.deleteIfExists(tabTemp);
+
+                if (currentID != null)
+                {
+                    Files.deleteIfExists(infoTemp);
+                }
+            }
+
+            catch (IOException ignored)
+            {
+                // recovery removes leftover temporaries on the next start
+            }
+
+            return false;
+        }
+
+        return CommitScheduler.installed(durability, directory);
+    }
+
+    /**
+     * Brings the files of one table back to a consistent state after a crash: finishes or discards
+     * an interrupted commit, drops a torn last row and makes sure the stored id is past every row.
+     */
+    public static void recoverTable(File directory, String tableName)
+    {
+        Path dir = directory.toPath();
+        Path tab = dir.resolve(tableName + EXTENSION);
+        Path info = dir.resolve(tableName + INFO_EXTENSION);
+        Path tabTemp = dir.resolve(tableName + EXTENSION + TEMP_SUFFIX);
+        Path infoTemp = dir.resolve(tableName + INFO_EXTENSION + TEMP_SUFFIX);
+        Path marker = dir.resolve(tableName + COMMIT_EXTENSION);
+
+        try
+        {
+            if (Files.exists(marker))
+            {
+                if (Files.exists(tabTemp))
+                {
+                    Files.move(tabTemp, tab, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+
+                if (Files.exists(infoTemp))
+                {
+                    Files.move(infoTemp, info, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+
+                Files.delete(marker);
+            }
+
+            Files.deleteIfExists(tabTemp);
+            Files.deleteIfExists(infoTemp);
+            Files.deleteIfExists(dir.resolve(tableName + INDEX_DATA_EXTENSION + TEMP_SUFFIX));
+            Files.deleteIfExists(dir.resolve(tableName + SKETCH_EXTENSION + TEMP_SUFFIX));
+            Files.deleteIfExists(dir.resolve(tableName + STATISTICS_EXTENSION + TEMP_SUFFIX));
+
+            if (!Files.isRegularFile(tab))
+            {
+                Files.deleteIfExists(info);
+                return;
+            }
+
+            repairTableFiles(tableName, dir, tab, info);
+        }
+
+        catch (IOException e)
+        {
+            System.err.println("Unable to recover table " + tab + ": " + e.getMessage());
+        }
+    }
+
+    private static void repairTableFiles(String tableName, Path dir, Path tab, Path info) throws IOException
+    {
+        List<String> lines = Files.readAllLines(tab);
+
+        if (lines.isEmpty() || lines.get(0).isBlank())
+        {
+            System.err.println("Table file " + tab + " has no header and cannot be recovered");
+            return;
+        }
+
+        int columnCount = lines.get(0).split(TAB).length;
+        LinkedHashMap<Integer, ArrayList<String>> rows = new LinkedHashMap<>();
+        rows.put(COLUMN_IDENTIFIER, new ArrayList<>(Arrays.asList(lines.get(0).split(TAB))));
+        boolean damaged = false;
+        int maxKey = 0;
+
+        for (String line: lines.subList(1, lines.size()))
+        {
+            if (line.isBlank())
+            {
+                continue;
+            }
+
+            String[] temp = line.split(TAB, -1);
+
+            if (temp.length != columnCount || !DBHelper.isIntegerLiteral(temp[0]))
+            {
+                damaged = true;
+                continue;
+            }
+
+            int key = Integer.parseInt(temp[0]);
+            maxKey = Math.max(maxKey, key);
+            rows.put(key, new ArrayList<>(Arrays.asList(temp).subList(1, temp.length)));
+        }
+
+        int storedID = loadCurrentID(rows, info.toFile());
+
+        if (!damaged && Files.isRegularFile(info) && storedID > maxKey)
+        {
+            return;
+        }
+
+        System.err.println("Repairing table " + tab);
+        Database database = new Database(dir.getParent().toString(), dir.getFileName().toString());
+        writeTableFiles(tableName, database, Durability.SYNC, rows, Math.max(storedID, maxKey + 1), new CRC32());
+    }
+
+    /** Builds an index over the committed rows and records it so it is loaded with the table. */
+    public synchronized boolean createIndex(IndexKind kind, String columnName)
+    {
+        ensureIndexes();
+        TableIndex index = kind.create(columnName);
+        buildIndex(index);
+        indexes.add(index);
+
+        // unflushed changes make the table file older than the index, the next flush saves it
+        if (!dirty)
+        {
+            saveIndexData(tableChecksum());
+        }
+
+        return saveIndexDefinitions();
+    }
+
+    public synchronized boolean hasIndex(String columnName)
+    {
+        ensureIndexes();
+
+        for (TableIndex index: indexes)
+        {
+            if (index.getColumn().equalsIgnoreCase(columnName))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /** Whether an index on the column can narrow down the rows meeting the condition. */
+    public synchronized boolean canAnswer(String columnName, SyntaxType operator, String value)
+    {
+        ensureIndexes();
+
+        for (TableIndex index: indexes)
+        {
+            if (index.getColumn().equalsIgnoreCase(columnName) && index.supports(operator, value))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Indexes the newest committed version of every row, skipping anything staged
+    private void buildIndex(TableIndex index)
+    {
+        int position = getColumnPosition(index.getColumn(), committed(COLUMN_IDENTIFIER).getValues()) - 1;
+
+        for (Map.Entry<Integer, RowVersion> map: rows.entrySet())
+        {
+            RowVersion version = committed(map.getKey());
+
+            if (map.getKey() != COLUMN_IDENTIFIER && version != null)
+            {
+                index.add(map.getKey(), version.getValues().get(position));
+            }
+        }
+    }
+
+    private RowVersion committed(int key)
+    {
+        RowVersion v = rows.get(key);
+
+        while (v != null && v.isPending())
+        {
+            v = v.getPrevious();
+        }
+
+        return v == null || v.isDeleted() ? null : v;
+    }
+
+    /*
+     * Moves each index from the versions a commit replaced to the ones it added. A change to the
+     * columns rebuilds them instead, dropping indexes whose column has gone.
+     */
+    private void updateIndexes()
+    {
+        if (indexes.isEmpty())
+        {
+            return;
+        }
+
+        ArrayList<String> columns = latest(COLUMN_IDENTIFIER).getValues();
+
+        if (pending.containsKey(COLUMN_IDENTIFIER))
+        {
+            ArrayList<TableIndex> rebuilt = new ArrayList<>();
+
+            for (TableIndex index: indexes)
+            {
+                if (getColumnPosition(index.getColumn(), columns) > 0)
+                {
+                    TableIndex fresh = index.getKind().create(index.getColumn());
+                    buildIndex(fresh);
+                    rebuilt.add(fresh);
+                }
+            }
+
+            boolean dropped = rebuilt.size() != indexes.size();
+            indexes.clear();
+            indexes.addAll(rebuilt);
+
+            if (dropped)
+            {
+                saveIndexDefinitions();
+            }
+            return;
+        }
+
+        for (TableIndex index: indexes)
+        {
+            int position = getColumnPosition(index.getColumn(), columns) - 1;
+
+            for (Map.Entry<Integer, RowVersion> map: pending.entrySet())
+            {
+                RowVersion added = map.getValue();
+                RowVersion replaced = added.getPrevious();
+
+                if (replaced != null && !replaced.isDeleted())
+                {
+                    index.remove(map.getKey(), replaced.getValues().get(position));
+                }
+
+                if (!added.isDeleted())
+                {
+                    index.add(map.getKey(), added.getValues().get(position));
+                }
+            }
+        }
+    }
+
+    /*
+     * Whether the snapshot sees exactly the latest committed rows: no commit in flight, none newer
+     * than the snapshot and no staged changes. Indexes and the row count only answer for those.
+     */
+    private boolean seesLatestCommit(Snapshot snapshot)
+    {
+        return !committing && committedAt <= snapshot.getTimestamp() && !(snapshot.isWriting(this) && !pending.isEmpty());
+    }
+
+    private synchronized RowSet indexedRows(String columnName, SyntaxType operator, String value, Snapshot snapshot)
+    {
+        ensureIndexes();
+
+        if (!seesLatestCommit(snapshot))
+        {
+            return null;
+        }
+
+        for (TableIndex index: indexes)
+        {
+            if (index.getColumn().equalsIgnoreCase(columnName))
+            {
+                RowSet result = index.rowsMatching(operator, value);
+
+                if (result != null)
+                {
+                    return index.isExact() ? result : verified(result, index.getColumn(), operator, value, snapshot);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private RowSet verified(RowSet candidates, String columnName, SyntaxType operator, String value, Snapshot snapshot)
+    {
+        int position = getColumnPosition(columnName, latest(COLUMN_IDENTIFIER).getValues()) - 1;
+        RowSet matching = new RowSet();
+
+        for (PrimitiveIterator.OfInt it = candidates.iterator(); it.hasNext(); )
+        {
+            int id = it.nextInt();
+            RowVersion version = snapshot.visible(this, rows.get(id));
+
+            if (version != null && DBHelper.conditionMet(version.getValues().get(position), value, operator))
+            {
+                matching.add(id);
+            }
+        }
+
+        return matching;
+    }
+
+    private Path indexDefinitionsFile()
+    {
+        return Paths.get(database.getPath(), database.getDatabaseName(), tableName + INDEX_EXTENSION);
+    }
+
+    private boolean saveIndexDefinitions()
+    {
+        Path file = indexDefinitionsFile();
+        Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        StringBuilder definitions = new StringBuilder();
+
+        for (TableIndex index: indexes)
+        {
+            definitions.append(index.getKind()).append(TAB).append(index.getColumn()).append(System.lineSeparator());
+        }
+
+        try
+        {
+            if (indexes.isEmpty())
+            {
+                Files.deleteIfExists(file);
+                Files.deleteIfExists(indexDataFile());
+                return true;
+            }
+
+            Files.writeString(temp, definitions.toString());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        catch (IOException e)
+        {
+            return false;
+        }
+
+        return true;
+    }
+
+    private Path indexDataFile()
+    {
+        return Paths.get(database.getPath(), database.getDatabaseName(), tableName + INDEX_DATA_EXTENSION);
+    }
+
+    private long tableChecksum()
+    {
+        CRC32 checksum = new CRC32();
+        Path tab = Paths.get(database.getPath(), database.getDatabaseName(), tableName + EXTENSION);
+
+        try (InputStream in = new CheckedInputStream(Files.newInputStream(tab), checksum))
+        {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+
+        catch (IOException e)
+        {
+            return -1;
+        }
+
+        return checksum.getValue();
+    }
+
+    /*
+     * Loads the indexes on first use. Until then the table has had no commits, so the table file
+     * still holds the committed rows and a stored index is current if it carries its checksum.
+     * Only indexes missing from the file, or a stale file, are rebuilt from the rows.
+     */
+    private void ensureIndexes()
+    {
+        if (indexesLoaded)
+        {
+            return;
+        }
+
+        indexesLoaded = true;
+        Path file = indexDefinitionsFile();
+
+        if (!Files.isRegularFile(file))
+        {
+            return;
+        }
+
+        long checksum = tableChecksum();
+        HashMap<String, TableIndex> stored = loadIndexData(checksum);
+        boolean rebuilt = false;
+
+        try
+        {
+            for (String line: Files.readAllLines(file))
+            {
+                String[] definition = line.split(TAB);
+                IndexKind kind = definition.length == 2 ? IndexKind.fromString(definition[0]) : null;
+
+                if (kind != null && getColumnPosition(definition[1], committed(COLUMN_IDENTIFIER).getValues()) > 0)
+                {
+                    TableIndex index = stored.get(kind + TAB + definition[1]);
+
+                    if (index == null)
+                    {
+                        index = kind.create(definition[1]);
+                        buildIndex(index);
+                        rebuilt = true;
+                    }
+
+                    indexes.add(index);
+                }
+            }
+        }
+
+        catch (IOException e)
+        {
+            System.err.println("Unable to read indexes of table " + tableName + ", continuing without them");
+        }
+
+        if (rebuilt)
+        {
+            saveIndexData(checksum);
+        }
+    }
+
+    /*
+     * The index file starts with the checksum of the table file it was built from, then each
+     * index as a "KIND\tcolumn\tentries" line followed by one "key\tids" line per entry.
+     */
+    private HashMap<String, TableIndex> loadIndexData(long checksum)
+    {
+        HashMap<String, TableIndex> stored = new HashMap<>();
+        Path file = indexDataFile();
+
+        if (checksum < 0 || !Files.isRegularFile(file))
+        {
+            return stored;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file))
+        {
+            if (Long.parseLong(reader.readLine()) != checksum)
+            {
+                return stored;
+            }
+
+            String line;
+
+            while ((line = reader.readLine()) != null)
+            {
+                String[] header = line.split(TAB);
+                TableIndex index = IndexKind.fromString(header[0]).create(header[1]);
+                int entries = Integer.parseInt(header[2]);
+
+                for (int i = 0; i < entries; i++)
+                {
+                    String[] entry = reader.readLine().split(TAB, -1);
+                    index.entries().put(entry[0], RowSet.decode(entry[1]));
+                }
+
+                stored.put(index.getKind() + TAB + index.getColumn(), index);
+            }
+        }
+
+        catch (Exception e)
+        {
+            // a damaged file is treated like a stale one
+            return new HashMap<>();
+        }
+
+        return stored;
+    }
+
+    private void saveIndexData(long checksum)
+    {
+        Path file = indexDataFile();
+        Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+
+        if (checksum < 0)
+        {
+            return;
+        }
+
+        try
+        {
+            try (BufferedWriter bw = Files.newBufferedWriter(temp))
+            {
+                bw.write(Long.toString(checksum));
+                bw.newLine();
+
+                for (TableIndex index: indexes)
+                {
+                    Map<String, RowSet> entries = index.entries();
+                    bw.write(index.getKind() + TAB + index.getColumn() + TAB + entries.size());
+                    bw.newLine();
+
+                    for (Map.Entry<String, RowSet> entry: entries.entrySet())
+                    {
+                        bw.write(entry.getKey() + TAB + entry.getValue().encode());
+                        bw.newLine();
+                    }
+                }
+            }
+
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        catch (IOException e)
+        {
+            // the indexes are rebuilt from the rows next time the table is loaded
+            System.err.println("Unable to save indexes of table " + tableName);
+        }
+    }
+
+    /*
+     * Loads the sketches on first use, under the same rule as the indexes: a stored file is current
+     * if it carries the checksum of the table file, otherwise they are rebuilt from the rows.
+     */
+    private void ensureSketches()
+    {
+        if (sketchesLoaded)
+        {
+            return;
+        }
+
+        sketchesLoaded = true;
+        long checksum = tableChecksum();
+
+        if (!loadSketches(checksum))
+        {
+            buildSketches();
+            saveSketches(checksum);
+        }
+    }
+
+    // Sketches the newest committed version of every row, like buildIndex
+    private void buildSketches()
+    {
+        ArrayList<String> columns = committed(COLUMN_IDENTIFIER).getValues();
+        sketches.clear();
+
+        for (String column: columns.subList(1, columns.size()))
+        {
+            sketches.put(column.toUpperCase(), new HyperLogLog());
+        }
+
+        for (Map.Entry<Integer, RowVersion> map: rows.entrySet())
+        {
+            RowVersion version = committed(map.getKey());
+
+            if (map.getKey() != COLUMN_IDENTIFIER && version != null)
+            {
+                addToSketches(columns, version.getValues());
+            }
+        }
+    }
+
+    private void addToSketches(ArrayList<String> columns, ArrayList<String> values)
+    {
+        for (int i = 1; i < columns.size(); i++)
+        {
+            String value = values.get(i - 1);
+
+            if (!value.equalsIgnoreCase("NULL"))
+            {
+                sketches.get(columns.get(i).toUpperCase()).add(value);
+            }
+        }
+    }
+
+    // Adds the values a commit wrote; a change to the columns rebuilds the sketches instead
+    private void updateSketches()
+    {
+        if (pending.containsKey(COLUMN_IDENTIFIER))
+        {
+            buildSketches();
+            return;
+        }
+
+        ArrayList<String> columns = latest(COLUMN_IDENTIFIER).getValues();
+
+        for (Map.Entry<Integer, RowVersion> map: pending.entrySet())
+        {
+            if (!map.getValue().isDeleted())
+            {
+                addToSketches(columns, map.getValue().getValues());
+            }
+        }
+    }
+
+    private Path sketchFile()
+    {
+        return Paths.get(database.getPath(), database.getDatabaseName(), tableName + SKETCH_EXTENSION);
+    }
+
+    /*
+     * The sketch file starts with the checksum of the table file it was built from, then one
+     * "column\tregisters" line per column. It only counts if it covers every column.
+     */
+    private boolean loadSketches(long checksum)
+    {
+        Path file = sketchFile();
+        HashMap<String, HyperLogLog> stored = new HashMap<>();
+
+        if (checksum < 0 || !Files.isRegularFile(file))
+        {
+            return false;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file))
+        {
+            if (Long.parseLong(reader.readLine()) != checksum)
+            {
+                return false;
+            }
+
+            String line;
+
+            while ((line = reader.readLine()) != null)
+            {
+                String[] entry = line.split(TAB);
+                stored.put(entry[0], HyperLogLog.decode(entry[1]));
+            }
+        }
+
+        catch (Exception e)
+        {
+            // a damaged file is treated like a stale one
+            return false;
+        }
+
+        ArrayList<String> columns = committed(COLUMN_IDENTIFIER).getValues();
+
+        for (String column: columns.subList(1, columns.size()))
+        {
+            if (!stored.containsKey(column.toUpperCase()))
+            {
+                return false;
+            }
+        }
+
+        sketches.clear();
+        sketches.putAll(stored);
+        return true;
+    }
+
+    private void saveSketches(long checksum)
+    {
+        Path file = sketchFile();
+        Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+
+        if (checksum < 0)
+        {
+            return;
+        }
+
+        try
+        {
+            try (BufferedWriter bw = Files.newBufferedWriter(temp))
+            {
+                bw.write(Long.toString(checksum));
+                bw.newLine();
+
+                for (Map.Entry<String, HyperLogLog> entry: sketches.entrySet())
+                {
+                    bw.write(entry.getKey() + TAB + entry.getValue().encode());
+                    bw.newLine();
+                }
+            }
+
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        catch (IOException e)
+        {
+            // the sketches are rebuilt from the rows next time the table is loaded
+            System.err.println("Unable to save sketches of table " + tableName);
+        }
+    }
+
+    /**
+     * Collects statistics over the rows visible to the snapshot and saves them with the table.
+     * A scan of the latest commit also replaces the sketches, dropping values deleted since they
+     * were built. Returns null if the statistics could not be saved.
+     */
+    public TableStatistics analyze(Snapshot snapshot)
+    {
+        ArrayList<String> columns = header(snapshot);
+        TableStatistics.Collector collector = new TableStatistics.Collector(columns.subList(1, columns.size()));
+
+        for (Map.Entry<Integer, RowVersion> map: rows.entrySet())
+        {
+            RowVersion version = map.getKey() == COLUMN_IDENTIFIER ? null : snapshot.visible(this, map.getValue());
+
+            if (version != null)
+            {
+                collector.add(version.getValues());
+            }
+        }
+
+        TableStatistics analyzed = collector.finish();
+
+        synchronized (this)
+        {
+            ensureSketches();
+
+            if (seesLatestCommit(snapshot))
+            {
+                for (int i = 1; i < columns.size(); i++)
+                {
+                    sketches.put(columns.get(i).toUpperCase(), collector.getSketch(i - 1));
+                }
+
+                // approximate counts answered from the old sketches are no longer what a query gives
+                countChange(database, tableName);
+
+                // with unflushed changes the next flush saves them
+                if (!dirty)
+                {
+                    saveSketches(tableChecksum());
+                }
+            }
+
+            Path file = statisticsFile();
+            Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+
+            try
+            {
+                Files.write(temp, analyzed.encode());
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            catch (IOException e)
+            {
+                return null;
+            }
+
+            statistics = analyzed;
+            statisticsLoaded = true;
+        }
+
+        return analyzed;
+    }
+
+    /** The statistics of the last ANALYZE, or null if the table has never been analyzed. */
+    public synchronized TableStatistics getStatistics()
+    {
+        if (!statisticsLoaded)
+        {
+            statisticsLoaded = true;
+            Path file = statisticsFile();
+
+            try
+            {
+                statistics = Files.isRegularFile(file) ? TableStatistics.decode(Files.readAllLines(file)) : null;
+            }
+
+            catch (Exception e)
+            {
+                System.err.println("Unable to read statistics of table " + tableName + ", continuing without them");
+            }
+        }
+
+        return statistics;
+    }
+
+    private Path statisticsFile()
+    {
+        return Paths.get(database.getPath(), database.getDatabaseName(), tableName + STATISTICS_EXTENSION);
+    }
+
+    public boolean containsColumn(String columnName, Snapshot snapshot)
+    {
+        columnName = columnName.toUpperCase();
+        ArrayList<String> values = header(snapshot);
+
+        for (String name: values)
+        {
+            name = name.toUpperCase();
+            if (name.equals(columnName))
+            {
+                return true;
+            }
+        }
+
+        return false;
+
+    }
+
+    private ArrayList<String> header(Snapshot snapshot)
+    {
+        return snapshot.visible(this, rows.get(COLUMN_IDENTIFIER)).getValues();
+    }
+
+    public synchronized boolean addColumn(String columnName)
+    {
+        for (int key: rows.keySet())
+        {
+            RowVersion current = latest(key);
+
+            if (current == null)
+            {
+                continue;
+            }
+
+            ArrayList<String> values = new ArrayList<>(current.getValues());
+            values.add(key == COLUMN_IDENTIFIER ? columnName : "NULL");
+            stage(key, RowVersion.pending(values), columnName.length() + 1L);
+        }
+
+        return true;
+    }
+
+    public synchronized boolean removeColumn(String columnName)
+    {
+        ArrayList<String> columns = latest(COLUMN_IDENTIFIER).getValues();
+
+        //Off by one due to discrepancies in how column names and values are stored
+        int index = columns.indexOf(columnName) - 1;
+
+        if (index < 0)
+        {
+            return false;
+        }
+
+        for (int key: rows.keySet())
+        {
+            RowVersion current = latest(key);
+
+            if (current == null)
+            {
+                continue;
+            }
+
+            ArrayList<String> values = new ArrayList<>(current.getValues());
+            values.remove(key == COLUMN_IDENTIFIER ? index + 1 : index);
+            stage(key, RowVersion.pending(values), columnName.length() + 1L);
+        }
+
+        return true;
+    }
+
+    public int editableColumns(Snapshot snapshot)
+    {
+        ArrayList<String> columns = header(snapshot);
+        return columns.size() - 1;
+    }
+
+    public RowSet getRelevantRows(String columnName, SyntaxType operator, String value, Snapshot snapshot)
+    {
+        RowSet relevantRows = indexedRows(columnName, operator, value, snapshot);
+
+        if (relevantRows != null)
+        {
+            return relevantRows;
+        }
+
+        relevantRows = new RowSet();
+
+        try
+        {
+            int relevantIndex = getColumnPosition(columnName, snapshot) - 1;
+            for (Map.Entry<Integer, RowVersion> map: rows.entrySet())
+                {
+                    int currentKey = map.getKey();
+                    RowVersion version = snapshot.visible(this, map.getValue());
+
+                    if (currentKey == COLUMN_IDENTIFIER || version == null)
+                    {
+                        continue;
+                    }
+
+                    String relevantValue;
+
+                    if (relevantIndex == COLUMN_IDENTIFIER)
+                    {
+                        relevantValue = Integer.toString(currentKey);
+                    }
+
+                    else
+                    {
+                        relevantValue = version.getValues().get(relevantIndex);
+                    }
+
+                    if (DBHelper.conditionMet(relevantValue, value, operator))
+                    {
+                        relevantRows.add(currentKey);
+                    }
+
+                }
+
+            }
+
+            catch (Exception e)
+            {
+                return null;
+            }
+
+        return relevantRows;
+    }
+
+    /** The rows of the set, or of the table if it is null, visible to the snapshot and passing the filter. */
+    public RowSet filterRows(RowSet candidates, RowFilter filter, Snapshot snapshot)
+    {
+        RowSet matching = new RowSet();
+
+        for (RowView row: scan(candidates, snapshot))
+        {
+            if (filter.test(row.getId(), row.getValues()))
+            {
+                matching.add(row.getId());
+            }
+        }
+
+        return matching;
+    }
+
+    /**
+     * The rows of the set, or of the table if it is null, visible to the snapshot in id order.
+     * Each view reads its version's values in place, so a scan copies no rows.
+     */
+    public Iterable<RowView> scan(RowSet ids, Snapshot snapshot)
+    {
+        return () -> visibleRows(ids == null ? rows.keySet().iterator() : ids.iterator(), snapshot);
+    }
+
+    private Iterator<RowView> visibleRows(Iterator<Integer> ids, Snapshot snapshot)
+    {
+        return new Iterator<>() {
+            private RowView next = advance();
+
+            private RowView advance()
+            {
+                while (ids.hasNext())
+                {
+                    int key = ids.next();
+                    RowVersion version = key == COLUMN_IDENTIFIER ? null : snapshot.visible(Table.this, rows.get(key));
+
+                    if (version != null)
+                    {
+                        return new RowView(key, version.getValues());
+                    }
+                }
+
+                return null;
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return next != null;
+            }
+
+            @Override
+            public RowView next()
+            {
+                if (next == null)
+                {
+                    throw new NoSuchElementException();
+                }
+
+                RowView row = next;
+                next = advance();
+                return row;
+            }
+        };
+    }
+
+    /** The condition getRelevantRows evaluates, as a check on one row, or null for an unknown column. */
+    public RowFilter rowFilter(String columnName, SyntaxType operator, String value, Snapshot snapshot)
+    {
+        int position = getColumnPosition(columnName, snapshot) - 1;
+
+        if (position < COLUMN_IDENTIFIER)
+        {
+            return null;
+        }
+
+        if (position == COLUMN_IDENTIFIER)
+        {
+            return (id, values) -> DBHelper.conditionMet(Integer.toString(id), value, operator);
+        }
+
+        return (id, values) -> DBHelper.conditionMet(values.get(position), value, operator);
+    }
+
+    public synchronized boolean changeValue(String columnName, String value, int row)
+    {
+        RowVersion current = latest(row);
+        int indexToChange = getColumnPosition(columnName, latest(COLUMN_IDENTIFIER).getValues()) - 1;
+
+        if (current == null || indexToChange < 0)
+        {
+            return false;
+        }
+
+        ArrayList<String> values = new ArrayList<>(current.getValues());
+        values.set(indexToChange, value);
+        stage(row, RowVersion.pending(values), value.length() + 1L);
+        return true;
+    }
+
+    public ArrayList<String> getColumnNames(Snapshot snapshot)
+    {
+        return new ArrayList<>(header(snapshot));
+    }
+
+    private int getColumnPosition(String columnName, Snapshot snapshot)
+    {
+        return getColumnPosition(columnName, header(snapshot));
+    }
+
+    private static int getColumnPosition(String columnName, ArrayList<String> columnNames)
+    {
+        for (int i = 0; i < columnNames.size(); i++)
+        {
+            if (columnName.equalsIgnoreCase(columnNames.get(i)))
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public boolean selectTable(StringBuilder s, ArrayList<String> attributes, Snapshot snapshot)
+    {
+        ArrayList<Integer> columnIndex = new ArrayList<>();
+        selectTableHelper(s, attributes, columnIndex, snapshot);
+
+        for (RowView row: scan(null, snapshot))
+        {
+            appendRow(s, row, columnIndex);
+        }
+
+        s.deleteCharAt(s.length() - 1);
+        return true;
+    }
+
+    /**
+     * Appends the rows passing the filter (every row if it is null) in id order, skipping the
+     * first offset of them. The scan stops as soon as limit rows have been written. Given a
+     * DistinctRows, only the first of equal projected rows counts.
+     */
+    public boolean selectTable(StringBuilder s, ArrayList<String> attributes, RowFilter filter, DistinctRows distinct,
+                               int offset, int limit, Snapshot snapshot) throws IOException
+    {
+        ArrayList<Integer> columnIndex = new ArrayList<>();
+        selectTableHelper(s, attributes, columnIndex, snapshot);
+        int skipped = 0;
+        int written = 0;
+
+        for (RowView view: scan(null, snapshot))
+        {
+            if (written == limit)
+            {
+                break;
+            }
+
+            if (filter != null && !filter.test(view.getId(), view.getValues()))
+            {
+                continue;
+            }
+
+            String row = distinct == null ? null : projectRow(view, columnIndex);
+
+            if (row != null && !distinct.firstSeen(row))
+            {
+                continue;
+            }
+
+            if (skipped < offset)
+            {
+                skipped++;
+                continue;
+            }
+
+            if (row == null)
+            {
+                appendRow(s, view, columnIndex);
+            }
+
+            else
+            {
+                s.append(row).append(System.lineSeparator());
+            }
+
+            written++;
+        }
+
+        s.deleteCharAt(s.length() - 1);
+        return true;
+    }
+
+    private void appendRow(StringBuilder s, RowView row, ArrayList<Integer> columnIndex)
+    {
+        for (int i: columnIndex)
+        {
+            s.append(row.get(i));
+            s.append(TAB);
+        }
+
+        s.deleteCharAt(s.length() - 1);
+
+        s.append(System.lineSeparator());
+    }
+
+    private String projectRow(RowView row, ArrayList<Integer> columnIndex)
+    {
+        StringBuilder line = new StringBuilder();
+        appendRow(line, row, columnIndex);
+        line.setLength(line.length() - System.lineSeparator().length());
+        return line.toString();
+    }
+
+    private void selectTableHelper(StringBuilder s, ArrayList<String> attributes, ArrayList<Integer> columnIndex, Snapshot snapshot) {
+
+        ArrayList<String> columnNames = header(snapshot);
+
+        for (String attribute: attributes)
+        {
+            int position = getColumnPosition(attribute, columnNames);
+            columnIndex.add(position);
+            s.append(columnNames.get(position));
+            s.append(TAB);
+        }
+
+        s.deleteCharAt(s.length() - 1);
+
+        s.append(System.lineSeparator());
+    }
+
+    public boolean selectTable(StringBuilder s, ArrayList<String> attributes, RowSet rowsToSelect, Snapshot snapshot)
+    {
+        ArrayList<Integer> columnIndex = new ArrayList<>();
+        selectTableHelper(s, attributes, columnIndex, snapshot);
+
+        // The row set already iterates in id order
+        for (RowView row: scan(rowsToSelect, snapshot))
+        {
+            appendRow(s, row, columnIndex);
+        }
+
+        s.deleteCharAt(s.length() - 1);
+
+        return true;
+
+    }
+    /**
+     * Appends the rows ordered by one column, from the given set or the whole table if it is null.
+     * The first offset rows are skipped and at most limit written, unless it is negative. Given a
+     * DistinctRows, equal projected rows are sorted once, so the order column has to be selected.
+     */
+    public boolean selectTable(StringBuilder s, ArrayList<String> attributes, RowSet rowsToSelect, String orderColumn,
+                               boolean descending, DistinctRows distinct, int offset, int limit, Snapshot snapshot)
+            throws IOException
+    {
+        ArrayList<Integer> columnIndex = new ArrayList<>();
+        selectTableHelper(s, attributes, columnIndex, snapshot);
+        int orderIndex = getColumnPosition(orderColumn, snapshot);
+
+        try (RowSorter sorter = new RowSorter(descending, offset, limit))
+        {
+            for (RowView view: scan(rowsToSelect, snapshot))
+            {
+                String row = projectRow(view, columnIndex);
+
+                if (distinct != null && !distinct.firstSeen(row))
+                {
+                    continue;
+                }
+
+                sorter.add(view.get(orderIndex), view.getId(), row);
+            }
+
+            sorter.writeTo(s);
+        }
+
+        s.deleteCharAt(s.length() - 1);
+        return true;
+    }
+
+    /** Counts the rows visible to the snapshot, without a scan when it reads the latest commit. */
+    public int countRows(Snapshot snapshot)
+    {
+        synchronized (this)
+        {
+            if (seesLatestCommit(snapshot))
+            {
+                return rowCount;
+            }
+        }
+
+        int count = 0;
+
+        for (Map.Entry<Integer, RowVersion> map: rows.entrySet())
+        {
+            if (map.getKey() != COLUMN_IDENTIFIER && snapshot.visible(this, map.getValue()) != null)
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Feeds the selected rows (every row if the set is null) to the aggregates in one pass. Over
+     * the whole table, COUNT(*) is answered from the row count and APPROX_COUNT_DISTINCT from the
+     * column sketches when no aggregate needs the rows themselves.
+     */
+    public void aggregate(ArrayList<Aggregate> aggregates, RowSet rowsToSelect, Snapshot snapshot)
+    {
+        if (rowsToSelect == null && aggregates.stream().allMatch(Aggregate::countsRows))
+        {
+            int count = countRows(snapshot);
+            aggregates.forEach(a -> a.addRows(count));
+            return;
+        }
+
+        if (rowsToSelect == null && aggregateFromSketches(aggregates, snapshot))
+        {
+            return;
+        }
+
+        int[] positions = new int[aggregates.size()];
+
+        for (int i = 0; i < positions.length; i++)
+        {
+            String column = aggregates.get(i).getColumn();
+            // COUNT(*) reads the id, which every row has
+            positions[i] = column == null ? 0 : getColumnPosition(column, snapshot);
+        }
+
+        for (RowView row: scan(rowsToSelect, snapshot))
+        {
+            for (int i = 0; i < positions.length; i++)
+            {
+                aggregates.get(i).add(row.get(positions[i]));
+            }
+        }
+    }
+
+    private synchronized boolean aggregateFromSketches(ArrayList<Aggregate> aggregates, Snapshot snapshot)
+    {
+        ensureSketches();
+
+        if (!seesLatestCommit(snapshot))
+        {
+            return false;
+        }
+
+        for (Aggregate a: aggregates)
+        {
+            if (!a.countsRows() && !(a.estimatesDistinct() && sketches.containsKey(a.getColumn().toUpperCase())))
+            {
+                return false;
+            }
+        }
+
+        for (Aggregate a: aggregates)
+        {
+            if (a.countsRows())
+            {
+                a.addRows(rowCount);
+            }
+
+            else
+            {
+                a.addSketch(sketches.get(a.getColumn().toUpperCase()));
+            }
+        }
+
+        return true;
+    }
+
+    public HashAggregation groupAggregate(ArrayList<String> groupColumns, ArrayList<Aggregate> aggregates,
+                                          RowSet rowsToSelect, Snapshot snapshot) throws InterruptedException, ExecutionException
+    {
+        return groupAggregate(groupColumns, aggregates, rowsToSelect, snapshot, ROWS_PER_PARTITION);
+    }
+
+    /*
+     * Splits the selected rows into id ranges of at least rowsPerPartition rows, one per worker
+     * at most, and aggregates each range into its own hash table.
+     */
+    HashAggregation groupAggregate(ArrayList<String> groupColumns, ArrayList<Aggregate> aggregates, RowSet rowsToSelect,
+                                   Snapshot snapshot, int rowsPerPartition) throws InterruptedException, ExecutionException
+    {
+        int[] groupPositions = new int[groupColumns.size()];
+        int[] aggregatePositions = new int[aggregates.size()];
+
+        for (int i = 0; i < groupPositions.length; i++)
+        {
+            groupPositions[i] = getColumnPosition(groupColumns.get(i), snapshot);
+        }
+
+        for (int i = 0; i < aggregatePositions.length; i++)
+        {
+            String column = aggregates.get(i).getColumn();
+            aggregatePositions[i] = column == null ? 0 : getColumnPosition(column, snapshot);
+        }
+
+        int[] ids = rowsToSelect == null ? null : rowsToSelect.toArray();
+        int size = ids == null ? rows.size() : ids.length;
+        int partitions = Math.max(1, Math.min(HashAggregation.WORKER_COUNT, size / rowsPerPartition));
+        ArrayList<Callable<HashAggregation>> partials = new ArrayList<>();
+
+        for (int p = 0; p < partitions; p++)
+        {
+            HashAggregation partial = new HashAggregation(groupPositions, aggregates, aggregatePositions);
+            Iterator<Integer> range;
+
+            if (ids != null)
+            {
+                range = Arrays.stream(ids, (int) ((long) ids.length * p / partitions),
+                        (int) ((long) ids.length * (p + 1) / partitions)).iterator();
+            }
+
+            else
+            {
+                // ids are spread by key rather than count, which is close enough for a split
+                int last = rows.isEmpty() ? 0 : rows.lastKey();
+                int from = (int) ((long) (last + 1) * p / partitions);
+                int to = p == partitions - 1 ? Integer.MAX_VALUE : (int) ((long) (last + 1) * (p + 1) / partitions);
+                range = rows.subMap(from, to).keySet().iterator();
+            }
+
+            partials.add(() -> {
+                for (Iterator<RowView> it = visibleRows(range, snapshot); it.hasNext(); )
+                {
+                    partial.add(it.next());
+                }
+
+                return partial;
+            });
+        }
+
+        return HashAggregation.combine(partials);
+    }
 
     public String getTableName()
     {
         return tableName;
     }
 
+    public Database getDatabase()
+    {
+        return database;
+    }
+
 
 }
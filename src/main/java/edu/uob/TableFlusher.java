@@ -0,0 +1,104 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Background writer for tables whose changes were only applied in memory. Dirty tables are
+ * written every {@link #FLUSH_INTERVAL_MS}, or sooner once the changed bytes pass a threshold,
+ * and everything still dirty is written when the JVM shuts down.
+ */
+public class TableFlusher {
+    private static final long FLUSH_INTERVAL_MS = 200;
+    private static final long DIRTY_BYTES_THRESHOLD = 4L * 1024 * 1024;
+
+    private static final Object LOCK = new Object();
+    private static final Set<Table> dirtyTables = new LinkedHashSet<>();
+    private static long dirtyBytes;
+
+    static
+    {
+        Thread flusher = new Thread(TableFlusher::run, "table-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(TableFlusher::flushAll, "table-flush-on-exit"));
+    }
+
+    private TableFlusher()
+    {
+    }
+
+    public static void markDirty(Table t, long changedBytes)
+    {
+        synchronized (LOCK)
+        {
+            dirtyTables.add(t);
+            dirtyBytes += changedBytes;
+
+            if (dirtyBytes >= DIRTY_BYTES_THRESHOLD)
+            {
+                LOCK.notifyAll();
+            }
+        }
+    }
+
+    /** Writes the given table now if it is waiting on the flusher. */
+    public static boolean flush(Table t)
+    {
+        synchronized (LOCK)
+        {
+            dirtyTables.remove(t);
+        }
+
+        return t.flush();
+    }
+
+    public static void flushAll()
+    {
+        ArrayList<Table> toFlush;
+
+        synchronized (LOCK)
+        {
+            toFlush = new ArrayList<>(dirtyTables);
+            dirtyTables.clear();
+            dirtyBytes = 0;
+        }
+
+        for (Table t: toFlush)
+        {
+            if (!t.flush())
+            {
+                System.err.println("Unable to flush table " + t.getTableName() + ", retrying later");
+                markDirty(t, 0);
+            }
+        }
+    }
+
+    private static void run()
+    {
+        while (!Thread.currentThread().isInterrupted())
+        {
+            synchronized (LOCK)
+            {
+                long deadline = System.currentTimeMillis() + FLUSH_INTERVAL_MS;
+                long remaining;
+
+                while (dirtyBytes < DIRTY_BYTES_THRESHOLD && (remaining = deadline - System.currentTimeMillis()) > 0)
+                {
+                    try
+                    {
+                        LOCK.wait(remaining);
+                    }
+
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+            }
+
+            flushAll();
+        }
+    }
+}
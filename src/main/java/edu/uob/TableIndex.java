@@ -0,0 +1,29 @@
+package edu.uob;
+
+import java.util.Map;
+
+/** A secondary index over one column, kept in step with the committed rows of its table. */
+public interface TableIndex {
+    IndexKind getKind();
+
+    String getColumn();
+
+    void add(int id, String value);
+
+    void remove(int id, String value);
+
+    /**
+     * Returns the rows whose value may meet the condition, or null if this index cannot narrow
+     * them down. The rows are exactly the matching ones when {@link #isExact()} holds.
+     */
+    RowSet rowsMatching(SyntaxType operator, String value);
+
+    /** Whether {@link #rowsMatching} narrows down the rows for this comparison rather than giving up. */
+    boolean supports(SyntaxType operator, String value);
+
+    /** The rows under each key of the index, used to store it with the table and read it back. */
+    Map<String, RowSet> entries();
+
+    /** Whether rows from {@link #rowsMatching} still have to be checked against their values. */
+    boolean isExact();
+}
@@ -0,0 +1,302 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * What ANALYZE found in a table: its row count and, per column, the NULL count, an estimate of
+ * the distinct values, the smallest and largest value and an equi-depth histogram. Planning
+ * reads selectivities from it; they describe the table as of the last ANALYZE.
+ */
+public class TableStatistics {
+    private static final double DEFAULT_SELECTIVITY = 1.0 / 3;
+    private static final double LIKE_SELECTIVITY = 0.1;
+    private static final int HISTOGRAM_BUCKETS = 16;
+    private static final int SAMPLE_SIZE = 10000;
+    private static final String TAB = "\t";
+
+    private final long rowCount;
+    // By upper case column name
+    private final LinkedHashMap<String, ColumnStatistics> columns = new LinkedHashMap<>();
+
+    public static final class ColumnStatistics {
+        private final String name;
+        private final long nullCount;
+        private final long distinct;
+        private final String min;
+        private final String max;
+        // Upper bound of each bucket, every bucket holding the same share of the values
+        private final String[] bounds;
+
+        private ColumnStatistics(String name, long nullCount, long distinct, String min, String max, String[] bounds)
+        {
+            this.name = name;
+            this.nullCount = nullCount;
+            this.distinct = distinct;
+            this.min = min;
+            this.max = max;
+            this.bounds = bounds;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public long getNullCount()
+        {
+            return nullCount;
+        }
+
+        public long getDistinct()
+        {
+            return distinct;
+        }
+
+        public String getMin()
+        {
+            return min;
+        }
+
+        public String getMax()
+        {
+            return max;
+        }
+
+        // Share of the non-NULL values below the value, or up to it when inclusive
+        private double shareBelow(String value, boolean inclusive)
+        {
+            if (bounds.length == 0 || DBHelper.compareValues(value, min) < (inclusive ? 0 : 1))
+            {
+                return 0;
+            }
+
+            int below = 0;
+
+            while (below < bounds.length && DBHelper.compareValues(bounds[below], value) < (inclusive ? 1 : 0))
+            {
+                below++;
+            }
+
+            // a value inside a bucket is taken to be half way through it
+            return Math.min(1, (below + (below < bounds.length ? 0.5 : 0)) / bounds.length);
+        }
+    }
+
+    private TableStatistics(long rowCount)
+    {
+        this.rowCount = rowCount;
+    }
+
+    public long getRowCount()
+    {
+        return rowCount;
+    }
+
+    public Collection<ColumnStatistics> getColumns()
+    {
+        return columns.values();
+    }
+
+    /** The statistics of a column, or null if it had not been analyzed. */
+    public ColumnStatistics getColumn(String name)
+    {
+        return columns.get(name.toUpperCase());
+    }
+
+    /** Estimates the share of rows for which the column compares to the value as the operator says. */
+    public double selectivity(String column, SyntaxType operator, String value)
+    {
+        ColumnStatistics c = getColumn(column);
+
+        if (c == null || rowCount == 0)
+        {
+            return c == null ? defaultSelectivity(operator) : 0;
+        }
+
+        double nulls = (double) c.nullCount / rowCount;
+        double nonNull = 1 - nulls;
+        boolean nullValue = value.equalsIgnoreCase("NULL");
+        double equal = nullValue ? nulls : c.distinct == 0 ? 0 : nonNull / c.distinct;
+
+        return switch (operator) {
+            case EQUAL_TO -> equal;
+            case NOT_EQUAL -> nullValue ? nonNull : Math.max(0, nonNull - equal);
+            case LT -> nonNull * c.shareBelow(value, false);
+            case LT_EQUAL_TO -> nonNull * c.shareBelow(value, true);
+            case GT -> nonNull * (1 - c.shareBelow(value, true));
+            case GT_EQUAL_TO -> nonNull * (1 - c.shareBelow(value, false));
+            case LIKE -> nonNull * LIKE_SELECTIVITY;
+            default -> DEFAULT_SELECTIVITY;
+        };
+    }
+
+    /** A guess at the selectivity of a condition on a column that has not been analyzed. */
+    public static double defaultSelectivity(SyntaxType operator)
+    {
+        return switch (operator) {
+            case EQUAL_TO -> 0.005;
+            case NOT_EQUAL -> 0.995;
+            case LIKE -> LIKE_SELECTIVITY;
+            default -> DEFAULT_SELECTIVITY;
+        };
+    }
+
+    /**
+     * Gathers statistics in one pass over the rows. NULL and distinct counts and the extremes are
+     * exact over every row, the histogram comes from a fixed size random sample of the values.
+     */
+    public static final class Collector {
+        private final List<String> names;
+        private final HyperLogLog[] sketches;
+        private final long[] nullCounts;
+        private final long[] nonNullCounts;
+        private final String[] mins;
+        private final String[] maxes;
+        private final ArrayList<ArrayList<String>> samples = new ArrayList<>();
+        private final Random random = new Random();
+        private long rowCount;
+
+        /** Collects the named columns, given without the id column. */
+        public Collector(List<String> names)
+        {
+            this.names = names;
+            sketches = new HyperLogLog[names.size()];
+            nullCounts = new long[names.size()];
+            nonNullCounts = new long[names.size()];
+            mins = new String[names.size()];
+            maxes = new String[names.size()];
+
+            for (int i = 0; i < names.size(); i++)
+            {
+                sketches[i] = new HyperLogLog();
+                samples.add(new ArrayList<>());
+            }
+        }
+
+        public void add(ArrayList<String> values)
+        {
+            rowCount++;
+
+            for (int i = 0; i < sketches.length; i++)
+            {
+                String value = values.get(i);
+
+                if (value.equalsIgnoreCase("NULL"))
+                {
+                    nullCounts[i]++;
+                    continue;
+                }
+
+                sketches[i].add(value);
+
+                if (mins[i] == null || DBHelper.compareValues(value, mins[i]) < 0)
+                {
+                    mins[i] = value;
+                }
+
+                if (maxes[i] == null || DBHelper.compareValues(value, maxes[i]) > 0)
+                {
+                    maxes[i] = value;
+                }
+
+                // reservoir sampling keeps each value seen so far with the same chance
+                long seen = ++nonNullCounts[i];
+
+                if (seen <= SAMPLE_SIZE)
+                {
+                    samples.get(i).add(value);
+                }
+
+                else
+                {
+                    long slot = (long) (random.nextDouble() * seen);
+
+                    if (slot < SAMPLE_SIZE)
+                    {
+                        samples.get(i).set((int) slot, value);
+                    }
+                }
+            }
+        }
+
+        /** The distinct value sketch of the i-th column, over every row added. */
+        public HyperLogLog getSketch(int i)
+        {
+            return sketches[i];
+        }
+
+        public TableStatistics finish()
+        {
+            TableStatistics statistics = new TableStatistics(rowCount);
+
+            for (int i = 0; i < sketches.length; i++)
+            {
+                ArrayList<String> sample = samples.get(i);
+                sample.sort(DBHelper::compareValues);
+                int buckets = Math.min(HISTOGRAM_BUCKETS, sample.size());
+                String[] bounds = new String[buckets];
+
+                for (int b = 0; b < buckets; b++)
+                {
+                    bounds[b] = sample.get((int) ((long) sample.size() * (b + 1) / buckets) - 1);
+                }
+
+                // a sketch can overshoot slightly on small columns
+                long distinct = Math.min(sketches[i].estimate(), nonNullCounts[i]);
+                statistics.add(new ColumnStatistics(names.get(i), nullCounts[i], distinct,
+                        mins[i] == null ? "NULL" : mins[i], maxes[i] == null ? "NULL" : maxes[i], bounds));
+            }
+
+            return statistics;
+        }
+    }
+
+    private void add(ColumnStatistics c)
+    {
+        columns.put(c.name.toUpperCase(), c);
+    }
+
+    /**
+     * One "rows\tcount" line, then per column a "name\tnulls\tdistinct\tmin\tmax" line followed
+     * by the histogram bounds.
+     */
+    public List<String> encode()
+    {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add("rows" + TAB + rowCount);
+
+        for (ColumnStatistics c: columns.values())
+        {
+            StringBuilder line = new StringBuilder(String.join(TAB, c.name, Long.toString(c.nullCount),
+                    Long.toString(c.distinct), c.min, c.max));
+
+            for (String bound: c.bounds)
+            {
+                line.append(TAB).append(bound);
+            }
+
+            lines.add(line.toString());
+        }
+
+        return lines;
+    }
+
+    public static TableStatistics decode(List<String> lines)
+    {
+        TableStatistics statistics = new TableStatistics(Long.parseLong(lines.get(0).split(TAB)[1]));
+
+        for (String line: lines.subList(1, lines.size()))
+        {
+            String[] fields = line.split(TAB, -1);
+            statistics.add(new ColumnStatistics(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                    fields[3], fields[4], Arrays.copyOfRange(fields, 5, fields.length)));
+        }
+
+        return statistics;
+    }
+}
@@ -7,7 +7,7 @@ import java.util.Arrays;
 public class Tokeniser {
     private static final String[] SPECIAL_CHARACTERS = {"(",")",",",";", "=", "<", ">"};
     private static final String[] OTHER_CHARACTERS = {" <  = ", " =  = ", " >  = ", "! ="};
-    private static ArrayList<String> tokens;
+    private final ArrayList<String> tokens;
     private String query;
     public Tokeniser(String query)
     {
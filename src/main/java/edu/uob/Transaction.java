@@ -0,0 +1,80 @@
+package edu.uob;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The changes a session has staged since BEGIN. The write lock of every table it changes is
+ * held until COMMIT or ROLLBACK, so its staged versions are the only pending ones there.
+ */
+public class Transaction {
+    private final LinkedHashMap<StampedLock, Long> locks = new LinkedHashMap<>();
+    private final LinkedHashSet<Table> tables = new LinkedHashSet<>();
+
+    /** Takes the lock unless this transaction already holds it; false if it timed out. */
+    public boolean lock(StampedLock lock)
+    {
+        if (locks.containsKey(lock))
+        {
+            return true;
+        }
+
+        long stamp = LockManager.tryLock(lock);
+
+        if (stamp == 0)
+        {
+            return false;
+        }
+
+        locks.put(lock, stamp);
+        return true;
+    }
+
+    public void addTable(Table t)
+    {
+        tables.add(t);
+    }
+
+    public Set<Table> getTables()
+    {
+        return tables;
+    }
+
+    /** Makes every staged change visible at once and writes each touched table a single time. */
+    public boolean commit()
+    {
+        try
+        {
+            return Table.commit(tables);
+        }
+
+        finally
+        {
+            release();
+        }
+    }
+
+    public void rollback()
+    {
+        for (Table t: tables)
+        {
+            t.rollback();
+        }
+
+        release();
+    }
+
+    private void release()
+    {
+        for (Map.Entry<StampedLock, Long> lock: locks.entrySet())
+        {
+            lock.getKey().unlockWrite(lock.getValue());
+        }
+
+        locks.clear();
+        tables.clear();
+    }
+}
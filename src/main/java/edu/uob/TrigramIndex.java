@@ -0,0 +1,118 @@
+package edu.uob;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Maps every three character substring to the rows containing it. A LIKE pattern of three or
+ * more characters can only match rows holding all of its trigrams, so their row sets are ANDed
+ * to get the candidates, which the table then checks with the usual comparison.
+ */
+public class TrigramIndex implements TableIndex {
+    private static final int GRAM_LENGTH = 3;
+
+    private final String column;
+    private final HashMap<String, RowSet> rowsByGram = new HashMap<>();
+
+    public TrigramIndex(String column)
+    {
+        this.column = column;
+    }
+
+    private static LinkedHashSet<String> trigrams(String value)
+    {
+        LinkedHashSet<String> grams = new LinkedHashSet<>();
+
+        for (int i = 0; i + GRAM_LENGTH <= value.length(); i++)
+        {
+            grams.add(value.substring(i, i + GRAM_LENGTH));
+        }
+
+        return grams;
+    }
+
+    @Override
+    public IndexKind getKind()
+    {
+        return IndexKind.TRIGRAM;
+    }
+
+    @Override
+    public String getColumn()
+    {
+        return column;
+    }
+
+    @Override
+    public void add(int id, String value)
+    {
+        for (String gram: trigrams(value))
+        {
+            rowsByGram.computeIfAbsent(gram, g -> new RowSet()).add(id);
+        }
+    }
+
+    @Override
+    public void remove(int id, String value)
+    {
+        for (String gram: trigrams(value))
+        {
+            RowSet rows = rowsByGram.get(gram);
+
+            if (rows != null)
+            {
+                rows.remove(id);
+
+                if (rows.isEmpty())
+                {
+                    rowsByGram.remove(gram);
+                }
+            }
+        }
+    }
+
+    @Override
+    public RowSet rowsMatching(SyntaxType operator, String value)
+    {
+        if (!supports(operator, value))
+        {
+            return null;
+        }
+
+        RowSet candidates = null;
+
+        for (String gram: trigrams(value))
+        {
+            RowSet rows = rowsByGram.get(gram);
+
+            if (rows == null)
+            {
+                return new RowSet();
+            }
+
+            candidates = candidates == null ? rows.or(new RowSet()) : candidates.and(rows);
+        }
+
+        return candidates;
+    }
+
+    // Shorter patterns have no trigram every match must contain
+    @Override
+    public boolean supports(SyntaxType operator, String value)
+    {
+        return operator == SyntaxType.LIKE && value.length() >= GRAM_LENGTH;
+    }
+
+    @Override
+    public Map<String, RowSet> entries()
+    {
+        return rowsByGram;
+    }
+
+    @Override
+    public boolean isExact()
+    {
+        return false;
+    }
+}
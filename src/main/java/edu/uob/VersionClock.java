@@ -0,0 +1,150 @@
+package edu.uob;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The commit clock shared by every table. Statements read at a snapshot of the clock, commits
+ * stamp their pending versions with the next tick, and a background reclaimer drops versions that
+ * no open snapshot can see any more.
+ */
+public class VersionClock {
+    private static final long RECLAIM_INTERVAL_MS = 500;
+
+    private static final Object COMMIT_LOCK = new Object();
+    private static final Object SNAPSHOT_LOCK = new Object();
+    private static volatile long lastCommitted;
+    private static final Set<Snapshot> activeSnapshots = new HashSet<>();
+    private static final Set<Table> reclaimable = new LinkedHashSet<>();
+
+    static
+    {
+        Thread reclaimer = new Thread(VersionClock::run, "version-reclaimer");
+        reclaimer.setDaemon(true);
+        reclaimer.start();
+    }
+
+    private VersionClock()
+    {
+    }
+
+    /** Opens a snapshot at the last commit that sees no uncommitted changes. */
+    public static Snapshot open()
+    {
+        return open(List.of());
+    }
+
+    /**
+     * Opens a snapshot at the last commit that also sees the uncommitted changes in the given
+     * tables, whose write locks the caller holds.
+     */
+    public static Snapshot open(Collection<Table> writing)
+    {
+        synchronized (SNAPSHOT_LOCK)
+        {
+            Snapshot s = new Snapshot(lastCommitted, writing);
+            activeSnapshots.add(s);
+            return s;
+        }
+    }
+
+    static void release(Snapshot s)
+    {
+        synchronized (SNAPSHOT_LOCK)
+        {
+            activeSnapshots.remove(s);
+        }
+    }
+
+    /**
+     * Makes the versions visible in one step. They are stamped before the clock moves, so a
+     * snapshot sees either all of them or none.
+     */
+    public static long commit(Collection<RowVersion> versions)
+    {
+        synchronized (COMMIT_LOCK)
+        {
+            long timestamp = lastCommitted + 1;
+
+            for (RowVersion v: versions)
+            {
+                v.stamp(timestamp);
+            }
+
+            lastCommitted = timestamp;
+            return timestamp;
+        }
+    }
+
+    /** Asks the reclaimer to look at a table that now holds superseded versions. */
+    public static void markReclaimable(Table t)
+    {
+        synchronized (reclaimable)
+        {
+            reclaimable.add(t);
+        }
+    }
+
+    /** Called by the table, under its own lock, once it has no superseded versions left. */
+    public static void forget(Table t)
+    {
+        synchronized (reclaimable)
+        {
+            reclaimable.remove(t);
+        }
+    }
+
+    private static long oldestActive()
+    {
+        synchronized (SNAPSHOT_LOCK)
+        {
+            long oldest = lastCommitted;
+
+            for (Snapshot s: activeSnapshots)
+            {
+                oldest = Math.min(oldest, s.getTimestamp());
+            }
+
+            return oldest;
+        }
+    }
+
+    public static void reclaim()
+    {
+        ArrayList<Table> tables;
+
+        synchronized (reclaimable)
+        {
+            tables = new ArrayList<>(reclaimable);
+        }
+
+        long oldest = oldestActive();
+
+        for (Table t: tables)
+        {
+            t.reclaimVersions(oldest);
+        }
+    }
+
+    private static void run()
+    {
+        while (!Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                Thread.sleep(RECLAIM_INTERVAL_MS);
+            }
+
+            catch (InterruptedException e)
+            {
+                return;
+            }
+
+            reclaim();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package edu.uob;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
@@ -7,7 +9,15 @@ import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class AdvancedIntegrationTests {
     private DBServer server;
@@ -351,4 +361,525 @@ public class AdvancedIntegrationTests {
     }
 
 
+    //Group and async durability should still leave every committed row visible
+    @Test
+    public void testDurabilityModes() throws IOException {
+        String response = sendCommandToServer("SET DURABILITY GROUP;");
+        assertTrue(response.contains(OK_MESSAGE), "Should be able to switch database to group commit");
+
+        sendCommandToServer("INSERT INTO " + tableName + " VALUES ('Grace', 25, 'grace@group.com', TRUE);");
+        Path table = Paths.get("databases", databaseName, tableName.toLowerCase() + ".tab").toAbsolutePath();
+        assertTrue(Files.readString(table).contains("Grace"), "A group commit should be written before the command returns");
+
+        response = sendCommandToServer("SET DURABILITY async;");
+        assertTrue(response.contains(OK_MESSAGE), "Durability mode should be case insensitive");
+
+        sendCommandToServer("INSERT INTO " + tableName + " VALUES ('Alan', 41, 'alan@async.com', FALSE);");
+
+        server = new DBServer();
+        sendCommandToServer("USE " + databaseName + ";");
+        response = sendCommandToServer("SELECT name FROM " + tableName + ";");
+        assertTrue(response.contains("Grace"), "Row committed under GROUP durability should persist");
+        assertTrue(response.contains("Alan"), "Row committed under ASYNC durability should persist");
+    }
+
+    //Unknown durability modes are rejected
+    @Test
+    public void testInvalidDurabilityMode() {
+        String response = sendCommandToServer("SET DURABILITY sometimes;");
+        assertTrue(response.contains(ERROR_MESSAGE), "Unknown durability mode should give an error");
+    }
+
+    //Several tuples can be inserted by one statement and receive consecutive ids
+    @Test
+    public void testMultiRowInsert() {
+        String response = sendCommandToServer("INSERT INTO " + tableName + " VALUES ('Ada', 36, 'ada@math.org', TRUE)," +
+                " ('Alan', 41, 'alan@math.org', TRUE), ('Grace', 85, 'grace@navy.mil', TRUE);");
+        assertTrue(response.contains(OK_MESSAGE), "Should be able to insert several tuples at once");
+
+        response = sendCommandToServer("SELECT id, name FROM " + tableName + " WHERE id >= 7;");
+        assertTrue(response.contains("7\tAda"), "First tuple should take the next id");
+        assertTrue(response.contains("8\tAlan"), "Second tuple should take the following id");
+        assertTrue(response.contains("9\tGrace"), "Third tuple should take the following id");
+    }
+
+    //A tuple with the wrong number of values rejects the whole statement
+    @Test
+    public void testMultiRowInsertAllOrNothing() {
+        String response = sendCommandToServer("INSERT INTO " + tableName + " VALUES ('Ada', 36, 'ada@math.org', TRUE)," +
+                " ('Alan', 41);");
+        assertTrue(response.contains(ERROR_MESSAGE), "Tuple with missing values should give an error");
+
+        response = sendCommandToServer("SELECT * FROM " + tableName + ";");
+        assertFalse(response.contains("Ada"), "No tuple should be inserted when one of them is invalid");
+    }
+
+    //Repeated values within one tuple are kept
+    @Test
+    public void testInsertRepeatedValues() {
+        String response = sendCommandToServer("INSERT INTO " + tableName + " VALUES ('Same', 20, 'Same', FALSE);");
+        assertTrue(response.contains(OK_MESSAGE), "Tuple may repeat a value");
+    }
+
+    //Loading a CSV file skips its header, rejects invalid lines and appends the rest
+    @Test
+    public void testLoadCsv() throws IOException {
+        Path file = Files.createTempFile("marks", ".csv");
+        Files.writeString(file, "Name,Age,Email,Passed\n'Ada',36,ada@math.org,TRUE\n" +
+                "Alan,41\n'Lovelace, Ada',37,ada@poetry.org,NULL\nGrace,85,grace@navy.mil,FALSE\n");
+
+        String response = sendCommandToServer("LOAD DATA '" + file + "' INTO " + tableName + ";");
+        Files.delete(file);
+        assertTrue(response.contains(OK_MESSAGE), "Should be able to load a CSV file");
+        assertTrue(response.contains("Loaded 3 rows, rejected 1, read 5 lines"), "Report should count loaded, rejected and read lines");
+        assertTrue(response.contains("line 3"), "Report should point at the rejected line");
+
+        response = sendCommandToServer("SELECT id, name FROM " + tableName + " WHERE id > 6;");
+        assertTrue(response.contains("7\tAda"), "Loaded rows should take the next ids");
+        assertTrue(response.contains("8\tLovelace, Ada"), "Quoted values may contain the delimiter");
+        assertTrue(response.contains("9\tGrace"), "Rows should be appended in file order");
+    }
+
+    //A file of several chunks is staged chunk by chunk, in file order
+    @Test
+    public void testLoadSeveralChunks() throws IOException {
+        Path file = Files.createTempFile("marks", ".tsv");
+        StringBuilder lines = new StringBuilder();
+
+        for (int i = 0; i < 12000; i++)
+        {
+            lines.append("p").append(i).append(i == 11000 ? "\t1\n" : "\t1\tp@x.org\tTRUE\n");
+        }
+
+        Files.writeString(file, lines.toString());
+        String response = sendCommandToServer("LOAD DATA '" + file + "' INTO " + tableName + ";");
+        Files.delete(file);
+        assertTrue(response.contains("Loaded 11999 rows, rejected 1, read 12000 lines"), "Every chunk should be counted");
+        assertTrue(response.contains("line 11001"), "Line numbers should carry across chunks");
+
+        response = sendCommandToServer("SELECT id, name FROM " + tableName + " WHERE id == 12005;");
+        assertTrue(response.contains("12005\tp11999"), "Rows should be appended in file order");
+    }
+
+    //Loading a TSV file without a header
+    @Test
+    public void testLoadTsv() throws IOException {
+        Path file = Files.createTempFile("marks", ".tsv");
+        Files.writeString(file, "Ada\t36\tada@math.org\tTRUE\nAlan\t41\talan@math.org\tFALSE\n");
+
+        String response = sendCommandToServer("LOAD DATA '" + file + "' INTO " + tableName + ";");
+        Files.delete(file);
+        assertTrue(response.contains("Loaded 2 rows, rejected 0"), "Both lines should be loaded");
+
+        response = sendCommandToServer("SELECT * FROM " + tableName + " WHERE name == 'Alan';");
+        assertTrue(response.contains("alan@math.org"), "Loaded row should be selectable");
+    }
+
+    //Loading from a missing file or into a missing table gives an error
+    @Test
+    public void testLoadErrors() {
+        String response = sendCommandToServer("LOAD DATA '/no/such/file.csv' INTO " + tableName + ";");
+        assertTrue(response.contains(ERROR_MESSAGE), "Missing file should give an error");
+
+        response = sendCommandToServer("LOAD DATA '/no/such/file.csv' INTO nosuchtable;");
+        assertTrue(response.contains(ERROR_MESSAGE), "Missing table should give an error");
+    }
+
+    //Conditions on an indexed column give the same rows as a scan and follow later changes
+    @Test
+    public void testBitmapIndex() throws IOException {
+        String response = sendCommandToServer("CREATE BITMAP INDEX ON " + tableName + " (Passed);");
+        assertTrue(response.contains(OK_MESSAGE), "Should be able to index a column");
+        assertTrue(Files.readString(Path.of("databases", databaseName, tableName + ".indexes")).contains("BITMAP"),
+                "Index definition should be stored with the table");
+
+        response = sendCommandToServer("SELECT Name FROM " + tableName + " WHERE (Passed == TRUE) AND (Age > 65);");
+        assertTrue(response.contains("David") && !response.contains("Abraham"), "AND over an indexed column should be exact");
+
+        response = sendCommandToServer("SELECT Name FROM " + tableName + " WHERE (Passed == TRUE) OR (Name == 'Bob');");
+        assertTrue(response.contains("David") && response.contains("Abraham") && response.contains("Bob"));
+        assertFalse(response.contains("Harry"));
+
+        sendCommandToServer("UPDATE " + tableName + " SET Passed = TRUE WHERE Name == 'Harry';");
+        sendCommandToServer("DELETE FROM " + tableName + " WHERE Name == 'David';");
+        sendCommandToServer("ALTER TABLE " + tableName + " ADD Grade;");
+
+        response = sendCommandToServer("SELECT Name FROM " + tableName + " WHERE Passed != FALSE;");
+        assertTrue(response.contains("Harry") && response.contains("Abraham"), "Index should follow updates");
+        assertFalse(response.contains("David"), "Index should follow deletes");
+    }
+
+    //A trigram index narrows LIKE to rows holding every trigram of the pattern, then checks them
+    @Test
+    public void testTrigramIndex() {
+        sendCommandToServer("INSERT INTO " + tableName + " VALUES ('Mabcxbcd', 30, 'abcxbcd@mail.com', FALSE);");
+        String response = sendCommandToServer("CREATE TRIGRAM INDEX ON " + tableName + " (Name);");
+        assertTrue(response.contains(OK_MESSAGE), "Should be able to index a column");
+
+        response = sendCommandToServer("SELECT Name FROM " + tableName + " WHERE Name LIKE 'bcd';");
+        assertTrue(response.contains("Mabcxbcd"));
+        response = sendCommandToServer("SELECT Name FROM " + tableName + " WHERE Name LIKE 'abcd';");
+        assertFalse(response.contains("Mabcxbcd"), "Rows holding every trigram but not the pattern should be dropped");
+        response = sendCommandToServer("SELECT Name FROM " + tableName + " WHERE Name LIKE 'av';");
+        assertTrue(response.contains("David") && !response.contains("Bob"), "Short patterns should still match");
+
+        sendCommandToServer("UPDATE " + tableName + " SET Name = 'Davina' WHERE Name == 'David';");
+        sendCommandToServer("DELETE FROM " + tableName + " WHERE Name == 'Mabcxbcd';");
+
+        response = sendCommandToServer("SELECT Name FROM " + tableName + " WHERE Name LIKE 'Dav';");
+        assertTrue(response.contains("Davina") && !response.contains("David"), "Index should follow updates");
+        response = sendCommandToServer("SELECT Name FROM " + tableName + " WHERE Name LIKE 'bcd';");
+        assertFalse(response.contains("Mabcxbcd"), "Index should follow deletes");
+    }
+
+    //ORDER BY compares numbers by value, applies the direction and keeps ties in id order
+    @Test
+    public void testOrderBy() {
+        sendCommandToServer("INSERT INTO " + tableName + " VALUES ('Bob', 9, 'bob@two.com', TRUE);");
+        String response = sendCommandToServer("SELECT Name, Age FROM " + tableName + " ORDER BY Age;");
+        assertTrue(response.contains("Bob\t9\nBob\t20\nHarry\t30\nJohn\t32\nRichard\t44\nAbraham\t61\nDavid\t70"),
+                "Ages should be sorted as numbers");
+
+        response = sendCommandToServer("SELECT id, Name FROM " + tableName + " WHERE Passed == FALSE ORDER BY " + tableName + ".Name DESC;");
+        assertTrue(response.contains("4\tRichard\n5\tJohn\n3\tHarry\n1\tBob"), "Filtered rows should be sorted descending");
+        assertFalse(response.contains("David"));
+
+        response = sendCommandToServer("SELECT Name FROM " + tableName + " ORDER BY Name ASC;");
+        assertTrue(response.contains("Abraham\nBob\nBob\nDavid"), "Equal values should keep id order");
+
+        response = sendCommandToServer("SELECT Name FROM " + tableName + " ORDER BY id DESC;");
+        assertTrue(response.contains("Name\nBob\nAbraham\nJohn"));
+
+        assertTrue(sendCommandToServer("SELECT Name FROM " + tableName + " ORDER BY Grade;").contains(ERROR_MESSAGE));
+        assertTrue(sendCommandToServer("SELECT Name FROM " + tableName + " ORDER BY other.Age;").contains(ERROR_MESSAGE));
+    }
+
+    //LIMIT and OFFSET page through the rows in id order, or in ORDER BY order when given
+    @Test
+    public void testLimitOffset() {
+        String response = sendCommandToServer("SELECT Name FROM " + tableName + " LIMIT 2;");
+        assertTrue(response.contains("Name\nBob\nDavid") && !response.contains("Harry"));
+
+        response = sendCommandToServer("SELECT Name FROM " + tableName + " WHERE (Passed == FALSE) AND (Age > 25) LIMIT 2 OFFSET 1;");
+        assertTrue(response.contains("Name\nRichard\nJohn"), "Offset should skip matching rows only");
+        assertFalse(response.contains("Harry") || response.contains("Bob"));
+
+        response = sendCommandToServer("SELECT Name FROM " + tableName + " ORDER BY Age DESC LIMIT 2 OFFSET 1;");
+        assertTrue(response.contains("Name\nAbraham\nRichard") && !response.contains("David"), "Page should follow the sort order");
+
+        response = sendCommandToServer("SELECT Name FROM " + tableName + " WHERE Age > 100 OR Name == 'John' LIMIT 0;");
+        assertTrue(response.contains(OK_MESSAGE) && !response.contains("John"));
+
+        response = sendCommandToServer("SELECT Name FROM " + tableName + " LIMIT 5 OFFSET 10;");
+        assertTrue(response.contains(OK_MESSAGE) && !response.contains("Bob"));
+
+        assertTrue(sendCommandToServer("SELECT Name FROM " + tableName + " WHERE Grade == 1 LIMIT 5;").contains(ERROR_MESSAGE));
+    }
+
+    //Aggregates are computed over the matching rows with DBHelper's number rules
+    @Test
+    public void testAggregates() {
+        String response = sendCommandToServer("SELECT COUNT(*), SUM(Age), AVG(Age), MIN(Name), MAX(Age) FROM " + tableName + ";");
+        assertTrue(response.contains("COUNT(*)\tSUM(Age)\tAVG(Age)\tMIN(Name)\tMAX(Age)\n6\t257\t42.833"),
+                "Aggregates should cover every row");
+        assertTrue(response.contains("\tAbraham\t70"));
+
+        response = sendCommandToServer("SELECT count(*), sum(Age) FROM " + tableName + " WHERE Passed == TRUE;");
+        assertTrue(response.contains("2\t131"), "Aggregates should only see matching rows");
+
+        sendCommandToServer("INSERT INTO " + tableName + " VALUES ('Zoe', 2.5, NULL, NULL);");
+        response = sendCommandToServer("SELECT COUNT(*), COUNT(Email), SUM(Age), MIN(Age) FROM " + tableName + ";");
+        assertTrue(response.contains("7\t6\t259.5\t2.5"), "Floats should make the sum a float and NULLs should be skipped");
+
+        sendCommandToServer("DELETE FROM " + tableName + " WHERE Age < 31;");
+        response = sendCommandToServer("SELECT COUNT(*) FROM " + tableName + ";");
+        assertTrue(response.contains("COUNT(*)\n4"), "Row count should follow deletes");
+
+        response = sendCommandToServer("SELECT SUM(Email), MAX(Email) FROM " + tableName + " WHERE Age > 1000;");
+        assertTrue(response.contains("NULL\tNULL"), "Empty input should give NULL");
+
+        assertTrue(sendCommandToServer("SELECT SUM(Grade) FROM " + tableName + ";").contains(ERROR_MESSAGE));
+        assertTrue(sendCommandToServer("SELECT COUNT(*) FROM " + tableName + " LIMIT 1;").contains(ERROR_MESSAGE));
+    }
+
+    //GROUP BY aggregates each group, matching values the way == does
+    @Test
+    public void testGroupBy() throws Exception {
+        sendCommandToServer("INSERT INTO " + tableName + " VALUES ('Eve', 20.0, 'eve@eve.com', true);");
+        String response = sendCommandToServer("SELECT Passed, COUNT(*), MAX(Age) FROM " + tableName + " GROUP BY Passed;");
+        assertTrue(response.contains("Passed\tCOUNT(*)\tMAX(Age)\nFALSE\t4\t44\nTRUE\t3\t70"),
+                "Booleans should group ignoring case, in order of first appearance");
+
+        response = sendCommandToServer("SELECT Age, Passed, COUNT(Name) FROM " + tableName + " WHERE Age < 40 GROUP BY Age, Passed;");
+        assertTrue(response.contains("20\tFALSE\t1\n30\tFALSE\t1\n32\tFALSE\t1\n20.0\ttrue\t1"));
+
+        response = sendCommandToServer("SELECT Age, COUNT(*) FROM " + tableName + " GROUP BY Age;");
+        assertTrue(response.contains("20\t2"), "20 and 20.0 are equal and should share a group");
+
+        response = sendCommandToServer("SELECT Passed FROM " + tableName + " GROUP BY Passed;");
+        assertTrue(response.contains("Passed\nFALSE\nTRUE"));
+
+        assertTrue(sendCommandToServer("SELECT Name, COUNT(*) FROM " + tableName + " GROUP BY Passed;").contains(ERROR_MESSAGE));
+        assertTrue(sendCommandToServer("SELECT * FROM " + tableName + " GROUP BY Passed;").contains(ERROR_MESSAGE));
+        assertTrue(sendCommandToServer("SELECT COUNT(*) FROM " + tableName + " GROUP BY Grade;").contains(ERROR_MESSAGE));
+
+        // Partial aggregates over small id ranges merge into the same groups
+        Database db = Database.open(Paths.get("databases").toAbsolutePath().toString(), databaseName);
+        Table t = Table.loadTable(tableName, db, null);
+        ArrayList<Aggregate> aggregates = new ArrayList<>(List.of(new Aggregate(Aggregate.Function.SUM, "Age"),
+                new Aggregate(Aggregate.Function.MIN, "Name")));
+
+        try (Snapshot s = VersionClock.open())
+        {
+            List<String[]> parallel = t.groupAggregate(new ArrayList<>(List.of("Passed")), aggregates, null, s, 1).results();
+            List<String[]> serial = t.groupAggregate(new ArrayList<>(List.of("Passed")), aggregates, null, s).results();
+            assertEquals(2, parallel.size());
+
+            for (int i = 0; i < serial.size(); i++)
+            {
+                assertArrayEquals(serial.get(i), parallel.get(i), "Parallel and serial grouping should agree");
+            }
+
+            assertArrayEquals(new String[] {"TRUE", "151.0", "Abraham"}, parallel.get(1));
+        }
+    }
+
+    //APPROX_COUNT_DISTINCT is answered from the column sketches, or by a scan when filtered
+    @Test
+    public void testApproxCountDistinct() {
+        sendCommandToServer("INSERT INTO " + tableName + " VALUES ('Eve', 20.0, NULL, true);");
+        String response = sendCommandToServer("SELECT APPROX_COUNT_DISTINCT(Passed), approx_count_distinct(Age), APPROX_COUNT_DISTINCT(Email), COUNT(*) FROM " + tableName + ";");
+        assertTrue(response.contains("APPROX_COUNT_DISTINCT(Passed)\tAPPROX_COUNT_DISTINCT(Age)\tAPPROX_COUNT_DISTINCT(Email)\tCOUNT(*)\n2\t6\t6\t7"),
+                "Equal values and NULL should not add to the estimate");
+
+        response = sendCommandToServer("SELECT APPROX_COUNT_DISTINCT(Age) FROM " + tableName + " WHERE Passed == FALSE;");
+        assertTrue(response.contains("APPROX_COUNT_DISTINCT(Age)\n4"));
+
+        response = sendCommandToServer("SELECT Passed, APPROX_COUNT_DISTINCT(Name) FROM " + tableName + " GROUP BY Passed;");
+        assertTrue(response.contains("FALSE\t4\nTRUE\t3"));
+
+        sendCommandToServer("ALTER TABLE " + tableName + " ADD Grade;");
+        sendCommandToServer("UPDATE " + tableName + " SET Grade = 'A' WHERE Age > 40;");
+        response = sendCommandToServer("SELECT APPROX_COUNT_DISTINCT(Grade), APPROX_COUNT_DISTINCT(Name) FROM " + tableName + ";");
+        assertTrue(response.contains("\n1\t7"), "Sketches should follow new columns");
+
+        assertTrue(sendCommandToServer("SELECT APPROX_COUNT_DISTINCT(*) FROM " + tableName + ";").contains(ERROR_MESSAGE));
+    }
+
+    //ANALYZE reports and saves the statistics of the rows as they are at the time
+    @Test
+    public void testAnalyze() {
+        sendCommandToServer("INSERT INTO " + tableName + " VALUES ('Eve', 20.0, NULL, true);");
+        String response = sendCommandToServer("ANALYZE " + tableName + ";");
+        assertTrue(response.contains("Column\tRows\tNulls\tDistinct\tMin\tMax"));
+        assertTrue(response.contains("Name\t7\t0\t7\tAbraham\tRichard"));
+        assertTrue(response.contains("Age\t7\t0\t6\t20\t70"), "20 and 20.0 should count as one value");
+        assertTrue(response.contains("Email\t7\t1\t6\tabraham@live.co.uk\trichard@hotmail.com"));
+
+        Database db = Database.open(Paths.get("databases").toAbsolutePath().toString(), databaseName);
+        TableStatistics statistics = Table.loadTable(tableName, db, null).getStatistics();
+        assertEquals(7, statistics.getRowCount());
+        assertEquals(0.5, statistics.selectivity("Passed", SyntaxType.EQUAL_TO, "TRUE"), 0.001, "Values should be taken as evenly spread");
+
+        // statistics and sketches stay as they were until the next ANALYZE rebuilds them
+        sendCommandToServer("DELETE FROM " + tableName + " WHERE Age > 40;");
+        assertEquals(7, Table.loadTable(tableName, db, null).getStatistics().getRowCount());
+        assertTrue(sendCommandToServer("SELECT APPROX_COUNT_DISTINCT(Age) FROM " + tableName + ";").contains("\n6"));
+        assertTrue(sendCommandToServer("ANALYZE " + tableName + ";").contains("Name\t4\t0\t4"));
+        assertTrue(sendCommandToServer("SELECT APPROX_COUNT_DISTINCT(Age) FROM " + tableName + ";").contains("\n3"));
+
+        assertTrue(sendCommandToServer("ANALYZE missing;").contains(ERROR_MESSAGE));
+        assertTrue(sendCommandToServer("ANALYZE;").contains(ERROR_MESSAGE));
+    }
+
+    //Conditions are reordered by cost without changing which rows match
+    @Test
+    public void testConditionOrdering() {
+        String query = "SELECT Name FROM " + tableName + " WHERE (Age > 10) AND ((Passed == TRUE) AND (Name LIKE 'a'));";
+        String before = sendCommandToServer(query);
+        assertTrue(before.contains("Name\nDavid\nAbraham") && !before.contains("Bob"));
+
+        sendCommandToServer("ANALYZE " + tableName + ";");
+        assertEquals(before, sendCommandToServer(query), "Statistics should only change the order of evaluation");
+        sendCommandToServer("CREATE BITMAP INDEX ON " + tableName + " (Passed);");
+        assertEquals(before, sendCommandToServer(query), "An indexed condition should narrow the rows the rest check");
+
+        String response = sendCommandToServer("SELECT Name FROM " + tableName + " WHERE Age > 10 AND Passed == FALSE OR Name == 'David';");
+        assertTrue(response.contains("Bob\nDavid\nHarry\nRichard\nJohn") && !response.contains("Abraham"),
+                "Right nested conditions should keep their grouping");
+
+        response = sendCommandToServer("DELETE FROM " + tableName + " WHERE (Passed == TRUE) AND (Age > 65);");
+        assertTrue(response.contains(OK_MESSAGE));
+        assertFalse(sendCommandToServer("SELECT Name FROM " + tableName + ";").contains("David"));
+
+        // an empty AND group is not a reason to skip checking the other attributes
+        response = sendCommandToServer("SELECT Name FROM " + tableName + " WHERE (Age > 1000) AND (Grade == 1);");
+        assertTrue(response.contains(ERROR_MESSAGE));
+    }
+
+    //DISTINCT keeps the first of equal projected rows, before ORDER BY and LIMIT see them
+    @Test
+    public void testDistinct() {
+        sendCommandToServer("INSERT INTO " + tableName + " VALUES ('Eve', 20.0, 'eve@eve.com', true);");
+        String response = sendCommandToServer("SELECT DISTINCT Passed FROM " + tableName + ";");
+        assertTrue(response.contains("Passed\nFALSE\nTRUE") && !response.contains("true"),
+                "Booleans should be compared ignoring case");
+
+        response = sendCommandToServer("SELECT DISTINCT Age, Passed FROM " + tableName + " WHERE Age < 40;");
+        assertTrue(response.contains("Age\tPassed\n20\tFALSE\n30\tFALSE\n32\tFALSE\n20.0\ttrue"));
+
+        response = sendCommandToServer("SELECT DISTINCT Passed FROM " + tableName + " ORDER BY Passed DESC LIMIT 1 OFFSET 1;");
+        assertTrue(response.contains("Passed\nFALSE") && !response.contains("TRUE"), "Duplicates should not fill the page");
+
+        response = sendCommandToServer("SELECT DISTINCT Passed FROM " + tableName + " LIMIT 5;");
+        assertTrue(response.contains("Passed\nFALSE\nTRUE") && !response.contains("true"));
+
+        response = sendCommandToServer("SELECT DISTINCT Age FROM " + tableName + " ORDER BY Age;");
+        assertTrue(response.contains("Age\n20\n30\n32\n44\n61\n70"), "20.0 should be dropped as a duplicate of 20");
+
+        assertTrue(sendCommandToServer("SELECT DISTINCT Name FROM " + tableName + " ORDER BY Age;").contains(ERROR_MESSAGE));
+        assertTrue(sendCommandToServer("SELECT DISTINCT COUNT(*) FROM " + tableName + ";").contains(ERROR_MESSAGE));
+    }
+
+    //Only existing, unindexed, non-id attributes can be indexed
+    @Test
+    public void testBitmapIndexErrors() {
+        assertTrue(sendCommandToServer("CREATE BITMAP INDEX ON " + tableName + " (id);").contains(ERROR_MESSAGE));
+        assertTrue(sendCommandToServer("CREATE BITMAP INDEX ON " + tableName + " (Grade);").contains(ERROR_MESSAGE));
+        assertTrue(sendCommandToServer("CREATE BITMAP INDEX ON missing (Passed);").contains(ERROR_MESSAGE));
+        assertTrue(sendCommandToServer("CREATE BITMAP INDEX ON " + tableName + " (Passed);").contains(OK_MESSAGE));
+        assertTrue(sendCommandToServer("CREATE BITMAP INDEX ON " + tableName + " (Passed);").contains(ERROR_MESSAGE));
+    }
+
+    //Repeated queries are answered from the cache until a table they read changes
+    @Test
+    public void testResultCache() {
+        String query = "SELECT Name FROM " + tableName + " WHERE Age > 40;";
+        String first = sendCommandToServer(query);
+        assertEquals(first, sendCommandToServer("SELECT  Name FROM " + tableName + "  WHERE Age > 40 ;"));
+
+        sendCommandToServer("INSERT INTO " + tableName + " VALUES ('Eve', 50, 'eve@eve.com', TRUE);");
+        assertTrue(sendCommandToServer(query).contains("Eve"), "An insert should invalidate cached results");
+        sendCommandToServer("UPDATE " + tableName + " SET Age = 10 WHERE Name == 'Eve';");
+        assertFalse(sendCommandToServer(query).contains("Eve"), "An update should invalidate cached results");
+
+        sendCommandToServer("CREATE TABLE grades (Name, Grade);");
+        sendCommandToServer("INSERT INTO grades VALUES ('Bob', 'A');");
+        String join = "JOIN " + tableName + " AND grades ON Name AND Name;";
+        assertFalse(sendCommandToServer(join).contains("harry@google.com"));
+        sendCommandToServer("INSERT INTO grades VALUES ('Harry', 'B');");
+        assertTrue(sendCommandToServer(join).contains("harry@google.com"), "A change to either joined table should invalidate");
+
+        sendCommandToServer("BEGIN;");
+        sendCommandToServer("DELETE FROM " + tableName + " WHERE Age > 40;");
+        assertFalse(sendCommandToServer(query).contains("David"), "A transaction should see its own changes");
+        sendCommandToServer("ROLLBACK;");
+        assertEquals(first, sendCommandToServer(query));
+
+        sendCommandToServer("DROP TABLE " + tableName + ";");
+        assertTrue(sendCommandToServer(query).contains(ERROR_MESSAGE), "A dropped table should not be answered from the cache");
+    }
+
+    //A materialized SELECT keeps the ids of its table's rows and follows inserts, updates and deletes
+    @Test
+    public void testMaterializedSelect() {
+        assertTrue(sendCommandToServer("CREATE MATERIALIZED VIEW older AS SELECT Name, Age FROM " + tableName + " WHERE Age > 40;").contains(OK_MESSAGE));
+        String response = sendCommandToServer("SELECT * FROM older;");
+        assertTrue(response.contains("id\tName\tAge\n2\tDavid\t70\n4\tRichard\t44\n6\tAbraham\t61"), response);
+
+        sendCommandToServer("INSERT INTO " + tableName + " VALUES ('Eve', 50, 'eve@eve.com', TRUE);");
+        sendCommandToServer("UPDATE " + tableName + " SET Age = 35 WHERE Name == 'David';");
+        sendCommandToServer("UPDATE " + tableName + " SET Age = 45 WHERE Name == 'Bob';");
+        sendCommandToServer("DELETE FROM " + tableName + " WHERE Name == 'Richard';");
+        assertEquals(sendCommandToServer("SELECT id, Name, Age FROM " + tableName + " WHERE Age > 40;"), sendCommandToServer("SELECT * FROM older;"));
+
+        assertTrue(sendCommandToServer("INSERT INTO older VALUES ('Zed', 90);").contains(ERROR_MESSAGE), "Views only change with their tables");
+        assertTrue(sendCommandToServer("ALTER TABLE " + tableName + " ADD Grade;").contains(ERROR_MESSAGE), "The columns a view reads should stay put");
+        assertTrue(sendCommandToServer("DROP TABLE " + tableName + ";").contains(ERROR_MESSAGE));
+        assertTrue(sendCommandToServer("CREATE MATERIALIZED VIEW counts AS SELECT COUNT(*) FROM " + tableName + ";").contains(ERROR_MESSAGE));
+        assertTrue(sendCommandToServer("CREATE MATERIALIZED VIEW older AS SELECT * FROM " + tableName + ";").contains(ERROR_MESSAGE));
+
+        assertTrue(sendCommandToServer("DROP TABLE older;").contains(OK_MESSAGE));
+        assertTrue(sendCommandToServer("ALTER TABLE " + tableName + " ADD Grade;").contains(OK_MESSAGE));
+    }
+
+    //A materialized JOIN holds the rows the JOIN prints and follows changes to either table
+    @Test
+    public void testMaterializedJoin() {
+        sendCommandToServer("CREATE TABLE grades (Student, Grade, Age);");
+        sendCommandToServer("INSERT INTO grades VALUES ('Bob', 'A', 1);");
+        sendCommandToServer("INSERT INTO grades VALUES ('Harry', 'B', 2);");
+        sendCommandToServer("INSERT INTO grades VALUES ('Bob', 'C', 3);");
+        String join = "JOIN " + tableName + " AND grades ON Name AND Student;";
+        assertTrue(sendCommandToServer("CREATE MATERIALIZED VIEW report AS " + join).contains(OK_MESSAGE));
+
+        String response = sendCommandToServer("SELECT * FROM report;");
+        assertTrue(response.contains("id\tmarksAge\tEmail\tPassed\tGrade\tgradesAge"), "Names both tables use should be prefixed");
+        assertEquals(List.of("20\tbob@bob.co.uk\tFALSE\tA\t1", "20\tbob@bob.co.uk\tFALSE\tC\t3",
+                "30\tharry@google.com\tFALSE\tB\t2"), rows(response));
+
+        sendCommandToServer("INSERT INTO grades VALUES ('John', 'A', 4);");
+        sendCommandToServer("UPDATE grades SET Student = 'David' WHERE Student == 'Harry';");
+        sendCommandToServer("UPDATE " + tableName + " SET Age = 21 WHERE Name == 'Bob';");
+        sendCommandToServer("DELETE FROM " + tableName + " WHERE Name == 'John';");
+        sendCommandToServer("BEGIN;");
+        sendCommandToServer("INSERT INTO " + tableName + " VALUES ('Zoe', 19, 'zoe@zoe.com', TRUE);");
+        sendCommandToServer("INSERT INTO grades VALUES ('Zoe', 'B', 5);");
+        sendCommandToServer("COMMIT;");
+        assertEquals(List.of("19\tzoe@zoe.com\tTRUE\tB\t5", "21\tbob@bob.co.uk\tFALSE\tA\t1",
+                "21\tbob@bob.co.uk\tFALSE\tC\t3", "70\tdavid@david.co.uk\tTRUE\tB\t2"),
+                rows(sendCommandToServer("SELECT * FROM report;")));
+        assertTrue(sendCommandToServer("SELECT Grade FROM report WHERE Email == 'zoe@zoe.com';").contains("B"));
+
+        assertTrue(sendCommandToServer("DELETE FROM report WHERE Grade == 'A';").contains(ERROR_MESSAGE));
+    }
+
+    //A filtered view finds the partners of changed rows by join value as rows move in and out of it
+    @Test
+    public void testMaterializedJoinFiltered() {
+        sendCommandToServer("CREATE TABLE grades (Student, Grade);");
+        sendCommandToServer("INSERT INTO grades VALUES ('Bob', 'A');");
+        String join = "JOIN Name, Grade FROM " + tableName + " AND grades ON Name AND Student WHERE Grade == 'A';";
+        assertTrue(sendCommandToServer("CREATE MATERIALIZED VIEW honours AS " + join).contains(OK_MESSAGE));
+
+        sendCommandToServer("INSERT INTO grades VALUES ('Harry', 'B');");
+        sendCommandToServer("INSERT INTO grades VALUES ('John', 'A');");
+        sendCommandToServer("UPDATE grades SET Grade = 'A' WHERE Student == 'Harry';");
+        sendCommandToServer("UPDATE grades SET Student = 'David' WHERE Student == 'Bob';");
+        sendCommandToServer("UPDATE " + tableName + " SET Name = 'Johnny' WHERE Name == 'John';");
+        assertEquals(List.of("David\tA", "Harry\tA"), rows(sendCommandToServer("SELECT * FROM honours;")));
+
+        sendCommandToServer("UPDATE " + tableName + " SET Name = 'John' WHERE Name == 'Johnny';");
+        assertEquals(List.of("David\tA", "Harry\tA", "John\tA"), rows(sendCommandToServer("SELECT * FROM honours;")));
+    }
+
+    //Words only used by the newer clauses still work as table and attribute names
+    @Test
+    public void testClauseWordsAsNames() {
+        assertTrue(sendCommandToServer("CREATE TABLE order (index, desc, limit, distinct);").contains(OK_MESSAGE));
+        sendCommandToServer("INSERT INTO order VALUES (2, 'b', 5, TRUE);");
+        sendCommandToServer("INSERT INTO order VALUES (1, 'a', 5, FALSE);");
+        sendCommandToServer("INSERT INTO order VALUES (3, 'a', 7, TRUE);");
+
+        String response = sendCommandToServer("SELECT index, desc FROM order WHERE limit == 5 ORDER BY index DESC;");
+        assertTrue(response.contains("index\tdesc\n2\tb\n1\ta"), "Clause words should be read as names where a name is expected");
+        response = sendCommandToServer("SELECT distinct FROM order ORDER BY desc LIMIT 1;");
+        assertTrue(response.contains("distinct\nFALSE") && !response.contains("TRUE"), "A lone distinct should be an attribute");
+        response = sendCommandToServer("SELECT DISTINCT limit FROM order ORDER BY limit;");
+        assertTrue(response.contains("limit\n5\n7"), "DISTINCT should still start a distinct selection");
+        assertTrue(sendCommandToServer("SELECT * FROM order LIMIT;").contains(ERROR_MESSAGE));
+    }
+
+    // Data rows without their ids, sorted, as the order of a view's rows follows its changes
+    private List<String> rows(String response) {
+        ArrayList<String> rows = new ArrayList<>();
+        String[] lines = response.trim().split("\n");
+
+        for (String line: Arrays.asList(lines).subList(2, lines.length)) {
+            rows.add(line.trim().substring(line.trim().indexOf('\t') + 1));
+        }
+
+        rows.sort(null);
+        return rows;
+    }
 }
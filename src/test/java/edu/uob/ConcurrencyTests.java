@@ -0,0 +1,258 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ConcurrencyTests {
+    private static final int SESSIONS = 4;
+    private static final int INSERTS_PER_SESSION = 25;
+    private DBServer server;
+    private String databaseName;
+
+    @BeforeEach
+    public void setup() {
+        server = new DBServer();
+        databaseName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + databaseName + ";");
+        sendCommandToServer("USE " + databaseName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+    }
+
+    @AfterEach
+    public void destroy()
+    {
+        sendCommandToServer("DROP DATABASE " + databaseName + ";");
+    }
+
+    // Random name generator - useful for testing "bare earth" queries (i.e. where tables don't previously exist)
+    private String generateRandomName()
+    {
+        String randomName = "";
+        for(int i=0; i<10 ;i++) randomName += (char)( 97 + (Math.random() * 25.0));
+        return randomName;
+    }
+
+    private String sendCommandToServer(String command) {
+        // Try to send a command to the server - this call will timeout if it takes too long (in case the server enters an infinite loop)
+        return assertTimeoutPreemptively(Duration.ofMillis(1000), () -> { return server.handleCommand(command);},
+                "Server took too long to respond (probably stuck in an infinite loop)");
+    }
+
+    private void runSessions(String durability) throws Exception {
+        sendCommandToServer("SET DURABILITY " + durability + ";");
+        ExecutorService pool = Executors.newFixedThreadPool(SESSIONS * 2);
+        ArrayList<Future<Boolean>> results = new ArrayList<>();
+
+        for (int s = 0; s < SESSIONS; s++) {
+            int sessionNumber = s;
+            results.add(pool.submit(() -> {
+                Session session = new Session();
+                server.handleCommand("USE " + databaseName + ";", session);
+                boolean ok = true;
+                for (int i = 0; i < INSERTS_PER_SESSION; i++) {
+                    ok &= server.handleCommand("INSERT INTO marks VALUES ('s" + sessionNumber + "r" + i + "', " + i + ", TRUE);", session).contains("[OK]");
+                }
+                return ok;
+            }));
+            results.add(pool.submit(() -> {
+                Session session = new Session();
+                server.handleCommand("USE " + databaseName + ";", session);
+                boolean ok = true;
+                for (int i = 0; i < INSERTS_PER_SESSION; i++) {
+                    ok &= server.handleCommand("SELECT * FROM marks WHERE pass == TRUE;", session).contains("[OK]");
+                }
+                return ok;
+            }));
+        }
+
+        for (Future<Boolean> result: results) {
+            assertTrue(result.get(), "Every concurrent command should succeed");
+        }
+        pool.shutdown();
+    }
+
+    private void checkAllRowsPresent() {
+        String response = sendCommandToServer("SELECT id, name FROM marks;");
+        String[] lines = response.split(System.lineSeparator());
+        HashSet<String> ids = new HashSet<>();
+        HashSet<String> names = new HashSet<>();
+
+        for (int i = 2; i < lines.length; i++) {
+            String[] fields = lines[i].split("\t");
+            ids.add(fields[0]);
+            names.add(fields[1]);
+        }
+
+        assertEquals(SESSIONS * INSERTS_PER_SESSION, names.size(), "Every inserted row should be present");
+        assertEquals(SESSIONS * INSERTS_PER_SESSION, ids.size(), "Every row should have its own id");
+    }
+
+    //Concurrent sessions inserting into and reading from one table under group commit
+    @Test
+    public void testConcurrentSessionsGroupCommit() {
+        assertTimeoutPreemptively(Duration.ofSeconds(20), () -> runSessions("GROUP"));
+        checkAllRowsPresent();
+    }
+
+    //Concurrent sessions inserting into and reading from one table under async durability
+    @Test
+    public void testConcurrentSessionsAsync() {
+        assertTimeoutPreemptively(Duration.ofSeconds(20), () -> runSessions("ASYNC"));
+        checkAllRowsPresent();
+    }
+
+    //Sessions keep their own current database
+    @Test
+    public void testSessionsAreIndependent() {
+        Session other = new Session();
+        String response = server.handleCommand("SELECT * FROM marks;", other);
+        assertTrue(response.contains("[ERROR]"), "A new session should not inherit another session's database");
+    }
+
+    private Table openTable() {
+        Database db = Database.open(Paths.get("databases").toAbsolutePath().toString(), databaseName);
+        return Table.loadTable("marks", db, null);
+    }
+
+    //A snapshot keeps seeing the rows as they were when it was opened, even after reclaiming
+    @Test
+    public void testSnapshotIgnoresLaterCommits() {
+        sendCommandToServer("INSERT INTO marks VALUES ('Steve', 65, TRUE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Dave', 55, TRUE);");
+        Table t = openTable();
+
+        try (Snapshot old = VersionClock.open()) {
+            sendCommandToServer("UPDATE marks SET mark = 30 WHERE name == 'Steve';");
+            sendCommandToServer("DELETE FROM marks WHERE name == 'Dave';");
+            sendCommandToServer("INSERT INTO marks VALUES ('Bob', 35, FALSE);");
+            VersionClock.reclaim();
+
+            StringBuilder before = new StringBuilder();
+            t.scan(null, old).forEach(row -> before.append(row).append('\n'));
+            assertTrue(before.toString().contains("65") && before.toString().contains("Dave"), "Old snapshot should still see the original rows");
+            assertFalse(before.toString().contains("Bob"), "Old snapshot should not see later inserts");
+        }
+
+        VersionClock.reclaim();
+        String response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("30") && response.contains("Bob"), "New statements should see the committed changes");
+        assertFalse(response.contains("Dave"), "Deleted row should stay deleted after reclaiming");
+    }
+
+    //Changes staged by a writer stay invisible to readers until the statement commits
+    @Test
+    public void testPendingChangesInvisible() {
+        sendCommandToServer("INSERT INTO marks VALUES ('Steve', 65, TRUE);");
+        Table t = openTable();
+        t.addRow(new ArrayList<>(List.of("Bob", "35", "FALSE")));
+
+        assertFalse(sendCommandToServer("SELECT * FROM marks;").contains("Bob"), "Staged row should not be visible");
+
+        t.rollback();
+        sendCommandToServer("INSERT INTO marks VALUES ('Clive', 20, FALSE);");
+        String response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("Clive"), "Later statements should commit normally");
+        assertFalse(response.contains("Bob"), "Rolled back row should be gone");
+    }
+
+    //Changes inside a transaction are only visible to other sessions once committed, and written once
+    @Test
+    public void testTransactionCommit() throws Exception {
+        Session other = new Session();
+        server.handleCommand("USE " + databaseName + ";", other);
+
+        assertTrue(sendCommandToServer("BEGIN;").contains("[OK]"));
+        sendCommandToServer("INSERT INTO marks VALUES ('Steve', 65, TRUE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Dave', 55, TRUE);");
+        sendCommandToServer("UPDATE marks SET mark = 70 WHERE name == 'Steve';");
+
+        assertTrue(sendCommandToServer("SELECT * FROM marks;").contains("70"), "A transaction should see its own changes");
+        assertFalse(server.handleCommand("SELECT * FROM marks;", other).contains("Steve"), "Other sessions should not see uncommitted rows");
+        assertFalse(Files.readString(tableFile()).contains("Steve"), "Nothing should be written before COMMIT");
+
+        assertTrue(sendCommandToServer("COMMIT;").contains("[OK]"));
+        String response = server.handleCommand("SELECT * FROM marks;", other);
+        assertTrue(response.contains("70") && response.contains("Dave"), "Committed rows should be visible to other sessions");
+        assertTrue(Files.readString(tableFile()).contains("Dave"), "Committed rows should be written");
+    }
+
+    //Rolling back discards every change made since BEGIN
+    @Test
+    public void testTransactionRollback() {
+        sendCommandToServer("INSERT INTO marks VALUES ('Steve', 65, TRUE);");
+        sendCommandToServer("BEGIN;");
+        sendCommandToServer("DELETE FROM marks WHERE name == 'Steve';");
+        sendCommandToServer("ALTER TABLE marks ADD age;");
+        sendCommandToServer("INSERT INTO marks VALUES ('Dave', 55, TRUE, 20);");
+        assertTrue(sendCommandToServer("ROLLBACK;").contains("[OK]"));
+
+        String response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("Steve"), "Deleted row should be restored");
+        assertFalse(response.contains("age") || response.contains("Dave"), "Staged changes should be discarded");
+    }
+
+    //A failing statement rolls back the whole transaction
+    @Test
+    public void testFailedStatementAbortsTransaction() {
+        sendCommandToServer("BEGIN;");
+        sendCommandToServer("INSERT INTO marks VALUES ('Steve', 65, TRUE);");
+        String response = sendCommandToServer("INSERT INTO marks VALUES ('Dave', 55);");
+        assertTrue(response.contains("[ERROR]") && response.contains("rolled back"), "Failure should end the transaction");
+        assertTrue(sendCommandToServer("COMMIT;").contains("[ERROR]"), "No transaction should remain to commit");
+        assertFalse(sendCommandToServer("SELECT * FROM marks;").contains("Steve"), "Earlier statements should be rolled back");
+    }
+
+    //Commands that cannot be undone are refused inside a transaction
+    @Test
+    public void testTransactionRestrictions() {
+        assertTrue(sendCommandToServer("COMMIT;").contains("[ERROR]"));
+        assertTrue(sendCommandToServer("ROLLBACK;").contains("[ERROR]"));
+        sendCommandToServer("BEGIN;");
+        assertTrue(sendCommandToServer("BEGIN;").contains("[ERROR]"));
+        assertTrue(sendCommandToServer("CREATE TABLE other (a);").contains("[ERROR]"));
+        assertTrue(sendCommandToServer("INSERT INTO marks VALUES ('Steve', 65, TRUE);").contains("[OK]"), "Transaction should still be usable");
+        assertTrue(sendCommandToServer("COMMIT;").contains("[OK]"));
+        assertTrue(sendCommandToServer("SELECT * FROM marks;").contains("Steve"));
+    }
+
+    //A writer that cannot get a table's lock in time gives up with an error instead of waiting forever
+    @Test
+    public void testWriterTimesOutOnHeldTable() {
+        Session other = new Session();
+        server.handleCommand("USE " + databaseName + ";", other);
+        server.handleCommand("BEGIN;", other);
+        server.handleCommand("INSERT INTO marks VALUES ('Steve', 65, TRUE);", other);
+
+        Duration wait = Duration.ofMillis(LockManager.LOCK_TIMEOUT_MS + 1000);
+        String insert = assertTimeoutPreemptively(wait, () -> server.handleCommand("INSERT INTO marks VALUES ('Dave', 55, TRUE);"));
+        assertTrue(insert.contains("[ERROR]") && insert.contains("Timed out"), "A held table should time the writer out");
+        String view = assertTimeoutPreemptively(wait, () -> server.handleCommand("CREATE MATERIALIZED VIEW passed AS SELECT * FROM marks;"));
+        assertTrue(view.contains("[ERROR]") && view.contains("Timed out"), "A view on a held table should time out");
+
+        assertTrue(server.handleCommand("COMMIT;", other).contains("[OK]"));
+        assertTrue(sendCommandToServer("INSERT INTO marks VALUES ('Dave', 55, TRUE);").contains("[OK]"), "The table should be free again");
+        String response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("Steve") && response.contains("Dave"));
+    }
+
+    private Path tableFile() {
+        return Paths.get("databases", databaseName, "marks.tab");
+    }
+}
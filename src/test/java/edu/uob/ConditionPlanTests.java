@@ -0,0 +1,144 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConditionPlanTests {
+
+    // ages 1 to 100 and a name column with ten distinct values
+    private TableStatistics statistics()
+    {
+        TableStatistics.Collector collector = new TableStatistics.Collector(List.of("Age", "Name"));
+
+        for (int i = 1; i <= 100; i++)
+        {
+            collector.add(new ArrayList<>(List.of(Integer.toString(i), "name" + i % 10)));
+        }
+
+        return collector.finish();
+    }
+
+    private ConditionPlan condition(String column, SyntaxType operator, String value, boolean indexed, TableStatistics statistics)
+    {
+        int position = column.equals("Age") ? 0 : 1;
+        RowFilter filter = (id, values) -> DBHelper.conditionMet(values.get(position), value, operator);
+        return ConditionPlan.condition(column, operator, value, filter, indexed, statistics);
+    }
+
+    //AND runs its most selective conditions first and OR its least selective
+    @Test
+    public void testGroupsOrderedBySelectivity() {
+        TableStatistics statistics = statistics();
+        ConditionPlan wide = condition("Age", SyntaxType.GT, "5", false, statistics);
+        ConditionPlan narrow = condition("Age", SyntaxType.EQUAL_TO, "50", false, statistics);
+        ConditionPlan middle = condition("Name", SyntaxType.EQUAL_TO, "name3", false, statistics);
+
+        ConditionPlan and = ConditionPlan.combine(SyntaxType.AND, wide, ConditionPlan.combine(SyntaxType.AND, middle, narrow));
+        assertEquals("(Age EQUAL_TO 50 AND Name EQUAL_TO name3 AND Age GT 5)", and.toString(),
+                "Nested ANDs should be merged and put in order");
+
+        ConditionPlan or = ConditionPlan.combine(SyntaxType.OR, narrow, ConditionPlan.combine(SyntaxType.OR, middle, wide));
+        assertEquals("(Age GT 5 OR Name EQUAL_TO name3 OR Age EQUAL_TO 50)", or.toString());
+
+        ConditionPlan mixed = ConditionPlan.combine(SyntaxType.AND, or, narrow);
+        assertEquals("(Age EQUAL_TO 50 AND (Age GT 5 OR Name EQUAL_TO name3 OR Age EQUAL_TO 50))", mixed.toString(),
+                "Groups of the other kind should stay whole");
+        assertTrue(mixed.getSelectivity() < narrow.getSelectivity());
+    }
+
+    //Indexed conditions come first and without statistics equality beats a range
+    @Test
+    public void testIndexAndDefaults() {
+        ConditionPlan range = condition("Age", SyntaxType.LT, "30", false, statistics());
+        ConditionPlan indexed = condition("Name", SyntaxType.LIKE, "name", true, statistics());
+        assertEquals("(Name LIKE name AND Age LT 30)", ConditionPlan.combine(SyntaxType.AND, range, indexed).toString());
+
+        ConditionPlan guessRange = condition("Age", SyntaxType.GT, "3", false, null);
+        ConditionPlan guessEqual = condition("Name", SyntaxType.EQUAL_TO, "name3", false, null);
+        assertEquals("(Name EQUAL_TO name3 AND Age GT 3)", ConditionPlan.combine(SyntaxType.AND, guessRange, guessEqual).toString());
+    }
+
+    //A trigram index only answers LIKE with three or more characters, so it does not put an equality first
+    @Test
+    public void testIndexOnlyCountsWhereItAnswers() {
+        TrigramIndex index = new TrigramIndex("Name");
+        assertFalse(index.supports(SyntaxType.LIKE, "na"));
+        assertTrue(index.supports(SyntaxType.LIKE, "name"));
+
+        boolean indexed = index.supports(SyntaxType.EQUAL_TO, "name3");
+        ConditionPlan equal = condition("Name", SyntaxType.EQUAL_TO, "name3", indexed, statistics());
+        ConditionPlan narrow = condition("Age", SyntaxType.EQUAL_TO, "50", false, statistics());
+        assertFalse(indexed);
+        assertEquals("(Age EQUAL_TO 50 AND Name EQUAL_TO name3)", ConditionPlan.combine(SyntaxType.AND, equal, narrow).toString(),
+                "A condition the index cannot answer should be costed as a scan");
+    }
+
+    //An index is left unused, and costed as a scan, when the statistics say most rows meet its condition
+    @Test
+    public void testUnselectiveIndexSkipped() {
+        ConditionPlan middle = condition("Name", SyntaxType.EQUAL_TO, "name3", false, statistics());
+        ConditionPlan wide = condition("Age", SyntaxType.GT, "5", true, statistics());
+        assertEquals("(Name EQUAL_TO name3 AND Age GT 5)", ConditionPlan.combine(SyntaxType.AND, wide, middle).toString(),
+                "An index giving most of the table should not be used");
+
+        ConditionPlan guessWide = condition("Age", SyntaxType.GT, "5", true, null);
+        assertEquals("(Age GT 5 AND Name EQUAL_TO name3)", ConditionPlan.combine(SyntaxType.AND, middle, guessWide).toString(),
+                "Without statistics an index should still be used");
+    }
+
+    //An AND over bitmap indexed columns is answered by intersecting the indexes, without reading a row
+    @Test
+    public void testIndexedAndReadsNoRows() {
+        DBServer server = new DBServer();
+        server.handleCommand("CREATE DATABASE conditionplantests;");
+        server.handleCommand("USE conditionplantests;");
+
+        try {
+            server.handleCommand("CREATE TABLE marks (name, pass, grade);");
+            server.handleCommand("INSERT INTO marks VALUES ('Steve', TRUE, 1), ('Dave', TRUE, 2), ('Bob', FALSE, 2), ('Clive', TRUE, 2);");
+            server.handleCommand("CREATE BITMAP INDEX ON marks (pass);");
+            server.handleCommand("CREATE BITMAP INDEX ON marks (grade);");
+
+            Database db = Database.open(Paths.get("databases").toAbsolutePath().toString(), "conditionplantests");
+            Table t = Table.loadTable("marks", db, null);
+            RowFilter unread = (id, values) -> { throw new AssertionError("Row " + id + " should not be read"); };
+            ConditionPlan plan = ConditionPlan.combine(SyntaxType.AND,
+                    ConditionPlan.condition("pass", SyntaxType.EQUAL_TO, "TRUE", unread, t.canAnswer("pass", SyntaxType.EQUAL_TO, "TRUE"), null),
+                    ConditionPlan.condition("grade", SyntaxType.EQUAL_TO, "2", unread, t.canAnswer("grade", SyntaxType.EQUAL_TO, "2"), null));
+
+            try (Snapshot snapshot = VersionClock.open()) {
+                assertArrayEquals(new int[] {2, 4}, plan.rows(t, snapshot).toArray());
+            }
+        }
+
+        finally {
+            server.handleCommand("DROP DATABASE conditionplantests;");
+        }
+    }
+
+    //The ordered filter gives the same answers as the conditions in their written order
+    @Test
+    public void testFilterKeepsMeaning() {
+        TableStatistics statistics = statistics();
+        ConditionPlan plan = ConditionPlan.combine(SyntaxType.AND, condition("Age", SyntaxType.GT, "5", false, statistics),
+                ConditionPlan.combine(SyntaxType.OR, condition("Name", SyntaxType.EQUAL_TO, "name3", false, statistics),
+                        condition("Age", SyntaxType.EQUAL_TO, "50", false, statistics)));
+        RowFilter filter = plan.filter();
+
+        for (int i = 1; i <= 100; i++)
+        {
+            boolean expected = i > 5 && (i % 10 == 3 || i == 50);
+            assertEquals(expected, filter.test(i, new ArrayList<>(List.of(Integer.toString(i), "name" + i % 10))));
+        }
+
+        assertFalse(filter.test(3, new ArrayList<>(List.of("3", "name3"))));
+    }
+}
@@ -0,0 +1,113 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+public class DistinctRowsTests {
+
+    private List<String> randomRows(int count)
+    {
+        Random random = new Random(11);
+        ArrayList<String> rows = new ArrayList<>();
+
+        for (int i = 0; i < count; i++)
+        {
+            rows.add("name" + random.nextInt(500) + "\t" + random.nextInt(4));
+        }
+
+        return rows;
+    }
+
+    private List<String> distinct(DistinctRows distinct, List<String> rows) throws IOException
+    {
+        ArrayList<String> output = new ArrayList<>();
+
+        for (String row: rows)
+        {
+            if (distinct.firstSeen(row))
+            {
+                output.add(row);
+            }
+        }
+
+        distinct.close();
+        return output;
+    }
+
+    //In memory every row comes out once, in order of first appearance
+    @Test
+    public void testInMemoryKeepsFirstSeenOrder() throws IOException {
+        List<String> rows = randomRows(5000);
+        assertEquals(new ArrayList<>(new LinkedHashSet<>(rows)), distinct(new DistinctRows(), rows));
+    }
+
+    //Past the memory budget rows are still output exactly once and in order of first appearance
+    @Test
+    public void testSpilledPartitionsStayDistinct() throws IOException {
+        List<String> rows = randomRows(5000);
+        assertEquals(new ArrayList<>(new LinkedHashSet<>(rows)), distinct(new DistinctRows(4096), rows));
+    }
+
+    //With partitions on disk LIMIT and OFFSET still page through the rows in scan order
+    @Test
+    public void testSpilledLimitAndOffset() throws IOException {
+        DBServer server = new DBServer();
+        server.handleCommand("CREATE DATABASE distinctrowstests;");
+        server.handleCommand("USE distinctrowstests;");
+
+        try {
+            server.handleCommand("CREATE TABLE marks (name, mark);");
+            StringBuilder insert = new StringBuilder("INSERT INTO marks VALUES ");
+            for (int i = 0; i < 200; i++) {
+                insert.append(i == 0 ? "" : ", ").append("('name").append(i % 40).append("', ").append(i % 3).append(")");
+            }
+            server.handleCommand(insert.append(";").toString());
+
+            Database db = Database.open(Paths.get("databases").toAbsolutePath().toString(), "distinctrowstests");
+            Table t = Table.loadTable("marks", db, null);
+            ArrayList<String> attributes = new ArrayList<>(List.of("name", "mark"));
+
+            try (Snapshot snapshot = VersionClock.open()) {
+                List<String> all = select(t, attributes, new DistinctRows(), 0, -1, snapshot);
+                assertEquals(120, all.size());
+                assertEquals(all.subList(30, 55), select(t, attributes, new DistinctRows(256), 30, 25, snapshot),
+                        "A page of spilled rows should match the same page in memory");
+                assertEquals(all.subList(110, 120), select(t, attributes, new DistinctRows(0), 110, 40, snapshot));
+            }
+        }
+
+        finally {
+            server.handleCommand("DROP DATABASE distinctrowstests;");
+        }
+    }
+
+    private List<String> select(Table t, ArrayList<String> attributes, DistinctRows distinct, int offset, int limit,
+                                Snapshot snapshot) throws IOException
+    {
+        StringBuilder output = new StringBuilder();
+
+        try (distinct)
+        {
+            t.selectTable(output, attributes, null, distinct, offset, limit, snapshot);
+        }
+
+        List<String> lines = List.of(output.toString().split(System.lineSeparator()));
+        return lines.subList(1, lines.size());
+    }
+
+    //Values are compared like GROUP BY compares them
+    @Test
+    public void testEqualValuesAreDuplicates() throws IOException {
+        List<String> output = distinct(new DistinctRows(), List.of("20\ttrue", "20.0\tTRUE", "20.5\tTRUE", "Bob\tNULL"));
+        assertEquals(List.of("20\ttrue", "20.5\tTRUE", "Bob\tNULL"), output);
+        assertEquals(List.of("a", "A"), distinct(new DistinctRows(0), List.of("a", "a", "A")));
+    }
+}
@@ -0,0 +1,69 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class HyperLogLogTests {
+
+    private HyperLogLog sketch(String prefix, int from, int to)
+    {
+        HyperLogLog sketch = new HyperLogLog();
+
+        for (int i = from; i < to; i++)
+        {
+            sketch.add(prefix + i);
+        }
+
+        return sketch;
+    }
+
+    private void assertClose(long expected, long estimate, double tolerance)
+    {
+        assertTrue(Math.abs(estimate - expected) <= expected * tolerance,
+                "Estimate " + estimate + " should be within " + tolerance * 100 + "% of " + expected);
+    }
+
+    //Small and large cardinalities are estimated within a few percent, repeats counting once
+    @Test
+    public void testEstimateAccuracy() {
+        assertEquals(0, new HyperLogLog().estimate());
+        assertClose(100, sketch("v", 0, 100).estimate(), 0.02);
+        assertClose(200000, sketch("v", 0, 200000).estimate(), 0.04);
+
+        HyperLogLog repeated = sketch("v", 0, 1000);
+
+        for (int i = 0; i < 1000; i++)
+        {
+            repeated.add("v" + i);
+        }
+
+        assertClose(1000, repeated.estimate(), 0.03);
+    }
+
+    //Merging sketches estimates the union and encoding keeps every register
+    @Test
+    public void testMergeAndEncode() {
+        HyperLogLog first = sketch("v", 0, 30000);
+        first.merge(sketch("v", 20000, 50000));
+        assertClose(50000, first.estimate(), 0.04);
+
+        assertEquals(first.estimate(), HyperLogLog.decode(first.encode()).estimate());
+        assertEquals(first.encode(), HyperLogLog.decode(first.encode()).encode());
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.decode("AAAA"));
+    }
+
+    //Values equal to DBHelper are the same value
+    @Test
+    public void testEqualValuesCountOnce() {
+        HyperLogLog sketch = new HyperLogLog();
+        sketch.add("20");
+        sketch.add("20.0");
+        sketch.add("true");
+        sketch.add("TRUE");
+        sketch.add("'20'");
+        assertEquals(3, sketch.estimate());
+    }
+}
@@ -163,9 +163,56 @@ public class JoinTests {
 
     }
 
+    //Each table's conditions are applied to its rows before they are joined
+    @Test
+    public void testJoinWhere()
+    {
+        setup1();
+        String response = sendCommandToServer("JOIN " + tableName1 + " AND " + tableName2 + " ON id AND Foreignkey"
+                + " WHERE Age > 30 AND " + tableName2 + ".Postcode != 'AB5';");
+        assertTrue(response.contains(OK_MESSAGE), "Output string should contain OK");
+        assertTrue(response.contains("David") && response.contains("Richard"), "Rows passing both conditions should be joined");
+        assertFalse(response.contains("Bob"), "Rows failing the left table's condition should not be joined");
+        assertFalse(response.contains("John"), "Rows matching a row failing the right table's condition should not be joined");
+    }
 
+    //Only the listed columns are shown
+    @Test
+    public void testJoinColumns()
+    {
+        setup1();
+        String response = sendCommandToServer("JOIN Name, " + tableName2 + ".Username FROM " + tableName1 + " AND "
+                + tableName2 + " ON id AND Foreignkey;");
+        assertTrue(response.contains(OK_MESSAGE), "Output string should contain OK");
+        assertTrue(response.contains(tableName1 + ".Name") && response.contains(tableName2 + ".Username"),
+                "Output table should contain the listed columns");
+        assertFalse(response.contains("Age") || response.contains("Postcode"), "Output table should only contain the listed columns");
+        assertTrue(response.contains("Bob\tuser1"), "Output table should contain Bob's user");
+    }
 
+    //A column in both tables needs its table's name, and each ANDed condition has to read one table
+    @Test
+    public void testJoinErrors()
+    {
+        setup1();
+        String response = sendCommandToServer("JOIN id, Name FROM " + tableName1 + " AND " + tableName2 + " ON id AND Foreignkey;");
+        assertTrue(response.contains(ERROR_MESSAGE), "An id column without its table's name is ambiguous");
+        response = sendCommandToServer("JOIN " + tableName1 + " AND " + tableName2 + " ON id AND Foreignkey"
+                + " WHERE Age > 30 OR Postcode == 'AB1';");
+        assertTrue(response.contains(ERROR_MESSAGE), "A condition reading both tables cannot be split between them");
+        response = sendCommandToServer("JOIN " + tableName1 + " AND " + tableName2 + " ON id AND Foreignkey WHERE Height > 1;");
+        assertTrue(response.contains(ERROR_MESSAGE), "A condition reading neither table cannot be applied");
+    }
 
-
-
+    //A row matching several rows of the other table is joined with each of them
+    @Test
+    public void testJoinSeveralMatches()
+    {
+        setup1();
+        sendCommandToServer("INSERT INTO " + tableName2 + " VALUES ('user6', 'AB6', 1);");
+        String response = sendCommandToServer("JOIN " + tableName1 + " AND " + tableName2 + " ON id AND Foreignkey;");
+        assertTrue(response.contains(OK_MESSAGE), "Output string should contain OK");
+        assertTrue(response.contains("Bob\t20\tbob@bob.co.uk\tFALSE\tuser1\tAB1"), "Bob should be joined with user1");
+        assertTrue(response.contains("Bob\t20\tbob@bob.co.uk\tFALSE\tuser6\tAB6"), "Bob should be joined with user6");
+    }
 }
@@ -449,4 +449,316 @@ public class ParserTests {
 
         assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
     }
+
+    //Testing that malformed value tuples return error
+    @Test
+    public void testInvalidCommand53() {
+        String response = sendCommandToServer("INSERT INTO RANDOM VALUES ('F'), ;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Testing that malformed value tuples return error
+    @Test
+    public void testInvalidCommand54() {
+        String response = sendCommandToServer("INSERT INTO RANDOM VALUES ('F') ('G');");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Testing that malformed value tuples return error
+    @Test
+    public void testInvalidCommand55() {
+        String response = sendCommandToServer("INSERT INTO RANDOM VALUES ('F'), 'G';");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Testing that malformed LOAD commands return error
+    @Test
+    public void testInvalidCommand56() {
+        String response = sendCommandToServer("LOAD DATA marks.csv INTO marks;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Testing that malformed LOAD commands return error
+    @Test
+    public void testInvalidCommand57() {
+        String response = sendCommandToServer("LOAD 'marks.csv' INTO marks;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Testing that malformed LOAD commands return error
+    @Test
+    public void testInvalidCommand58() {
+        String response = sendCommandToServer("LOAD DATA 'marks.csv' marks;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Transaction statements take no arguments
+    @Test
+    public void testInvalidCommand59() {
+        String response = sendCommandToServer("BEGIN TRANSACTION;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Transaction statements take no arguments
+    @Test
+    public void testInvalidCommand60() {
+        String response = sendCommandToServer("COMMIT");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Transaction statements take no arguments
+    @Test
+    public void testInvalidCommand61() {
+        String response = sendCommandToServer("ROLLBACK marks;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Index creation needs a known kind, ON and a bracketed attribute
+    @Test
+    public void testInvalidCommand62() {
+        String response = sendCommandToServer("CREATE HASH INDEX ON marks (pass);");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Index creation needs a known kind, ON and a bracketed attribute
+    @Test
+    public void testInvalidCommand63() {
+        String response = sendCommandToServer("CREATE BITMAP INDEX marks (pass);");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Index creation needs a known kind, ON and a bracketed attribute
+    @Test
+    public void testInvalidCommand64() {
+        String response = sendCommandToServer("CREATE BITMAP INDEX ON marks pass;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Index creation needs a known kind, ON and a bracketed attribute
+    @Test
+    public void testInvalidCommand65() {
+        String response = sendCommandToServer("CREATE BITMAP ON marks (pass);");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //ORDER BY needs BY, one attribute and at most a direction
+    @Test
+    public void testInvalidCommand66() {
+        String response = sendCommandToServer("SELECT * FROM marks ORDER name;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //ORDER BY needs BY, one attribute and at most a direction
+    @Test
+    public void testInvalidCommand67() {
+        String response = sendCommandToServer("SELECT * FROM marks ORDER BY;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //ORDER BY needs BY, one attribute and at most a direction
+    @Test
+    public void testInvalidCommand68() {
+        String response = sendCommandToServer("SELECT * FROM marks ORDER BY name UP;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //ORDER BY needs BY, one attribute and at most a direction
+    @Test
+    public void testInvalidCommand69() {
+        String response = sendCommandToServer("SELECT * FROM marks ORDER BY name, mark;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //LIMIT takes a non-negative row count, an optional OFFSET and comes last
+    @Test
+    public void testInvalidCommand70() {
+        String response = sendCommandToServer("SELECT * FROM marks LIMIT;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //LIMIT takes a non-negative row count, an optional OFFSET and comes last
+    @Test
+    public void testInvalidCommand71() {
+        String response = sendCommandToServer("SELECT * FROM marks LIMIT -1;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //LIMIT takes a non-negative row count, an optional OFFSET and comes last
+    @Test
+    public void testInvalidCommand72() {
+        String response = sendCommandToServer("SELECT * FROM marks LIMIT 5 OFFSET;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //LIMIT takes a non-negative row count, an optional OFFSET and comes last
+    @Test
+    public void testInvalidCommand73() {
+        String response = sendCommandToServer("SELECT * FROM marks OFFSET 2;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //LIMIT takes a non-negative row count, an optional OFFSET and comes last
+    @Test
+    public void testInvalidCommand74() {
+        String response = sendCommandToServer("SELECT * FROM marks LIMIT 2 ORDER BY name;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Aggregates take one attribute in brackets, only COUNT takes *
+    @Test
+    public void testInvalidCommand75() {
+        String response = sendCommandToServer("SELECT SUM(*) FROM marks;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Aggregates take one attribute in brackets, only COUNT takes *
+    @Test
+    public void testInvalidCommand76() {
+        String response = sendCommandToServer("SELECT COUNT(name FROM marks;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Aggregates take one attribute in brackets, only COUNT takes *
+    @Test
+    public void testInvalidCommand77() {
+        String response = sendCommandToServer("SELECT COUNT() FROM marks;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //Aggregates take one attribute in brackets, only COUNT takes *
+    @Test
+    public void testInvalidCommand78() {
+        String response = sendCommandToServer("SELECT COUNT(*), name FROM marks;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //GROUP BY needs BY and a list of attributes
+    @Test
+    public void testInvalidCommand79() {
+        String response = sendCommandToServer("SELECT name, COUNT(*) FROM marks GROUP name;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //GROUP BY needs BY and a list of attributes
+    @Test
+    public void testInvalidCommand80() {
+        String response = sendCommandToServer("SELECT name, COUNT(*) FROM marks GROUP BY;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //GROUP BY needs BY and a list of attributes
+    @Test
+    public void testInvalidCommand81() {
+        String response = sendCommandToServer("SELECT name, COUNT(*) FROM marks GROUP BY name,;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //DISTINCT is a reserved word and needs a select list
+    @Test
+    public void testInvalidCommand82() {
+        String response = sendCommandToServer("SELECT DISTINCT FROM t;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //DISTINCT is a reserved word and needs a select list
+    @Test
+    public void testInvalidCommand83() {
+        String response = sendCommandToServer("SELECT Name, DISTINCT FROM t;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //DISTINCT is a reserved word and needs a select list
+    @Test
+    public void testInvalidCommand84() {
+        String response = sendCommandToServer("CREATE TABLE distinct (a);");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //ANALYZE takes exactly one table name
+    @Test
+    public void testInvalidCommand85() {
+        String response = sendCommandToServer("ANALYZE marks, other;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //ANALYZE takes exactly one table name
+    @Test
+    public void testInvalidCommand86() {
+        String response = sendCommandToServer("ANALYZE TABLE marks;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //CREATE MATERIALIZED VIEW needs VIEW, AS and then a SELECT or JOIN
+    @Test
+    public void testInvalidCommand87() {
+        String response = sendCommandToServer("CREATE MATERIALIZED older AS SELECT * FROM marks;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //CREATE MATERIALIZED VIEW needs VIEW, AS and then a SELECT or JOIN
+    @Test
+    public void testInvalidCommand88() {
+        String response = sendCommandToServer("CREATE MATERIALIZED VIEW older SELECT * FROM marks;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //CREATE MATERIALIZED VIEW needs VIEW, AS and then a SELECT or JOIN
+    @Test
+    public void testInvalidCommand89() {
+        String response = sendCommandToServer("CREATE MATERIALIZED VIEW older AS DELETE FROM marks WHERE id == 1;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //JOIN column list has to be followed by FROM
+    @Test
+    public void testInvalidCommand90() {
+        String response = sendCommandToServer("JOIN Name, Age t1 AND t2 ON id AND id;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
+
+    //JOIN WHERE needs a condition
+    @Test
+    public void testInvalidCommand91() {
+        String response = sendCommandToServer("JOIN t1 AND t2 ON id AND id WHERE;");
+
+        assertTrue(response.contains(ERROR_MESSAGE), "An invalid query was made, however an [ERROR] tag was not returned");
+    }
 }
@@ -0,0 +1,207 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.zip.CRC32;
+
+public class RecoveryTests {
+    private DBServer server;
+    private String databaseName;
+    private Path databaseFolder;
+
+    @BeforeEach
+    public void setup() {
+        server = new DBServer();
+        databaseName = generateRandomName();
+        databaseFolder = Paths.get("databases", databaseName).toAbsolutePath();
+        sendCommandToServer("CREATE DATABASE " + databaseName + ";");
+        sendCommandToServer("USE " + databaseName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Steve', 65, TRUE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Dave', 55, TRUE);");
+    }
+
+    @AfterEach
+    public void destroy()
+    {
+        sendCommandToServer("DROP DATABASE " + databaseName + ";");
+    }
+
+    // Random name generator - useful for testing "bare earth" queries (i.e. where tables don't previously exist)
+    private String generateRandomName()
+    {
+        String randomName = "";
+        for(int i=0; i<10 ;i++) randomName += (char)( 97 + (Math.random() * 25.0));
+        return randomName;
+    }
+
+    private String sendCommandToServer(String command) {
+        // Try to send a command to the server - this call will timeout if it takes too long (in case the server enters an infinite loop)
+        return assertTimeoutPreemptively(Duration.ofMillis(1000), () -> { return server.handleCommand(command);},
+                "Server took too long to respond (probably stuck in an infinite loop)");
+    }
+
+    private void recover() {
+        // Forget the open tables so the repaired files are read back, as after a real restart
+        Database.close(databaseFolder.getParent().toString(), databaseName);
+        Table.recoverTable(new File(databaseFolder.toString()), "marks");
+        server = new DBServer();
+        sendCommandToServer("USE " + databaseName + ";");
+    }
+
+    //A commit that crashed after writing its marker is rolled forward
+    @Test
+    public void testRollForwardAfterMarker() throws IOException {
+        Files.writeString(databaseFolder.resolve("marks.tab.tmp"),
+                "id\tname\tmark\tpass\n1\tSteve\t65\tTRUE\n2\tDave\t55\tTRUE\n3\tBob\t35\tFALSE\n");
+        Files.writeString(databaseFolder.resolve("marks.info.tmp"), "4");
+        Files.createFile(databaseFolder.resolve("marks.commit"));
+
+        recover();
+
+        String response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("Bob"), "Complete commit should have been rolled forward");
+        assertFalse(Files.exists(databaseFolder.resolve("marks.commit")), "Commit marker should be removed");
+    }
+
+    //A commit that crashed before its marker is discarded
+    @Test
+    public void testDiscardWithoutMarker() throws IOException {
+        Files.writeString(databaseFolder.resolve("marks.tab.tmp"), "id\tname\tmark\tpass\n1\tSte");
+
+        recover();
+
+        String response = sendCommandToServer("SELECT * FROM marks;");
+        assertTrue(response.contains("Dave"), "Live table should be untouched");
+        assertFalse(Files.exists(databaseFolder.resolve("marks.tab.tmp")), "Partial temporary file should be removed");
+    }
+
+    //Closing the database writes out changes that ASYNC durability only applied in memory
+    @Test
+    public void testAsyncChangesFlushedOnClose() throws IOException {
+        sendCommandToServer("SET DURABILITY ASYNC;");
+        sendCommandToServer("INSERT INTO marks VALUES ('Bob', 35, FALSE);");
+
+        Database.close(databaseFolder.getParent().toString(), databaseName);
+
+        assertTrue(Files.readString(databaseFolder.resolve("marks.tab")).contains("Bob"), "Dirty table should be written on close");
+    }
+
+    //A torn last row is dropped and the stored id is moved past every row
+    @Test
+    public void testRepairTornTable() throws IOException {
+        Files.writeString(databaseFolder.resolve("marks.tab"),
+                "id\tname\tmark\tpass\n1\tSteve\t65\tTRUE\n2\tDave\t55\tTRUE\n7\tBob\t35\tFALSE\n8\tCli");
+        Files.writeString(databaseFolder.resolve("marks.info"), "3");
+
+        recover();
+
+        assertEquals("8", Files.readString(databaseFolder.resolve("marks.info")).trim(), "Next id should follow the largest id");
+        sendCommandToServer("INSERT INTO marks VALUES ('Clive', 20, FALSE);");
+        String response = sendCommandToServer("SELECT * FROM marks WHERE id == 8;");
+        assertTrue(response.contains("Clive"), "New row should receive an unused id");
+        assertFalse(response.contains("Cli\n"), "Torn row should be dropped");
+    }
+
+    //Ids are reserved in blocks and a restarted server starts above the stored reservation
+    @Test
+    public void testIdsNotReissuedAfterCrash() throws IOException {
+        int ceiling = Integer.parseInt(Files.readString(databaseFolder.resolve("marks.info")).trim());
+        assertTrue(ceiling > 3, "A block of ids should have been reserved");
+        sendCommandToServer("INSERT INTO marks VALUES ('Bob', 35, FALSE);");
+        assertEquals(Integer.toString(ceiling), Files.readString(databaseFolder.resolve("marks.info")).trim(),
+                "Inserts within the block should not rewrite the reservation");
+
+        // Drop the in-memory tables without writing anything, as a crash would
+        Database.discard(databaseFolder.getParent().toString(), databaseName);
+        server = new DBServer();
+        sendCommandToServer("USE " + databaseName + ";");
+        sendCommandToServer("INSERT INTO marks VALUES ('Clive', 20, FALSE);");
+
+        String response = sendCommandToServer("SELECT id FROM marks WHERE name == 'Clive';");
+        assertTrue(response.contains(Integer.toString(ceiling)), "New row should get the first id above the reservation");
+    }
+
+    //Stored indexes are used while they match the table file and rebuilt once it has changed
+    @Test
+    public void testIndexFileFollowsTable() throws IOException {
+        Path indexFile = databaseFolder.resolve("marks.idx");
+        sendCommandToServer("CREATE BITMAP INDEX ON marks (pass);");
+        assertEquals(Long.toString(checksum(databaseFolder.resolve("marks.tab"))), Files.readAllLines(indexFile).get(0),
+                "Index file should carry the checksum of the table file");
+
+        // An index that still matches the table is read back rather than rebuilt
+        Files.writeString(indexFile, Files.readString(indexFile).replace("TRUE\t1-2", "TRUE\t2"));
+        recover();
+        String response = sendCommandToServer("SELECT name FROM marks WHERE pass == TRUE;");
+        assertTrue(response.contains("Dave") && !response.contains("Steve"), "Stored index should have been used");
+
+        Files.writeString(databaseFolder.resolve("marks.tab"), "id\tname\tmark\tpass\n1\tSteve\t65\tTRUE\n2\tDave\t55\tFALSE\n");
+        recover();
+        response = sendCommandToServer("SELECT name FROM marks WHERE pass == TRUE;");
+        assertTrue(response.contains("Steve") && !response.contains("Dave"), "Stale index should have been rebuilt");
+        assertEquals(Long.toString(checksum(databaseFolder.resolve("marks.tab"))), Files.readAllLines(indexFile).get(0));
+
+        sendCommandToServer("INSERT INTO marks VALUES ('Bob', 35, TRUE);");
+        assertEquals(Long.toString(checksum(databaseFolder.resolve("marks.tab"))), Files.readAllLines(indexFile).get(0),
+                "Commits should keep the index file current");
+
+        sendCommandToServer("DROP TABLE marks;");
+        assertFalse(Files.exists(indexFile), "Dropping the table should remove its index file");
+    }
+
+    //Column sketches are saved with the table's checksum and rebuilt when the table changed on disk
+    @Test
+    public void testSketchFileFollowsTable() throws IOException {
+        Path sketchFile = databaseFolder.resolve("marks.hll");
+        sendCommandToServer("INSERT INTO marks VALUES ('Bob', 35, FALSE);");
+        assertEquals(Long.toString(checksum(databaseFolder.resolve("marks.tab"))), Files.readAllLines(sketchFile).get(0),
+                "Sketch file should carry the checksum of the table file");
+        assertTrue(sendCommandToServer("SELECT APPROX_COUNT_DISTINCT(pass) FROM marks;").contains("\n2"));
+
+        Files.writeString(databaseFolder.resolve("marks.tab"), "id\tname\tmark\tpass\n1\tSteve\t65\tTRUE\n2\tDave\t55\tTRUE\n");
+        recover();
+        String response = sendCommandToServer("SELECT APPROX_COUNT_DISTINCT(pass), APPROX_COUNT_DISTINCT(name) FROM marks;");
+        assertTrue(response.contains("\n1\t2"), "Stale sketches should have been rebuilt");
+        assertEquals(Long.toString(checksum(databaseFolder.resolve("marks.tab"))), Files.readAllLines(sketchFile).get(0));
+
+        sendCommandToServer("DROP TABLE marks;");
+        assertFalse(Files.exists(sketchFile), "Dropping the table should remove its sketch file");
+    }
+
+    private long checksum(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(file));
+        return crc.getValue();
+    }
+
+    //A view is read back after a restart and lined up with its table by the next commit to it
+    @Test
+    public void testViewFollowsTableAfterRestart() throws IOException {
+        sendCommandToServer("CREATE MATERIALIZED VIEW passed AS SELECT name FROM marks WHERE pass == TRUE;");
+        // as if the server stopped after writing the table but before the view
+        Files.writeString(databaseFolder.resolve("marks.tab"),
+                "id\tname\tmark\tpass\n1\tSteve\t65\tTRUE\n2\tDave\t55\tFALSE\n3\tBob\t35\tTRUE\n");
+
+        recover();
+
+        assertTrue(sendCommandToServer("SELECT * FROM passed;").contains("Dave"), "A view should keep its stored rows until its table changes");
+        sendCommandToServer("INSERT INTO marks VALUES ('Clive', 20, TRUE);");
+        String response = sendCommandToServer("SELECT * FROM passed;");
+        assertTrue(response.contains("Steve") && response.contains("Bob") && response.contains("Clive"), response);
+        assertFalse(response.contains("Dave"), "The first commit after a restart should line the view up with its table");
+    }
+}
@@ -0,0 +1,63 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+public class ResultCacheTests {
+
+    private final Database db = Database.open(Paths.get("databases").toAbsolutePath().toString(), "resultcachetests");
+
+    private void put(ResultCache cache, String command, String table, String response)
+    {
+        String key = ResultCache.key(db, command);
+        cache.put(key, db, List.of(table), ResultCache.changeCounts(db, List.of(table)), response);
+    }
+
+    //Statements differing only in spacing outside quotes share an entry
+    @Test
+    public void testKeyNormalisesSpacing()
+    {
+        assertEquals(ResultCache.key(db, "SELECT  *\tFROM t ;"), ResultCache.key(db, " SELECT * FROM t ; "));
+        assertNotEquals(ResultCache.key(db, "SELECT * FROM t WHERE a == 'x  y';"),
+                ResultCache.key(db, "SELECT * FROM t WHERE a == 'x y';"));
+    }
+
+    //A change to a table read by an entry makes it miss and drops it
+    @Test
+    public void testChangeInvalidates()
+    {
+        ResultCache cache = new ResultCache();
+        put(cache, "SELECT * FROM a;", "a", "[OK]\nrows a");
+        put(cache, "SELECT * FROM b;", "b", "[OK]\nrows b");
+
+        Table.countChange(db, "a");
+        assertNull(cache.get(ResultCache.key(db, "SELECT * FROM a;")));
+        assertEquals("[OK]\nrows b", cache.get(ResultCache.key(db, "SELECT * FROM b;")));
+        assertEquals(1, cache.size());
+    }
+
+    //The least recently used entries go first once either bound is passed
+    @Test
+    public void testBounds()
+    {
+        ResultCache cache = new ResultCache(2, 20);
+        put(cache, "SELECT 1;", "a", "one");
+        put(cache, "SELECT 2;", "a", "two");
+        cache.get(ResultCache.key(db, "SELECT 1;"));
+        put(cache, "SELECT 3;", "a", "three");
+
+        assertEquals("one", cache.get(ResultCache.key(db, "SELECT 1;")));
+        assertNull(cache.get(ResultCache.key(db, "SELECT 2;")));
+
+        put(cache, "SELECT 4;", "a", "a much longer reply");
+        assertEquals(1, cache.size(), "Entries over the character budget should be evicted");
+        put(cache, "SELECT 5;", "a", "a response too long to keep");
+        assertNull(cache.get(ResultCache.key(db, "SELECT 5;")));
+    }
+}
@@ -0,0 +1,120 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+public class RowSetTests {
+
+    private RowSet build(TreeSet<Integer> reference, Random random, int count, int range)
+    {
+        RowSet set = new RowSet();
+
+        for (int i = 0; i < count; i++)
+        {
+            int id = 1 + random.nextInt(range);
+            reference.add(id);
+            set.add(id);
+        }
+
+        return set;
+    }
+
+    private int[] toArray(TreeSet<Integer> reference)
+    {
+        return reference.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    //Sparse and dense blocks combine like ordinary sets and come out in id order
+    @Test
+    public void testAndOrMatchReference() {
+        Random random = new Random(42);
+
+        // sparse, dense and mixed blocks across several 65536 id ranges
+        int[][] shapes = {{100, 200000}, {30000, 70000}, {5000, 140000}, {60000, 65536}};
+
+        for (int[] first: shapes)
+        {
+            for (int[] second: shapes)
+            {
+                TreeSet<Integer> a = new TreeSet<>();
+                TreeSet<Integer> b = new TreeSet<>();
+                RowSet setA = build(a, random, first[0], first[1]);
+                RowSet setB = build(b, random, second[0], second[1]);
+
+                TreeSet<Integer> both = new TreeSet<>(a);
+                both.retainAll(b);
+                TreeSet<Integer> either = new TreeSet<>(a);
+                either.addAll(b);
+
+                assertArrayEquals(toArray(a), setA.toArray(), "Ids should come out sorted and without duplicates");
+                assertArrayEquals(toArray(both), setA.and(setB).toArray(), "AND should keep the common ids");
+                assertArrayEquals(toArray(either), setA.or(setB).toArray(), "OR should keep every id");
+                assertEquals(either.size(), setA.or(setB).size());
+            }
+        }
+    }
+
+    //Operations leave their inputs untouched
+    @Test
+    public void testOperandsUnchanged() {
+        RowSet a = new RowSet();
+        RowSet b = new RowSet();
+        a.add(3);
+        a.add(1);
+        b.add(2);
+
+        RowSet union = a.or(b);
+        union.add(70000);
+
+        assertArrayEquals(new int[] {1, 3}, a.toArray());
+        assertArrayEquals(new int[] {2}, b.toArray());
+        assertTrue(union.contains(70000) && union.contains(2));
+        assertFalse(a.contains(2));
+        assertTrue(a.and(b).isEmpty());
+    }
+
+    //Removing ids works for sparse and dense blocks and empties the set
+    @Test
+    public void testRemove() {
+        RowSet set = new RowSet();
+
+        for (int i = 1; i <= 10000; i++)
+        {
+            set.add(i);
+        }
+
+        set.add(100000);
+
+        for (int i = 2; i <= 10000; i++)
+        {
+            set.remove(i);
+        }
+
+        assertArrayEquals(new int[] {1, 100000}, set.toArray());
+        set.remove(1);
+        set.remove(100000);
+        assertTrue(set.isEmpty());
+    }
+
+    //Encoding collapses runs and decodes back to the same ids
+    @Test
+    public void testEncodeRoundTrip() {
+        RowSet set = new RowSet();
+
+        for (int id: new int[] {1, 2, 3, 7, 9, 10, 70000, 70001})
+        {
+            set.add(id);
+        }
+
+        assertEquals("1-3,7,9-10,70000-70001", set.encode());
+        assertArrayEquals(set.toArray(), RowSet.decode(set.encode()).toArray());
+        assertTrue(RowSet.decode(new RowSet().encode()).isEmpty());
+    }
+}
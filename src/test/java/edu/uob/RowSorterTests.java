@@ -0,0 +1,82 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class RowSorterTests {
+
+    private String sorted(RowSorter sorter, List<Integer> values) throws IOException
+    {
+        for (int id = 1; id <= values.size(); id++)
+        {
+            sorter.add(Integer.toString(values.get(id - 1)), id, id + "\t" + values.get(id - 1));
+        }
+
+        StringBuilder s = new StringBuilder();
+        sorter.writeTo(s);
+        sorter.close();
+        return s.toString();
+    }
+
+    private String expected(List<Integer> values, Comparator<Integer> order, int offset, int limit)
+    {
+        ArrayList<Integer> ids = new ArrayList<>();
+
+        for (int id = 1; id <= values.size(); id++)
+        {
+            ids.add(id);
+        }
+
+        ids.sort(Comparator.comparing((Integer id) -> values.get(id - 1), order).thenComparing(id -> id));
+        StringBuilder s = new StringBuilder();
+
+        for (int id: ids.subList(offset, limit < 0 ? ids.size() : Math.min(offset + limit, ids.size())))
+        {
+            s.append(id).append("\t").append(values.get(id - 1)).append(System.lineSeparator());
+        }
+
+        return s.toString();
+    }
+
+    private List<Integer> randomValues(int count)
+    {
+        Random random = new Random(7);
+        ArrayList<Integer> values = new ArrayList<>();
+
+        for (int i = 0; i < count; i++)
+        {
+            values.add(random.nextInt(500) - 250);
+        }
+
+        return values;
+    }
+
+    //Spilled runs merge back into the same order as an in-memory sort
+    @Test
+    public void testSpilledSortMatchesInMemory() throws IOException {
+        List<Integer> values = randomValues(5000);
+
+        assertEquals(expected(values, Comparator.naturalOrder(), 0, -1), sorted(new RowSorter(false, 0, -1, 4096), values));
+        assertEquals(expected(values, Comparator.reverseOrder(), 0, -1), sorted(new RowSorter(true, 0, -1, 4096), values));
+        assertEquals(expected(values, Comparator.naturalOrder(), 0, -1), sorted(new RowSorter(false, 0, -1), values));
+        assertEquals(expected(values, Comparator.naturalOrder(), 100, -1), sorted(new RowSorter(false, 100, -1, 4096), values));
+    }
+
+    //A limited sort keeps only the rows up to offset + limit and writes those after the offset
+    @Test
+    public void testTopRows() throws IOException {
+        List<Integer> values = randomValues(5000);
+
+        assertEquals(expected(values, Comparator.naturalOrder(), 0, 10), sorted(new RowSorter(false, 0, 10), values));
+        assertEquals(expected(values, Comparator.reverseOrder(), 0, 10), sorted(new RowSorter(true, 0, 10), values));
+        assertEquals(expected(values, Comparator.naturalOrder(), 20, 10), sorted(new RowSorter(false, 20, 10), values));
+        assertEquals("", sorted(new RowSorter(false, 0, 0), values));
+    }
+}
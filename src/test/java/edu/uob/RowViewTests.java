@@ -0,0 +1,39 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RowViewTests {
+
+    //Position 0 is the id and the values follow in header order
+    @Test
+    public void testPositions() {
+        RowView row = new RowView(7, new ArrayList<>(List.of("Steve", "65")));
+
+        assertEquals(3, row.size());
+        assertEquals("7", row.get(0));
+        assertEquals("Steve", row.get(1));
+        assertEquals("65", row.get(2));
+        assertEquals("7\tSteve\t65", row.toString());
+    }
+
+    //The view reads the values in place and cannot change them
+    @Test
+    public void testReadOnlyWithoutCopying() {
+        ArrayList<String> values = new ArrayList<>(List.of("Steve", "65"));
+        RowView row = new RowView(1, values);
+
+        assertThrows(UnsupportedOperationException.class, () -> row.getValues().set(0, "Bob"));
+        assertThrows(UnsupportedOperationException.class, () -> row.getValues().add(0, "1"));
+        assertEquals(List.of("Steve", "65"), values);
+
+        // a version's values never change, so the view sees the same strings rather than copies
+        assertSame(values.get(0), row.get(1));
+    }
+}
@@ -0,0 +1,67 @@
+package edu.uob;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TableStatisticsTests {
+
+    // ages 1 to 1000 with every tenth one NULL, and a pass column that is mostly FALSE
+    private TableStatistics collect()
+    {
+        TableStatistics.Collector collector = new TableStatistics.Collector(List.of("Age", "Passed"));
+
+        for (int i = 1; i <= 1000; i++)
+        {
+            collector.add(new ArrayList<>(List.of(i % 10 == 0 ? "NULL" : Integer.toString(i), i % 20 == 0 ? "TRUE" : "FALSE")));
+        }
+
+        return collector.finish();
+    }
+
+    private void assertClose(double expected, double estimate, double tolerance)
+    {
+        assertTrue(Math.abs(estimate - expected) <= tolerance, "Estimate " + estimate + " should be near " + expected);
+    }
+
+    //Counts are exact and the histogram gives range selectivities close to the real ones
+    @Test
+    public void testSelectivityEstimates() {
+        TableStatistics statistics = collect();
+        TableStatistics.ColumnStatistics age = statistics.getColumn("age");
+
+        assertEquals(1000, statistics.getRowCount());
+        assertEquals(100, age.getNullCount());
+        assertEquals("1", age.getMin());
+        assertEquals("999", age.getMax());
+        assertClose(900, age.getDistinct(), 30);
+
+        assertClose(0.1, statistics.selectivity("Age", SyntaxType.EQUAL_TO, "NULL"), 0.001);
+        assertClose(0.45, statistics.selectivity("Age", SyntaxType.LT, "500"), 0.05);
+        assertClose(0.9, statistics.selectivity("Age", SyntaxType.GT_EQUAL_TO, "-5"), 0.001);
+        assertClose(0, statistics.selectivity("Age", SyntaxType.GT, "1000"), 0.001);
+        assertClose(0.5, statistics.selectivity("Passed", SyntaxType.EQUAL_TO, "TRUE"), 0.001);
+        assertEquals(TableStatistics.defaultSelectivity(SyntaxType.EQUAL_TO), statistics.selectivity("Email", SyntaxType.EQUAL_TO, "x"));
+    }
+
+    //Statistics read back from their encoding estimate the same
+    @Test
+    public void testEncodeRoundTrip() {
+        TableStatistics statistics = collect();
+        TableStatistics decoded = TableStatistics.decode(statistics.encode());
+
+        assertEquals(statistics.encode(), decoded.encode());
+
+        for (SyntaxType operator: List.of(SyntaxType.EQUAL_TO, SyntaxType.LT, SyntaxType.GT_EQUAL_TO, SyntaxType.LIKE))
+        {
+            assertEquals(statistics.selectivity("Age", operator, "321"), decoded.selectivity("Age", operator, "321"));
+        }
+
+        TableStatistics empty = new TableStatistics.Collector(List.of("Name")).finish();
+        assertEquals(0, TableStatistics.decode(empty.encode()).selectivity("Name", SyntaxType.EQUAL_TO, "x"));
+    }
+}